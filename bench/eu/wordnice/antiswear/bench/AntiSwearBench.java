@@ -0,0 +1,745 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import eu.wordnice.antiswear.AntiSwear;
+import eu.wordnice.antiswear.CompiledFilter;
+import eu.wordnice.antiswear.FuzzyMatcher;
+import eu.wordnice.antiswear.PreFilter;
+import eu.wordnice.antiswear.Transducer;
+
+/**
+ * Benchmarks of AntiSwear pipeline on generated corpora
+ * 
+ * Every benchmark is run for warmup time and then measured in more
+ * iterations of fixed time. Results are written as JSON lines
+ * (one object per benchmark), which can be compared with
+ * `--compare old.jsonl new.jsonl`
+ * 
+ * Run with `--help` for options
+ */
+public class AntiSwearBench {
+	
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Corpora names, see {@link Corpus#get(String, long, int)}
+	 */
+	public static final String[] CORPORA = { "clean", "swear", "slavic", "book" };
+	
+	/**
+	 * Results of benchmarks are added here, so JIT can't remove them
+	 */
+	public static volatile int SINK = 0;
+	
+	/**
+	 * One benchmark with parameters
+	 */
+	public static abstract class Case {
+		
+		/**
+		 * Name of benchmarked method
+		 */
+		public final String benchmark;
+		
+		/**
+		 * Parameters, written to results
+		 */
+		public final Map<String,Object> params = new LinkedHashMap<String,Object>();
+		
+		/**
+		 * Other measured values, written to results but not part of id
+		 */
+		public final Map<String,Object> extra = new LinkedHashMap<String,Object>();
+		
+		/**
+		 * Operations run between time checks
+		 */
+		public int batch = 16;
+		
+		public Case(String benchmark) {
+			this.benchmark = benchmark;
+		}
+		
+		/**
+		 * @param i Index of operation
+		 * 
+		 * @return Any value depending on result
+		 */
+		public abstract int run(int i);
+		
+		/**
+		 * @return Benchmark with parameters, for example `processString:corpus=clean,blacklist=50`
+		 */
+		public String getId() {
+			StringBuilder sb = new StringBuilder(this.benchmark);
+			char sep = ':';
+			for(Map.Entry<String,Object> ent : this.params.entrySet()) {
+				sb.append(sep).append(ent.getKey()).append('=').append(ent.getValue());
+				sep = ',';
+			}
+			return sb.toString();
+		}
+	
+	}
+	
+	/**
+	 * Options
+	 */
+	protected long warmup = 1000;
+	protected long time = 1000;
+	protected int iterations = 5;
+	protected int messages = 1000;
+	protected long seed = 42;
+	protected int[] sizes = { 50, 5000, 100000 };
+	protected int[] threads = AntiSwearBench.defaultThreads();
+	protected Pattern filter = null;
+	protected File substitutions = new File("substitutions.txt");
+	protected File out = null;
+	protected String tag = null;
+	
+	/**
+	 * Loaded substitutions or `null`
+	 */
+	protected Transducer tr = null;
+	
+	/**
+	 * Pools of processBatch benchmarks by parallelism
+	 */
+	protected final Map<Integer,ForkJoinPool> pools = new LinkedHashMap<Integer,ForkJoinPool>();
+	
+	/**
+	 * @return 1, 2, 4... up to number of processors
+	 */
+	protected static int[] defaultThreads() {
+		int cpus = Runtime.getRuntime().availableProcessors();
+		List<Integer> ret = new ArrayList<Integer>();
+		for(int t = 1; t < cpus; t *= 2) {
+			ret.add(t);
+		}
+		ret.add(cpus);
+		int[] arr = new int[ret.size()];
+		for(int i = 0; i < arr.length; i++) {
+			arr[i] = ret.get(i);
+		}
+		return arr;
+	}
+	
+	/**
+	 * @return Shared pool with given parallelism
+	 */
+	protected ForkJoinPool pool(int threads) {
+		ForkJoinPool pool = this.pools.get(threads);
+		if(pool == null) {
+			pool = new ForkJoinPool(threads);
+			this.pools.put(threads, pool);
+		}
+		return pool;
+	}
+	
+	/**
+	 * @return All benchmarks
+	 */
+	public List<Case> cases() {
+		List<Case> ret = new ArrayList<Case>();
+		boolean subs = (this.tr != null);
+		for(String name : CORPORA) {
+			final String[] corpus = Corpus.get(name, this.seed, this.messages);
+			final int n = corpus.length;
+			
+			Case c = new Case("stripDiacritics") {
+				
+				@Override
+				public int run(int i) {
+					return AntiSwear.stripDiacritics(corpus[i % n]).length();
+				}
+			
+			};
+			c.params.put("corpus", name);
+			ret.add(c);
+			
+			final char[][] padded = new char[n][];
+			final char[][] edited = new char[n][];
+			final int[][] indexes = new int[n][];
+			final int[][] firsts = new int[n][];
+			final int[] lengths = new int[n];
+			for(int i = 0; i < n; i++) {
+				int len = corpus[i].length() + 2;
+				padded[i] = (' ' + corpus[i] + ' ').toCharArray();
+				edited[i] = new char[len];
+				indexes[i] = new int[len];
+				if(this.tr == null) {
+					lengths[i] = AntiSwear.removeTyposSlang(edited[i], padded[i], 0, len, indexes[i], 0);
+				} else {
+					firsts[i] = new int[len];
+					lengths[i] = this.tr.removeTyposSlang(edited[i], padded[i], 0, len, indexes[i], firsts[i], 0);
+				}
+			}
+			final char[] bufOut = new char[8192];
+			final int[] bufIndexes = new int[8192];
+			final int[] bufFirsts = new int[8192];
+			
+			c = new Case("removeTyposSlang") {
+				
+				@Override
+				public int run(int i) {
+					char[] in = padded[i % n];
+					return AntiSwear.removeTyposSlang(bufOut, in, 0, in.length, bufIndexes, 0);
+				}
+			
+			};
+			c.params.put("corpus", name);
+			ret.add(c);
+			
+			if(subs) {
+				final Transducer tr = this.tr;
+				c = new Case("Transducer.removeTyposSlang") {
+					
+					@Override
+					public int run(int i) {
+						char[] in = padded[i % n];
+						return tr.removeTyposSlang(bufOut, in, 0, in.length, bufIndexes, bufFirsts, 0);
+					}
+				
+				};
+				c.params.put("corpus", name);
+				ret.add(c);
+			}
+			
+			for(int size : this.sizes) {
+				final AntiSwear as = this.antiSwear(size);
+				final CompiledFilter cmp = as.getFilter();
+				
+				c = new Case("doReplace") {
+					
+					@Override
+					public int run(int i) {
+						int k = i % n;
+						String ret = as.doReplace(cmp, edited[k], 0, lengths[k],
+								padded[k], 0, padded[k].length, indexes[k], firsts[k], 0);
+						return (ret == null) ? 0 : ret.length();
+					}
+				
+				};
+				c.params.put("corpus", name);
+				c.params.put("blacklist", size);
+				c.params.put("substitutions", subs);
+				ret.add(c);
+				
+				//- Same with default swears matched with typos, compare with doReplace
+				for(int dist = 1; dist <= FuzzyMatcher.MAX_DISTANCE; dist++) {
+					List<Map<?,?>> fuzzy = new ArrayList<Map<?,?>>();
+					for(String word : Corpus.SWEARS) {
+						fuzzy.add(Collections.singletonMap(word, dist));
+					}
+					final AntiSwear fas = this.antiSwear(size);
+					fas.setFuzzy(fuzzy);
+					final CompiledFilter fcmp = fas.getFilter();
+					int censored = 0;
+					int exact = 0;
+					for(int k = 0; k < n; k++) {
+						if(fas.doReplace(fcmp, edited[k], 0, lengths[k], padded[k], 0, padded[k].length,
+								indexes[k], firsts[k], 0) != null) {
+							censored++;
+						}
+						if(as.doReplace(cmp, edited[k], 0, lengths[k], padded[k], 0, padded[k].length,
+								indexes[k], firsts[k], 0) != null) {
+							exact++;
+						}
+					}
+					c = new Case("doReplace.fuzzy") {
+						
+						@Override
+						public int run(int i) {
+							int k = i % n;
+							String ret = fas.doReplace(fcmp, edited[k], 0, lengths[k],
+									padded[k], 0, padded[k].length, indexes[k], firsts[k], 0);
+							return (ret == null) ? 0 : ret.length();
+						}
+					
+					};
+					c.params.put("corpus", name);
+					c.params.put("blacklist", size);
+					c.params.put("substitutions", subs);
+					c.params.put("distance", dist);
+					//- Messages censored only because of typos
+					c.extra.put("moreCensored", censored - exact);
+					c.extra.put("trieNodes", fcmp.getFuzzyMatcher().size());
+					ret.add(c);
+				}
+				
+				final PreFilter pre = cmp.getPreFilter();
+				int clean = 0;
+				int passed = 0;
+				for(int k = 0; k < n; k++) {
+					if(as.doReplace(cmp, edited[k], 0, lengths[k], padded[k], 0, padded[k].length,
+							indexes[k], firsts[k], 0) == null) {
+						clean++;
+						if(pre.mayMatch(edited[k], 0, lengths[k])) {
+							passed++;
+						}
+					}
+				}
+				c = new Case("PreFilter.mayMatch") {
+					
+					@Override
+					public int run(int i) {
+						int k = i % n;
+						return pre.mayMatch(edited[k], 0, lengths[k]) ? 1 : 0;
+					}
+				
+				};
+				c.params.put("corpus", name);
+				c.params.put("blacklist", size);
+				c.params.put("substitutions", subs);
+				//- Clean messages not rejected by pre-filter
+				c.extra.put("falsePositives", (clean == 0) ? 0 : Math.round(1000.0 * passed / clean) / 1000.0);
+				c.extra.put("clean", clean);
+				ret.add(c);
+				
+				c = new Case("processString") {
+					
+					@Override
+					public int run(int i) {
+						String ret = as.processString(corpus[i % n]);
+						return (ret == null) ? 0 : ret.length();
+					}
+				
+				};
+				c.params.put("corpus", name);
+				c.params.put("blacklist", size);
+				c.params.put("substitutions", subs);
+				ret.add(c);
+				
+				//- One operation = whole corpus, to compare with processBatch
+				c = new Case("processString.loop") {
+					
+					@Override
+					public int run(int i) {
+						int sum = 0;
+						for(int k = 0; k < n; k++) {
+							String ret = as.processString(corpus[k]);
+							sum += (ret == null) ? 0 : ret.length();
+						}
+						return sum;
+					}
+				
+				};
+				c.batch = 1;
+				c.params.put("corpus", name);
+				c.params.put("blacklist", size);
+				c.params.put("substitutions", subs);
+				c.params.put("messages", n);
+				ret.add(c);
+				
+				final List<String> list = Arrays.asList(corpus);
+				for(int threads : this.threads) {
+					final ForkJoinPool pool = this.pool(threads);
+					c = new Case("processBatch") {
+						
+						@Override
+						public int run(int i) {
+							int sum = 0;
+							for(String ret : as.processBatch(list, pool)) {
+								sum += (ret == null) ? 0 : ret.length();
+							}
+							return sum;
+						}
+					
+					};
+					c.batch = 1;
+					c.params.put("corpus", name);
+					c.params.put("blacklist", size);
+					c.params.put("substitutions", subs);
+					c.params.put("messages", n);
+					c.params.put("threads", threads);
+					ret.add(c);
+				}
+			}
+		}
+		
+		for(int size : this.sizes) {
+			final char[][] blacklist = AntiSwear.loadBlacklist(Corpus.blacklist(this.seed, size));
+			final char[][] whitelist = AntiSwear.loadWhitelist(new String[] { " badass ", " as " });
+			final Transducer tr = this.tr;
+			Case c = new Case("compile") {
+				
+				@Override
+				public int run(int i) {
+					return new CompiledFilter(blacklist, whitelist, tr).getMatcher().size();
+				}
+			
+			};
+			CompiledFilter cmp = new CompiledFilter(blacklist, whitelist, tr);
+			c.batch = 1;
+			c.params.put("blacklist", size);
+			c.params.put("substitutions", subs);
+			c.extra.put("compact", cmp.getMatcher().isCompact());
+			c.extra.put("tableBytes", cmp.getBytes());
+			ret.add(c);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @param size Size of blacklist
+	 * 
+	 * @return AntiSwear with generated blacklist
+	 */
+	protected AntiSwear antiSwear(int size) {
+		AntiSwear as = new AntiSwear();
+		as.setFilter(new CompiledFilter(AntiSwear.loadBlacklist(Corpus.blacklist(this.seed, size)),
+				AntiSwear.loadWhitelist(new String[] { " badass ", " as " }), this.tr));
+		return as;
+	}
+	
+	/**
+	 * Run benchmark
+	 * 
+	 * @param c Benchmark
+	 * 
+	 * @return Result as JSON object
+	 */
+	public String measure(Case c) {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean amx = (mx instanceof com.sun.management.ThreadMXBean)
+				? (com.sun.management.ThreadMXBean) mx : null;
+		long tid = Thread.currentThread().getId();
+		int sink = 0;
+		int idx = 0;
+		
+		long deadline = System.nanoTime() + this.warmup * 1000000L;
+		while(System.nanoTime() < deadline) {
+			for(int k = 0; k < c.batch; k++) {
+				sink += c.run(idx++ & Integer.MAX_VALUE);
+			}
+		}
+		
+		double[] scores = new double[this.iterations];
+		long totalOps = 0;
+		long bytes = (amx == null) ? 0 : amx.getThreadAllocatedBytes(tid);
+		for(int it = 0; it < this.iterations; it++) {
+			long ops = 0;
+			long start = System.nanoTime();
+			long end;
+			deadline = start + this.time * 1000000L;
+			do {
+				for(int k = 0; k < c.batch; k++) {
+					sink += c.run(idx++ & Integer.MAX_VALUE);
+				}
+				ops += c.batch;
+			} while((end = System.nanoTime()) < deadline);
+			scores[it] = (double) (end - start) / ops;
+			totalOps += ops;
+		}
+		double bytesPerOp = (amx == null) ? -1 : (double) (amx.getThreadAllocatedBytes(tid) - bytes) / totalOps;
+		SINK += sink;
+		
+		double mean = 0;
+		double min = Double.MAX_VALUE;
+		for(double s : scores) {
+			mean += s;
+			min = Math.min(min, s);
+		}
+		mean /= scores.length;
+		double var = 0;
+		for(double s : scores) {
+			var += (s - mean) * (s - mean);
+		}
+		double stdev = (scores.length > 1) ? Math.sqrt(var / (scores.length - 1)) : 0;
+		
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"id\":").append(AntiSwearBench.quote(c.getId()));
+		sb.append(",\"benchmark\":").append(AntiSwearBench.quote(c.benchmark));
+		for(Map.Entry<String,Object> ent : c.params.entrySet()) {
+			sb.append(',').append(AntiSwearBench.quote(ent.getKey())).append(':');
+			Object val = ent.getValue();
+			sb.append((val instanceof String) ? AntiSwearBench.quote((String) val) : String.valueOf(val));
+		}
+		for(Map.Entry<String,Object> ent : c.extra.entrySet()) {
+			sb.append(',').append(AntiSwearBench.quote(ent.getKey())).append(':').append(ent.getValue());
+		}
+		sb.append(",\"unit\":\"ns/op\"");
+		sb.append(",\"score\":").append(AntiSwearBench.num(mean));
+		sb.append(",\"error\":").append(AntiSwearBench.num(stdev));
+		sb.append(",\"min\":").append(AntiSwearBench.num(min));
+		sb.append(",\"bytesPerOp\":").append(AntiSwearBench.num(bytesPerOp));
+		sb.append(",\"iterations\":").append(this.iterations);
+		sb.append(",\"ops\":").append(totalOps);
+		sb.append(",\"java\":").append(AntiSwearBench.quote(System.getProperty("java.version")));
+		if(this.tag != null) {
+			sb.append(",\"tag\":").append(AntiSwearBench.quote(this.tag));
+		}
+		sb.append('}');
+		return sb.toString();
+	}
+	
+	/**
+	 * Run all benchmarks matching filter
+	 */
+	public void run() throws IOException {
+		if(this.substitutions != null && this.substitutions.isFile()) {
+			this.tr = Transducer.load(this.substitutions);
+		}
+		PrintWriter pw = null;
+		if(this.out != null) {
+			pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(this.out), UTF_8));
+		}
+		PrintStream log = System.out;
+		try {
+			for(Case c : this.cases()) {
+				String id = c.getId();
+				if(this.filter != null && !this.filter.matcher(id).find()) {
+					continue;
+				}
+				String res = this.measure(c);
+				log.println(String.format(Locale.ROOT, "%-70s %12s ns/op  +- %-10s %10s B/op%s", id,
+						AntiSwearBench.field(res, "score"), AntiSwearBench.field(res, "error"),
+						AntiSwearBench.field(res, "bytesPerOp"), c.extra.isEmpty() ? "" : ("  " + c.extra)));
+				if(pw != null) {
+					pw.println(res);
+					pw.flush();
+				}
+			}
+		} finally {
+			if(pw != null) {
+				pw.close();
+			}
+		}
+	}
+	
+	/**
+	 * Check that clean messages are processed without allocation, with and
+	 * without substitutions, for every blacklist size. Allocation is measured
+	 * over at least 100 000 clean messages of corpus after warmup
+	 * 
+	 * @return `false` if any clean message allocated memory
+	 */
+	public boolean checkAlloc() throws IOException {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if(!(mx instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("Allocation can not be measured on this JVM");
+			return false;
+		}
+		com.sun.management.ThreadMXBean amx = (com.sun.management.ThreadMXBean) mx;
+		long tid = Thread.currentThread().getId();
+		List<Transducer> trs = new ArrayList<Transducer>();
+		trs.add(null);
+		if(this.substitutions != null && this.substitutions.isFile()) {
+			trs.add(Transducer.load(this.substitutions));
+		}
+		String[] corpus = Corpus.get("clean", this.seed, this.messages);
+		boolean ok = true;
+		for(Transducer tr : trs) {
+			this.tr = tr;
+			for(int size : this.sizes) {
+				AntiSwear as = this.antiSwear(size);
+				List<String> clean = new ArrayList<String>();
+				for(String msg : corpus) {
+					if(as.processString(msg) == null) {
+						clean.add(msg);
+					}
+				}
+				String[] msgs = clean.toArray(new String[clean.size()]);
+				int sink = 0;
+				long deadline = System.nanoTime() + this.warmup * 1000000L;
+				while(System.nanoTime() < deadline) {
+					for(String msg : msgs) {
+						sink += (as.processString(msg) == null) ? 0 : 1;
+					}
+				}
+				//- At least 100 000 messages
+				int passes = Math.max(this.iterations, 100000 / Math.max(1, msgs.length));
+				long bytes = amx.getThreadAllocatedBytes(tid);
+				for(int it = 0; it < passes; it++) {
+					for(String msg : msgs) {
+						sink += (as.processString(msg) == null) ? 0 : 1;
+					}
+				}
+				bytes = amx.getThreadAllocatedBytes(tid) - bytes;
+				SINK += sink;
+				long ops = (long) passes * msgs.length;
+				double perMsg = (ops == 0) ? 0 : (double) bytes / ops;
+				boolean passed = (bytes == 0);
+				System.out.println(String.format(Locale.ROOT, "processString:corpus=clean,blacklist=%d,substitutions=%s"
+						+ "  %d messages  %s B/msg  %s", size, tr != null, ops, AntiSwearBench.num(perMsg),
+						passed ? "OK" : "FAILED"));
+				ok &= passed;
+			}
+		}
+		return ok;
+	}
+	
+	/**
+	 * Print difference of two result files
+	 * 
+	 * @param old Old results
+	 * @param nev New results
+	 */
+	public static void compare(File old, File nev) throws IOException {
+		Map<String,String> before = AntiSwearBench.read(old);
+		Map<String,String> after = AntiSwearBench.read(nev);
+		for(Map.Entry<String,String> ent : after.entrySet()) {
+			String prev = before.get(ent.getKey());
+			double score = Double.parseDouble(AntiSwearBench.field(ent.getValue(), "score"));
+			if(prev == null) {
+				System.out.println(String.format(Locale.ROOT, "%-70s %12.1f ns/op  (new)", ent.getKey(), score));
+				continue;
+			}
+			double was = Double.parseDouble(AntiSwearBench.field(prev, "score"));
+			System.out.println(String.format(Locale.ROOT, "%-70s %12.1f -> %12.1f ns/op  %+7.1f %%",
+					ent.getKey(), was, score, (score - was) * 100 / was));
+		}
+	}
+	
+	/**
+	 * @return Results by id
+	 */
+	protected static Map<String,String> read(File f) throws IOException {
+		Map<String,String> ret = new LinkedHashMap<String,String>();
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), UTF_8));
+		try {
+			String line;
+			while((line = br.readLine()) != null) {
+				String id = AntiSwearBench.field(line, "id");
+				if(id != null) {
+					ret.put(id, line);
+				}
+			}
+		} finally {
+			br.close();
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return Value of field from JSON object written by this class, or `null`
+	 */
+	protected static String field(String json, String name) {
+		Matcher m = Pattern.compile("\"" + Pattern.quote(name) + "\":(\"((?:[^\"\\\\]|\\\\.)*)\"|[^,}]*)").matcher(json);
+		if(!m.find()) {
+			return null;
+		}
+		return (m.group(2) != null) ? m.group(2).replace("\\\"", "\"").replace("\\\\", "\\") : m.group(1);
+	}
+	
+	protected static String quote(String str) {
+		return '"' + str.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+	}
+	
+	protected static String num(double d) {
+		return String.format(Locale.ROOT, "%.3f", d);
+	}
+	
+	public static void main(String[] args) throws IOException {
+		AntiSwearBench b = new AntiSwearBench();
+		boolean check = false;
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(arg.equals("--compare") && i + 2 < args.length) {
+				AntiSwearBench.compare(new File(args[i + 1]), new File(args[i + 2]));
+				return;
+			} else if(arg.equals("--warmup")) {
+				b.warmup = Long.parseLong(args[++i]);
+			} else if(arg.equals("--time")) {
+				b.time = Long.parseLong(args[++i]);
+			} else if(arg.equals("--iterations")) {
+				b.iterations = Integer.parseInt(args[++i]);
+			} else if(arg.equals("--messages")) {
+				b.messages = Integer.parseInt(args[++i]);
+			} else if(arg.equals("--seed")) {
+				b.seed = Long.parseLong(args[++i]);
+			} else if(arg.equals("--sizes")) {
+				String[] parts = args[++i].split(",");
+				b.sizes = new int[parts.length];
+				for(int k = 0; k < parts.length; k++) {
+					b.sizes[k] = Integer.parseInt(parts[k].trim());
+				}
+			} else if(arg.equals("--threads")) {
+				String[] parts = args[++i].split(",");
+				b.threads = new int[parts.length];
+				for(int k = 0; k < parts.length; k++) {
+					b.threads[k] = Integer.parseInt(parts[k].trim());
+				}
+			} else if(arg.equals("--filter")) {
+				b.filter = Pattern.compile(args[++i]);
+			} else if(arg.equals("--substitutions")) {
+				String val = args[++i];
+				b.substitutions = val.equals("none") ? null : new File(val);
+			} else if(arg.equals("--out")) {
+				b.out = new File(args[++i]);
+			} else if(arg.equals("--tag")) {
+				b.tag = args[++i];
+			} else if(arg.equals("--check-alloc")) {
+				check = true;
+			} else {
+				System.out.println("Usage: AntiSwearBench [options]");
+				System.out.println("  --warmup <ms>            Warmup time of every benchmark (1000)");
+				System.out.println("  --time <ms>              Time of one iteration (1000)");
+				System.out.println("  --iterations <n>         Measured iterations (5)");
+				System.out.println("  --messages <n>           Messages in every corpus (1000)");
+				System.out.println("  --seed <n>               Seed of generated corpora (42)");
+				System.out.println("  --sizes <n,n...>         Blacklist sizes (50,5000,100000)");
+				System.out.println("  --threads <n,n...>       Parallelism of processBatch (1,2,4... CPUs)");
+				System.out.println("  --filter <regex>         Run only benchmarks with matching id");
+				System.out.println("  --substitutions <file>   Substitutions file or none (substitutions.txt)");
+				System.out.println("  --out <file>             Write results as JSON lines");
+				System.out.println("  --tag <text>             Label written to results (commit...)");
+				System.out.println("  --compare <old> <new>    Compare two result files");
+				System.out.println("  --check-alloc            Fail if clean messages allocate memory");
+				return;
+			}
+		}
+		if(!check) {
+			b.run();
+		} else if(!b.checkAlloc()) {
+			System.exit(1);
+		}
+	}
+	
+}
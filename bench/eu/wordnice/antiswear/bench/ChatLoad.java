@@ -0,0 +1,590 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import eu.wordnice.antiswear.AntiSwearPlugin;
+import eu.wordnice.antiswear.Histogram;
+import eu.wordnice.antiswear.Metrics;
+
+/**
+ * Load generator of {@link AntiSwearPlugin#onChat(AsyncPlayerChatEvent)},
+ * runs without Minecraft server
+ * 
+ * Plugin is created by constructor for tests of {@link org.bukkit.plugin.java.JavaPlugin}
+ * with stubbed server, players are proxies answering every method with
+ * default value. Config (with `--set` changes) is copied to temporary
+ * plugin folder, so filter, caches, profiles and other settings are same
+ * as on server. Every step runs given number of threads (platform or virtual,
+ * like connection threads of players), each sends messages of its own players
+ * from generated mix as fast as possible. Throughput, latency percentiles of
+ * one handler call and allocation rate are printed per step, with speedup
+ * against first step.
+ * 
+ * Run with `--help` for options
+ */
+public class ChatLoad {
+	
+	/**
+	 * Options
+	 */
+	protected long warmup = 2000;
+	protected long time = 5000;
+	protected int players = 500;
+	protected int messages = 2000;
+	protected long seed = 42;
+	protected int[] threads = AntiSwearBench.defaultThreads();
+	protected boolean virtual = false;
+	protected String mix = "clean=90,swear=10";
+	protected File config = new File("config.yml");
+	protected File substitutions = new File("substitutions.txt");
+	protected int blacklist = 0;
+	protected final Map<String,Object> set = new LinkedHashMap<String,Object>();
+	protected File out = null;
+	protected String tag = null;
+	
+	/**
+	 * Plugin created without server
+	 */
+	public static class HeadlessPlugin extends AntiSwearPlugin {
+		
+		public HeadlessPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+			super(loader, description, dataFolder, file);
+		}
+		
+		/**
+		 * Load config and filters like on enable, listeners are not registered
+		 */
+		public void start() {
+			this.setup();
+		}
+	
+	}
+	
+	/**
+	 * Answers methods by name from map, others with default values - `false`,
+	 * 0, empty string or collection, or stub of returned interface
+	 */
+	public static class Stub implements InvocationHandler {
+		
+		protected final Map<String,Object> values;
+		
+		public Stub(Map<String,Object> values) {
+			this.values = values;
+		}
+		
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if(this.values.containsKey(name)) {
+				return this.values.get(name);
+			} else if(name.equals("equals") && args != null && args.length == 1) {
+				return proxy == args[0];
+			} else if(name.equals("hashCode") && args == null) {
+				return System.identityHashCode(proxy);
+			} else if(name.equals("toString") && args == null) {
+				return "Stub" + this.values;
+			}
+			return ChatLoad.empty(method.getReturnType());
+		}
+	
+	}
+	
+	/**
+	 * @return Default value of type
+	 */
+	protected static Object empty(Class<?> type) {
+		if(type == boolean.class) {
+			return false;
+		} else if(type == int.class) {
+			return 0;
+		} else if(type == long.class) {
+			return 0L;
+		} else if(type == double.class) {
+			return 0.0;
+		} else if(type == float.class) {
+			return 0.0f;
+		} else if(type == short.class) {
+			return (short) 0;
+		} else if(type == byte.class) {
+			return (byte) 0;
+		} else if(type == char.class) {
+			return (char) 0;
+		} else if(type == String.class) {
+			return "";
+		} else if(type == List.class || type == java.util.Collection.class) {
+			return Collections.emptyList();
+		} else if(type == Set.class) {
+			return Collections.emptySet();
+		} else if(type == Map.class) {
+			return Collections.emptyMap();
+		} else if(type.isInterface()) {
+			return ChatLoad.stub(type, Collections.<String,Object>emptyMap());
+		}
+		return null;
+	}
+	
+	/**
+	 * @param type Interface
+	 * @param values Answers of methods by name
+	 * 
+	 * @return Stub implementing interface
+	 */
+	public static <T> T stub(Class<T> type, Map<String,Object> values) {
+		return type.cast(Proxy.newProxyInstance(ChatLoad.class.getClassLoader(), new Class<?>[] { type },
+				new Stub(values)));
+	}
+	
+	/**
+	 * Result of one step
+	 */
+	public static class Step {
+		
+		public final int threads;
+		public final long messages;
+		public final long nanos;
+		public final Histogram latency;
+		
+		/**
+		 * Allocated bytes, -1 if unknown (virtual threads)
+		 */
+		public final long allocated;
+		
+		public Step(int threads, long messages, long nanos, Histogram latency, long allocated) {
+			this.threads = threads;
+			this.messages = messages;
+			this.nanos = nanos;
+			this.latency = latency;
+			this.allocated = allocated;
+		}
+		
+		/**
+		 * @return Messages per second
+		 */
+		public double getThroughput() {
+			return this.messages * 1e9 / this.nanos;
+		}
+	
+	}
+	
+	/**
+	 * @return Messages mixed from corpora by weights in {@link ChatLoad#mix}
+	 */
+	protected String[] corpus() {
+		List<String> names = new ArrayList<String>();
+		List<Integer> weights = new ArrayList<Integer>();
+		int total = 0;
+		for(String part : this.mix.split(",")) {
+			String[] kv = part.trim().split("=");
+			int w = (kv.length == 2) ? Integer.parseInt(kv[1].trim()) : 1;
+			names.add(kv[0].trim());
+			weights.add(w);
+			total += w;
+		}
+		Random rnd = new Random(this.seed);
+		String[][] corpora = new String[names.size()][];
+		for(int i = 0; i < corpora.length; i++) {
+			corpora[i] = Corpus.get(names.get(i), this.seed + i, this.messages);
+		}
+		String[] ret = new String[this.messages];
+		for(int i = 0; i < ret.length; i++) {
+			int r = rnd.nextInt(total);
+			int c = 0;
+			while(r >= weights.get(c)) {
+				r -= weights.get(c++);
+			}
+			ret[i] = corpora[c][rnd.nextInt(corpora[c].length)];
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return Stubbed players
+	 */
+	protected Player[] players() {
+		World world = ChatLoad.stub(World.class, Collections.<String,Object>singletonMap("getName", "world"));
+		Random rnd = new Random(this.seed);
+		Player[] ret = new Player[this.players];
+		for(int i = 0; i < ret.length; i++) {
+			Map<String,Object> values = new HashMap<String,Object>();
+			values.put("getUniqueId", new UUID(rnd.nextLong(), rnd.nextLong()));
+			values.put("getName", "Player" + i);
+			values.put("getDisplayName", "Player" + i);
+			values.put("isOnline", true);
+			values.put("getWorld", world);
+			values.put("getLocale", "en_us");
+			ret[i] = ChatLoad.stub(Player.class, values);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Create plugin folder with config and start plugin
+	 */
+	protected HeadlessPlugin plugin() throws IOException {
+		Server server = ChatLoad.stub(Server.class, Collections.<String,Object>singletonMap("getLogger",
+				Logger.getLogger("ChatLoad")));
+		Bukkit.setServer(server);
+		File dir = Files.createTempDirectory("chatload").toFile();
+		YamlConfiguration cfg = YamlConfiguration.loadConfiguration(this.config);
+		cfg.set("WatchConfig", false);
+		cfg.set("MetricsPort", 0);
+		if(this.blacklist > 0) {
+			List<Map<String,String>> list = new ArrayList<Map<String,String>>();
+			for(Map.Entry<String,String> ent : Corpus.blacklist(this.seed, this.blacklist).entrySet()) {
+				list.add(Collections.singletonMap(ent.getKey(), ent.getValue()));
+			}
+			cfg.set("Blacklist", list);
+		}
+		for(Map.Entry<String,Object> ent : this.set.entrySet()) {
+			cfg.set(ent.getKey(), ent.getValue());
+		}
+		cfg.save(new File(dir, "config.yml"));
+		if(this.substitutions != null && this.substitutions.isFile()) {
+			Files.copy(this.substitutions.toPath(), new File(dir, "substitutions.txt").toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		PluginDescriptionFile desc = new PluginDescriptionFile("BetterAntiSwear", "load",
+				HeadlessPlugin.class.getName());
+		HeadlessPlugin plugin = new HeadlessPlugin(new JavaPluginLoader(server), desc, dir, new File(dir, "plugin.jar"));
+		plugin.start();
+		System.out.println("Plugin folder: " + dir);
+		return plugin;
+	}
+	
+	/**
+	 * @param r Task
+	 * @param name Name of thread
+	 * 
+	 * @return Unstarted platform or virtual thread
+	 */
+	protected Thread thread(Runnable r, String name) {
+		if(!this.virtual) {
+			Thread th = new Thread(r, name);
+			th.setDaemon(true);
+			return th;
+		}
+		//- Java 21+, called by reflection to keep older targets
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> type = Class.forName("java.lang.Thread$Builder");
+			builder = type.getMethod("name", String.class).invoke(builder, name);
+			return (Thread) type.getMethod("unstarted", Runnable.class).invoke(builder, r);
+		} catch(Exception e) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or newer", e);
+		}
+	}
+	
+	/**
+	 * Run threads for given time
+	 * 
+	 * @param plugin Plugin
+	 * @param threads Number of threads
+	 * @param time Milliseconds
+	 * @param corpus Messages
+	 * @param players Players, each used only by one thread
+	 * 
+	 * @return Result
+	 */
+	protected Step step(final HeadlessPlugin plugin, final int threads, long time, final String[] corpus,
+			final Player[] players) throws InterruptedException {
+		final Histogram latency = new Histogram();
+		final AtomicLong messages = new AtomicLong();
+		final AtomicLong allocated = new AtomicLong();
+		final AtomicBoolean unknown = new AtomicBoolean();
+		final CountDownLatch ready = new CountDownLatch(threads);
+		final CountDownLatch go = new CountDownLatch(1);
+		final AtomicBoolean stop = new AtomicBoolean();
+		final ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		final com.sun.management.ThreadMXBean amx = (mx instanceof com.sun.management.ThreadMXBean)
+				? (com.sun.management.ThreadMXBean) mx : null;
+		Thread[] th = new Thread[threads];
+		for(int t = 0; t < threads; t++) {
+			final int id = t;
+			th[t] = this.thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					Set<Player> recipients = new HashSet<Player>();
+					int msg = id * 7919;
+					int player = id;
+					long num = 0;
+					long tid = Thread.currentThread().getId();
+					ready.countDown();
+					try {
+						go.await();
+					} catch(InterruptedException ie) {
+						return;
+					}
+					long bytes = (amx == null) ? -1 : amx.getThreadAllocatedBytes(tid);
+					while(true) {
+						for(int k = 0; k < 16; k++) {
+							AsyncPlayerChatEvent ev = new AsyncPlayerChatEvent(true, players[player],
+									corpus[msg % corpus.length], recipients);
+							long start = System.nanoTime();
+							plugin.onChat(ev);
+							latency.record(System.nanoTime() - start);
+							msg++;
+							player += threads;
+							if(player >= players.length) {
+								player = id % players.length;
+							}
+						}
+						num += 16;
+						if(stop.get()) {
+							break;
+						}
+					}
+					long now = (bytes < 0) ? -1 : amx.getThreadAllocatedBytes(tid);
+					if(now < 0) {
+						unknown.set(true);
+					} else {
+						allocated.addAndGet(now - bytes);
+					}
+					messages.addAndGet(num);
+				}
+			
+			}, "ChatLoad-" + t);
+			th[t].start();
+		}
+		ready.await();
+		long start = System.nanoTime();
+		go.countDown();
+		Thread.sleep(time);
+		stop.set(true);
+		for(Thread t : th) {
+			t.join();
+		}
+		long nanos = System.nanoTime() - start;
+		return new Step(threads, messages.get(), nanos, latency, unknown.get() ? -1 : allocated.get());
+	}
+	
+	protected static String time(long nanos) {
+		if(nanos < 10000) {
+			return nanos + " ns";
+		} else if(nanos < 10000000) {
+			return String.format(Locale.ROOT, "%.1f us", nanos / 1e3);
+		}
+		return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+	}
+	
+	/**
+	 * Run all steps
+	 */
+	public void run() throws IOException, InterruptedException {
+		String[] corpus = this.corpus();
+		Player[] players = this.players();
+		HeadlessPlugin plugin = this.plugin();
+		PrintWriter pw = null;
+		if(this.out != null) {
+			pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(this.out), AntiSwearBench.UTF_8));
+		}
+		System.out.println(String.format(Locale.ROOT, "%d CPUs, Java %s, %s threads, %d players, mix %s",
+				Runtime.getRuntime().availableProcessors(), System.getProperty("java.version"),
+				this.virtual ? "virtual" : "platform", players.length, this.mix));
+		System.out.println(String.format(Locale.ROOT, "%7s %12s %8s %6s %9s %9s %9s %9s %9s %10s %8s",
+				"threads", "msgs/s", "speedup", "eff", "p50", "p90", "p99", "p99.9", "max", "alloc MB/s", "B/msg"));
+		double base = 0;
+		try {
+			for(int threads : this.threads) {
+				this.step(plugin, threads, this.warmup, corpus, players);
+				Step s = this.step(plugin, threads, this.time, corpus, players);
+				double tput = s.getThroughput();
+				if(base == 0) {
+					base = tput / s.threads;
+				}
+				double speedup = tput / base;
+				long[] p = s.latency.getPercentiles(Metrics.PERCENTILES);
+				double mbs = (s.allocated < 0) ? -1 : s.allocated * 1e9 / s.nanos / (1 << 20);
+				double perMsg = (s.allocated < 0) ? -1 : (double) s.allocated / s.messages;
+				System.out.println(String.format(Locale.ROOT, "%7d %12.0f %8.2f %5.0f%% %9s %9s %9s %9s %9s %10s %8s",
+						s.threads, tput, speedup, speedup * 100 / s.threads, ChatLoad.time(p[0]), ChatLoad.time(p[1]),
+						ChatLoad.time(p[2]), ChatLoad.time(p[3]), ChatLoad.time(s.latency.getMax()),
+						(mbs < 0) ? "n/a" : String.format(Locale.ROOT, "%.1f", mbs),
+						(perMsg < 0) ? "n/a" : String.format(Locale.ROOT, "%.0f", perMsg)));
+				if(pw != null) {
+					StringBuilder sb = new StringBuilder(256);
+					String id = "chat:threads=" + s.threads + ",virtual=" + this.virtual + ",mix=" + this.mix;
+					sb.append("{\"id\":").append(AntiSwearBench.quote(id));
+					sb.append(",\"benchmark\":\"chat\",\"threads\":").append(s.threads);
+					sb.append(",\"virtual\":").append(this.virtual);
+					sb.append(",\"unit\":\"ns/op\"");
+					sb.append(",\"score\":").append(AntiSwearBench.num(1e9 / tput));
+					sb.append(",\"throughput\":").append(AntiSwearBench.num(tput));
+					sb.append(",\"speedup\":").append(AntiSwearBench.num(speedup));
+					sb.append(",\"p50\":").append(p[0]).append(",\"p90\":").append(p[1]);
+					sb.append(",\"p99\":").append(p[2]).append(",\"p999\":").append(p[3]);
+					sb.append(",\"max\":").append(s.latency.getMax());
+					sb.append(",\"bytesPerOp\":").append(AntiSwearBench.num(perMsg));
+					sb.append(",\"ops\":").append(s.messages);
+					sb.append(",\"java\":").append(AntiSwearBench.quote(System.getProperty("java.version")));
+					if(this.tag != null) {
+						sb.append(",\"tag\":").append(AntiSwearBench.quote(this.tag));
+					}
+					sb.append('}');
+					pw.println(sb);
+					pw.flush();
+				}
+			}
+		} finally {
+			if(pw != null) {
+				pw.close();
+			}
+			plugin.onDisable();
+		}
+		List<String> stats = plugin.getAntiSwear().getMetrics() == null ? null 
+				: plugin.getAntiSwear().getMetrics().format();
+		if(stats != null && !stats.isEmpty()) {
+			System.out.println(stats.get(0));
+		}
+	}
+	
+	/**
+	 * @return Value of `--set`, number or boolean if it looks like one
+	 */
+	protected static Object value(String str) {
+		if(str.equals("true") || str.equals("false")) {
+			return Boolean.valueOf(str);
+		}
+		try {
+			return Integer.valueOf(str);
+		} catch(NumberFormatException nfe) {}
+		try {
+			return Long.valueOf(str);
+		} catch(NumberFormatException nfe) {}
+		try {
+			return Double.valueOf(str);
+		} catch(NumberFormatException nfe) {}
+		return str;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		ChatLoad l = new ChatLoad();
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(arg.startsWith("--") && !arg.equals("--virtual") && i + 1 >= args.length) {
+				arg = "--help";
+			}
+			if(arg.equals("--warmup")) {
+				l.warmup = Long.parseLong(args[++i]);
+			} else if(arg.equals("--time")) {
+				l.time = Long.parseLong(args[++i]);
+			} else if(arg.equals("--threads")) {
+				String[] parts = args[++i].split(",");
+				l.threads = new int[parts.length];
+				for(int k = 0; k < parts.length; k++) {
+					l.threads[k] = Integer.parseInt(parts[k].trim());
+				}
+			} else if(arg.equals("--virtual")) {
+				l.virtual = true;
+			} else if(arg.equals("--players")) {
+				l.players = Integer.parseInt(args[++i]);
+			} else if(arg.equals("--messages")) {
+				l.messages = Integer.parseInt(args[++i]);
+			} else if(arg.equals("--mix")) {
+				l.mix = args[++i];
+			} else if(arg.equals("--seed")) {
+				l.seed = Long.parseLong(args[++i]);
+			} else if(arg.equals("--config")) {
+				l.config = new File(args[++i]);
+			} else if(arg.equals("--substitutions")) {
+				String val = args[++i];
+				l.substitutions = val.equals("none") ? null : new File(val);
+			} else if(arg.equals("--blacklist")) {
+				l.blacklist = Integer.parseInt(args[++i]);
+			} else if(arg.equals("--set")) {
+				String[] kv = args[++i].split("=", 2);
+				l.set.put(kv[0], (kv.length == 2) ? ChatLoad.value(kv[1]) : null);
+			} else if(arg.equals("--out")) {
+				l.out = new File(args[++i]);
+			} else if(arg.equals("--tag")) {
+				l.tag = args[++i];
+			} else {
+				System.out.println("Usage: ChatLoad [options]");
+				System.out.println("  --threads <n,n...>       Chat threads of steps (1,2,4... CPUs)");
+				System.out.println("  --virtual                Use virtual threads (Java 21+)");
+				System.out.println("  --players <n>            Players, spread over threads (500)");
+				System.out.println("  --warmup <ms>            Warmup before every step (2000)");
+				System.out.println("  --time <ms>              Measured time of step (5000)");
+				System.out.println("  --mix <name=w,...>       Corpora and weights (clean=90,swear=10)");
+				System.out.println("  --messages <n>           Generated messages (2000)");
+				System.out.println("  --seed <n>               Seed of generated messages and players (42)");
+				System.out.println("  --config <file>          Plugin config (config.yml)");
+				System.out.println("  --substitutions <file>   Substitutions file or none (substitutions.txt)");
+				System.out.println("  --blacklist <n>          Replace Blacklist by n generated words");
+				System.out.println("  --set <key=value>        Change config value (ShedBudget=200...)");
+				System.out.println("  --out <file>             Write results as JSON lines");
+				System.out.println("  --tag <text>             Label written to results (commit...)");
+				return;
+			}
+		}
+		if(l.virtual) {
+			try {
+				l.thread(new Thread(), "check");
+			} catch(UnsupportedOperationException uoe) {
+				System.out.println(uoe.getMessage());
+				return;
+			}
+		}
+		l.run();
+	}
+	
+}
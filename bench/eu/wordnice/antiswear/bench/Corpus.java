@@ -0,0 +1,250 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear.bench;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generated inputs for benchmarks. Same seed gives same corpus,
+ * so results of different commits can be compared
+ */
+public class Corpus {
+	
+	/**
+	 * Common chat words
+	 */
+	public static final String[] CHAT = {
+		"hello", "hi", "guys", "anyone", "wants", "to", "trade", "diamonds", "for", "iron",
+		"where", "is", "the", "spawn", "lol", "gg", "wp", "can", "i", "join", "your", "town",
+		"team", "need", "help", "with", "this", "base", "server", "lag", "today", "how", "are",
+		"you", "nice", "build", "thanks", "brb", "afk", "who", "has", "food", "sell", "buy",
+		"emeralds", "village", "nether", "portal", "creeper", "blew", "up", "my", "house",
+		"please", "tp", "me", "at", "home", "what", "time", "event", "starts", "ok", "yes", "no"
+	};
+	
+	/**
+	 * Czech, Slovak and Polish words with diacritics
+	 */
+	public static final String[] SLAVIC = {
+		"ahoj", "čau", "kamoš", "prosím", "ďakujem", "děkuji", "dobrý", "deň", "den", "večer",
+		"kde", "je", "hráč", "zbraň", "kúpim", "prodám", "diamanty", "železo", "dům", "dom",
+		"cześć", "dziękuję", "proszę", "gdzie", "jest", "miasto", "żelazo", "sprzedam", "kupię",
+		"świat", "zielony", "łódź", "ńie", "môžeš", "mi", "pomôcť", "pomoct", "šťastný", "žltý",
+		"příští", "úloha", "ôsmy", "ľad", "ŕba", "ĺža", "ćma", "źle", "óśmy", "ąę"
+	};
+	
+	/**
+	 * Swears from default config
+	 */
+	public static final String[] SWEARS = {
+		"noob", "idiot", "ass", "penis", "vagina", "fuck", "dick", "pussy", "stupid", "nerd",
+		"stfu", "wtf", "anus", "arse", "arsehole", "asshole", "butt", "bitch", "crap", "shit",
+		"whore", "slut", "bastard", "damn", "kurwa", "debil", "kokot", "piča", "hovno", "jebat",
+		"chuj", "dupa", "cholera", "suka", "prdel", "kurva", "sračka", "zmrd", "pizda", "huj"
+	};
+	
+	/**
+	 * Ways players hide swears
+	 */
+	protected static String obfuscate(String word, Random rnd) {
+		StringBuilder sb = new StringBuilder(word.length() * 2);
+		int mode = rnd.nextInt(6);
+		for(int i = 0, n = word.length(); i < n; i++) {
+			char c = word.charAt(i);
+			switch(mode) {
+			case 1:
+				//- Leet
+				switch(c) {
+				case 'a': c = '4'; break;
+				case 'e': c = '3'; break;
+				case 'i': c = '1'; break;
+				case 'o': c = '0'; break;
+				case 's': c = '$'; break;
+				}
+				sb.append(c);
+				break;
+			case 2:
+				//- Repeated
+				sb.append(c);
+				if(rnd.nextInt(3) == 0) {
+					sb.append(c).append(c);
+				}
+				break;
+			case 3:
+				//- Separated
+				if(i != 0) {
+					sb.append('.');
+				}
+				sb.append(c);
+				break;
+			case 4:
+				sb.append(Character.toUpperCase(c));
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @param words Words
+	 * @param rnd Random
+	 * @param min Minimal number of words
+	 * @param max Maximal number of words
+	 * @param swears Probability of swear (0-1)
+	 * 
+	 * @return Generated message
+	 */
+	protected static String message(String[] words, Random rnd, int min, int max, double swears) {
+		int n = min + rnd.nextInt(max - min + 1);
+		StringBuilder sb = new StringBuilder(n * 8);
+		for(int i = 0; i < n; i++) {
+			if(i != 0) {
+				sb.append(' ');
+			}
+			if(rnd.nextDouble() < swears) {
+				sb.append(Corpus.obfuscate(SWEARS[rnd.nextInt(SWEARS.length)], rnd));
+			} else {
+				sb.append(words[rnd.nextInt(words.length)]);
+			}
+			if(rnd.nextInt(8) == 0) {
+				sb.append((rnd.nextBoolean()) ? ',' : '!');
+			}
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * @return Clean chat messages
+	 */
+	public static String[] clean(long seed, int count) {
+		Random rnd = new Random(seed);
+		String[] ret = new String[count];
+		for(int i = 0; i < count; i++) {
+			ret[i] = Corpus.message(CHAT, rnd, 1, 14, 0);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return Chat messages, every third word is (hidden) swear
+	 */
+	public static String[] swearDense(long seed, int count) {
+		Random rnd = new Random(seed);
+		String[] ret = new String[count];
+		for(int i = 0; i < count; i++) {
+			ret[i] = Corpus.message(CHAT, rnd, 1, 14, 0.33);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return Slavic chat messages with diacritics, few swears
+	 */
+	public static String[] slavic(long seed, int count) {
+		Random rnd = new Random(seed);
+		String[] ret = new String[count];
+		for(int i = 0; i < count; i++) {
+			ret[i] = Corpus.message(SLAVIC, rnd, 1, 14, 0.05);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return Pages of book (around 2000 characters), few swears
+	 */
+	public static String[] book(long seed, int count) {
+		Random rnd = new Random(seed);
+		String[] ret = new String[count];
+		for(int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder(2100);
+			while(sb.length() < 2000) {
+				sb.append(Corpus.message(CHAT, rnd, 6, 20, 0.01)).append(". ");
+			}
+			ret[i] = sb.toString();
+		}
+		return ret;
+	}
+	
+	/**
+	 * @param name Name of corpus - clean, swear, slavic or book
+	 * 
+	 * @return Generated corpus
+	 */
+	public static String[] get(String name, long seed, int count) {
+		if(name.equals("clean")) {
+			return Corpus.clean(seed, count);
+		} else if(name.equals("swear")) {
+			return Corpus.swearDense(seed, count);
+		} else if(name.equals("slavic")) {
+			return Corpus.slavic(seed, count);
+		} else if(name.equals("book")) {
+			return Corpus.book(seed, Math.max(1, count / 16));
+		}
+		throw new IllegalArgumentException("Unknown corpus " + name);
+	}
+	
+	/**
+	 * Blacklist with {@link Corpus#SWEARS} and generated words
+	 * 
+	 * @param seed Seed
+	 * @param size Number of words
+	 * 
+	 * @return Map of swear and replacement
+	 */
+	public static Map<String,String> blacklist(long seed, int size) {
+		Random rnd = new Random(seed);
+		Map<String,String> ret = new LinkedHashMap<String,String>(size * 2);
+		for(int i = 0; i < SWEARS.length && ret.size() < size; i++) {
+			ret.put(SWEARS[i], Corpus.mask(SWEARS[i]));
+		}
+		String letters = "abcdefghijklmnoprstuvyzž";
+		while(ret.size() < size) {
+			int len = 4 + rnd.nextInt(8);
+			StringBuilder sb = new StringBuilder(len);
+			for(int i = 0; i < len; i++) {
+				sb.append(letters.charAt(rnd.nextInt(letters.length())));
+			}
+			String word = sb.toString();
+			ret.put(word, Corpus.mask(word));
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return First and last character of word, stars between
+	 */
+	protected static String mask(String word) {
+		char[] arr = word.toCharArray();
+		for(int i = 1; i < arr.length - 1; i++) {
+			arr[i] = '*';
+		}
+		return new String(arr);
+	}
+	
+}
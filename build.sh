@@ -0,0 +1,32 @@
+#!/bin/sh
+# Build plugin from sources (Eclipse project builds the same into bin)
+#
+#   BUKKIT=path/to/Bukkit.jar ./build.sh          build/BetterAntiSwear.jar
+#   BUKKIT=path/to/Bukkit.jar ./build.sh bench    also benchmarks to build/bench and
+#                                                 check that clean messages allocate nothing
+#
+# Bukkit API 1.7.9 or newer. JDK 20 and newer can not build for Java 7,
+# use RELEASE=8 there.
+set -e
+cd "$(dirname "$0")"
+if [ -z "$BUKKIT" ]; then
+	echo "Set BUKKIT to Bukkit API jar" >&2
+	exit 1
+fi
+RELEASE=${RELEASE:-7}
+
+rm -rf build/classes
+mkdir -p build/classes
+javac -encoding UTF-8 --release "$RELEASE" -Xlint:-options -cp "$BUKKIT" -d build/classes $(find src -name '*.java')
+cp plugin.yml config.yml substitutions.txt build/classes/
+jar cf build/BetterAntiSwear.jar -C build/classes .
+echo "Built build/BetterAntiSwear.jar"
+
+if [ "$1" = "bench" ]; then
+	rm -rf build/bench
+	mkdir -p build/bench
+	javac -encoding UTF-8 --release "$RELEASE" -Xlint:-options -cp "build/classes:$BUKKIT" -d build/bench $(find bench -name '*.java')
+	echo "Built build/bench"
+	java -cp "build/bench:build/BetterAntiSwear.jar:$BUKKIT" eu.wordnice.antiswear.bench.AntiSwearBench \
+			--check-alloc --sizes 50,5000 --warmup 2000
+fi
@@ -0,0 +1,928 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Aho-Corasick automaton over blacklisted words
+ * 
+ * Keys are expected in the alphabet produced by
+ * {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)},
+ * so the whole normalized message is matched in one linear pass.
+ * 
+ * Small automatons have fully resolved transitions (DFA), one array lookup
+ * per character. When the table would have more than {@link AhoCorasick#MAX_TABLE}
+ * cells (large dictionaries, wide alphabets), trie is stored compact as
+ * double-array (`base`, `check`) with failure links, 5 ints per state.
+ * Automaton can be written by {@link AhoCorasick#write(DataOutput)}, compact
+ * one is used directly from memory-mapped file by {@link AhoCorasick#map(ByteBuffer)}.
+ */
+public class AhoCorasick {
+	
+	/**
+	 * Root state
+	 */
+	public static final int ROOT = 0;
+	
+	/**
+	 * Largest transition table (states * symbols) of DFA, larger automatons are compact
+	 */
+	public static int MAX_TABLE = 1 << 20;
+	
+	/**
+	 * Symbols for characters lower than 256, 0 = not in alphabet
+	 */
+	protected final int[] low;
+	
+	/**
+	 * Sorted characters from alphabet higher or equal than 256
+	 */
+	protected final char[] high;
+	
+	/**
+	 * Symbols for `high` characters
+	 */
+	protected final int[] highSymbols;
+	
+	/**
+	 * Number of symbols including 0 (not in alphabet)
+	 */
+	protected final int width;
+	
+	/**
+	 * Transition table, `delta[state * width + symbol]`, `null` if compact
+	 */
+	protected final int[] delta;
+	
+	/**
+	 * Longest pattern ending in given state, or `-1` (DFA)
+	 */
+	protected final int[] out;
+	
+	/**
+	 * Dictionary suffix link - nearest shorter state with pattern, or `-1` (DFA)
+	 */
+	protected final int[] dict;
+	
+	/**
+	 * Length of pattern
+	 */
+	protected final int[] lengths;
+	
+	/**
+	 * Length of longest pattern, `-1` until computed by {@link AhoCorasick#getLongest()}
+	 */
+	protected int longest = -1;
+	
+	/**
+	 * Number of states
+	 */
+	protected final int states;
+	
+	/**
+	 * Compact: cells of double-array, state is index of its cell
+	 */
+	protected final int cells;
+	
+	/**
+	 * Compact: child of state `s` by symbol `c` is `base[s] + c`, if `check` of it is `s`
+	 */
+	protected final IntBuffer base;
+	
+	/**
+	 * Compact: parent of cell, `-1` if cell is free
+	 */
+	protected final IntBuffer check;
+	
+	/**
+	 * Compact: failure link of state
+	 */
+	protected final IntBuffer fail;
+	
+	/**
+	 * Compact: longest pattern ending in given state, or `-1`
+	 */
+	protected final IntBuffer cout;
+	
+	/**
+	 * Compact: dictionary suffix link, or `-1`
+	 */
+	protected final IntBuffer cdict;
+	
+	/**
+	 * Compile automaton
+	 * 
+	 * @param keys Patterns. Index of pattern is index in this array.
+	 *        If same key is passed more times, first one is used.
+	 *        Empty and `null` keys are ignored.
+	 */
+	public AhoCorasick(char[][] keys) {
+		this(keys, false);
+	}
+	
+	/**
+	 * Compile automaton
+	 * 
+	 * @param keys Patterns, see {@link AhoCorasick#AhoCorasick(char[][])}
+	 * @param compact Always compact, even if DFA would be small
+	 */
+	public AhoCorasick(char[][] keys, boolean compact) {
+		/*
+		 * Alphabet
+		 */
+		boolean[] seenLow = new boolean[256];
+		char[] seenHigh = new char[16];
+		int nhigh = 0;
+		int nnodes = 1;
+		for(int i = 0, n = keys.length; i < n; i++) {
+			char[] key = keys[i];
+			if(key == null) {
+				continue;
+			}
+			nnodes += key.length;
+			for(int j = 0, m = key.length; j < m; j++) {
+				char c = key[j];
+				if(c < 256) {
+					seenLow[c] = true;
+				} else {
+					if(nhigh == seenHigh.length) {
+						seenHigh = Arrays.copyOf(seenHigh, nhigh * 2);
+					}
+					seenHigh[nhigh++] = c;
+				}
+			}
+		}
+		int sym = 1;
+		this.low = new int[256];
+		for(int c = 0; c < 256; c++) {
+			if(seenLow[c]) {
+				this.low[c] = sym++;
+			}
+		}
+		Arrays.sort(seenHigh, 0, nhigh);
+		int uniq = 0;
+		for(int i = 0; i < nhigh; i++) {
+			if(uniq == 0 || seenHigh[uniq - 1] != seenHigh[i]) {
+				seenHigh[uniq++] = seenHigh[i];
+			}
+		}
+		this.high = Arrays.copyOf(seenHigh, uniq);
+		this.highSymbols = new int[uniq];
+		for(int i = 0; i < uniq; i++) {
+			this.highSymbols[i] = sym++;
+		}
+		int w = sym;
+		this.width = w;
+		this.lengths = new int[keys.length];
+		
+		if(compact || (long) nnodes * w > MAX_TABLE) {
+			this.delta = null;
+			this.out = null;
+			this.dict = null;
+			Compact cmp = new Compact(this, keys);
+			this.states = cmp.states;
+			this.cells = cmp.cells;
+			this.base = IntBuffer.wrap(Arrays.copyOf(cmp.base, this.cells));
+			this.check = IntBuffer.wrap(Arrays.copyOf(cmp.check, this.cells));
+			this.fail = IntBuffer.wrap(Arrays.copyOf(cmp.fail, this.cells));
+			this.cout = IntBuffer.wrap(Arrays.copyOf(cmp.out, this.cells));
+			this.cdict = IntBuffer.wrap(Arrays.copyOf(cmp.dict, this.cells));
+			return;
+		}
+		this.cells = 0;
+		this.base = null;
+		this.check = null;
+		this.fail = null;
+		this.cout = null;
+		this.cdict = null;
+		
+		/*
+		 * Trie
+		 */
+		int[] delta = new int[nnodes * w];
+		int[] out = new int[nnodes];
+		Arrays.fill(out, -1);
+		int states = 1;
+		for(int i = 0, n = keys.length; i < n; i++) {
+			char[] key = keys[i];
+			if(key == null || key.length == 0) {
+				continue;
+			}
+			int st = ROOT;
+			for(int j = 0, m = key.length; j < m; j++) {
+				int idx = st * w + this.symbol(key[j]);
+				int next = delta[idx];
+				if(next == ROOT) {
+					next = states++;
+					delta[idx] = next;
+				}
+				st = next;
+			}
+			if(out[st] == -1) {
+				out[st] = i;
+			}
+			this.lengths[i] = key.length;
+		}
+		
+		/*
+		 * Failure links, resolved into transitions (BFS)
+		 */
+		int[] fail = new int[states];
+		int[] dict = new int[states];
+		int[] queue = new int[states];
+		int qhead = 0;
+		int qtail = 0;
+		dict[ROOT] = -1;
+		for(int s = 1; s < w; s++) {
+			int child = delta[s];
+			if(child != ROOT) {
+				fail[child] = ROOT;
+				dict[child] = -1;
+				queue[qtail++] = child;
+			}
+		}
+		while(qhead < qtail) {
+			int st = queue[qhead++];
+			int base = st * w;
+			int fbase = fail[st] * w;
+			for(int s = 1; s < w; s++) {
+				int child = delta[base + s];
+				if(child == ROOT) {
+					delta[base + s] = delta[fbase + s];
+				} else {
+					int f = delta[fbase + s];
+					fail[child] = f;
+					dict[child] = (out[f] != -1) ? f : dict[f];
+					queue[qtail++] = child;
+				}
+			}
+		}
+		
+		this.states = states;
+		this.delta = (states == nnodes) ? delta : Arrays.copyOf(delta, states * w);
+		this.out = (states == nnodes) ? out : Arrays.copyOf(out, states);
+		this.dict = dict;
+	}
+	
+	/**
+	 * Read automaton, see {@link AhoCorasick#map(ByteBuffer)}
+	 */
+	protected AhoCorasick(int[] low, char[] high, int[] highSymbols, int width, int[] lengths, int states,
+			int[] delta, int[] out, int[] dict,
+			int cells, IntBuffer base, IntBuffer check, IntBuffer fail, IntBuffer cout, IntBuffer cdict) {
+		this.low = low;
+		this.high = high;
+		this.highSymbols = highSymbols;
+		this.width = width;
+		this.lengths = lengths;
+		this.states = states;
+		this.delta = delta;
+		this.out = out;
+		this.dict = dict;
+		this.cells = cells;
+		this.base = base;
+		this.check = check;
+		this.fail = fail;
+		this.cout = cout;
+		this.cdict = cdict;
+	}
+	
+	/**
+	 * Builder of compact automaton. Keys are sorted, so children of every
+	 * node are known at once and no per-node table is needed
+	 */
+	protected static class Compact {
+		
+		protected int[] base;
+		protected int[] check;
+		protected int[] fail;
+		protected int[] out;
+		protected int[] dict;
+		protected int cells = 1;
+		protected int states = 1;
+		
+		/**
+		 * Next cell, which may be free (union-find with path compression),
+		 * `next[c] == c` for free cells
+		 */
+		protected int[] next;
+		
+		/**
+		 * Start of search for free cells
+		 */
+		protected int free = 1;
+		
+		protected Compact(AhoCorasick ac, final char[][] keys) {
+			int n = 0;
+			Integer[] order = new Integer[keys.length];
+			for(int i = 0; i < keys.length; i++) {
+				if(keys[i] != null && keys[i].length != 0) {
+					order[n++] = i;
+					ac.lengths[i] = keys[i].length;
+				}
+			}
+			//- Same keys are sorted by index, so first one is used
+			Arrays.sort(order, 0, n, new Comparator<Integer>() {
+				
+				@Override
+				public int compare(Integer a, Integer b) {
+					char[] k1 = keys[a];
+					char[] k2 = keys[b];
+					for(int i = 0, m = Math.min(k1.length, k2.length); i < m; i++) {
+						if(k1[i] != k2[i]) {
+							return (k1[i] < k2[i]) ? -1 : 1;
+						}
+					}
+					return (k1.length != k2.length) ? (k1.length - k2.length) : (a - b);
+				}
+			
+			});
+			
+			int cap = 1024;
+			this.base = new int[cap];
+			this.check = new int[cap];
+			this.fail = new int[cap];
+			this.out = new int[cap];
+			this.dict = new int[cap];
+			this.next = new int[cap];
+			for(int i = 0; i < cap; i++) {
+				this.next[i] = i;
+			}
+			this.next[ROOT] = 1;
+			Arrays.fill(this.check, -1);
+			Arrays.fill(this.out, -1);
+			this.check[ROOT] = -2;
+			this.dict[ROOT] = -1;
+			
+			//- BFS over nodes, node is range of sorted keys with same prefix of given depth
+			int[] qnode = new int[16];
+			int[] qlo = new int[16];
+			int[] qhi = new int[16];
+			int[] qdepth = new int[16];
+			qhi[0] = n;
+			int qhead = 0;
+			int qtail = 1;
+			int[] syms = new int[ac.width];
+			int[] starts = new int[ac.width + 1];
+			while(qhead < qtail) {
+				int node = qnode[qhead];
+				int lo = qlo[qhead];
+				int hi = qhi[qhead];
+				int depth = qdepth[qhead++];
+				//- Keys ending here are first
+				while(lo < hi && keys[order[lo]].length == depth) {
+					lo++;
+				}
+				int k = 0;
+				for(int i = lo; i < hi; i++) {
+					int sym = ac.symbol(keys[order[i]][depth]);
+					if(k == 0 || syms[k - 1] != sym) {
+						syms[k] = sym;
+						starts[k++] = i;
+					}
+				}
+				starts[k] = hi;
+				if(k == 0) {
+					continue;
+				}
+				int b = this.place(syms, k);
+				this.base[node] = b;
+				if(qtail + k > qnode.length) {
+					int len = Math.max(qnode.length * 2, qtail + k);
+					qnode = Arrays.copyOf(qnode, len);
+					qlo = Arrays.copyOf(qlo, len);
+					qhi = Arrays.copyOf(qhi, len);
+					qdepth = Arrays.copyOf(qdepth, len);
+				}
+				for(int j = 0; j < k; j++) {
+					int child = b + syms[j];
+					this.check[child] = node;
+					this.states++;
+					//- Failure link, shallower nodes are placed already
+					int f = ROOT;
+					if(node != ROOT) {
+						for(int st = this.fail[node];; st = this.fail[st]) {
+							int t = this.base[st] + syms[j];
+							if(t < this.cells && this.check[t] == st) {
+								f = t;
+								break;
+							}
+							if(st == ROOT) {
+								break;
+							}
+						}
+					}
+					this.fail[child] = f;
+					this.dict[child] = (this.out[f] != -1) ? f : this.dict[f];
+					int first = order[starts[j]];
+					if(keys[first].length == depth + 1) {
+						this.out[child] = first;
+					}
+					qnode[qtail] = child;
+					qlo[qtail] = starts[j];
+					qhi[qtail] = starts[j + 1];
+					qdepth[qtail++] = depth + 1;
+				}
+				//- Queue entries before head are not needed anymore
+				if(qhead > 4096 && qhead * 2 > qtail) {
+					int left = qtail - qhead;
+					System.arraycopy(qnode, qhead, qnode, 0, left);
+					System.arraycopy(qlo, qhead, qlo, 0, left);
+					System.arraycopy(qhi, qhead, qhi, 0, left);
+					System.arraycopy(qdepth, qhead, qdepth, 0, left);
+					qhead = 0;
+					qtail = left;
+				}
+			}
+		}
+		
+		/**
+		 * Find base for children with given symbols and mark their cells used
+		 * 
+		 * @return Base
+		 */
+		protected int place(int[] syms, int k) {
+			int c = this.free(this.free);
+			int tries = 0;
+			int skip = -1;
+			int b;
+			search:
+			for(;; c = this.free(c + 1)) {
+				b = c - syms[0];
+				//- Start of search is moved behind cells, which fit almost nothing
+				if(++tries == 128) {
+					skip = c;
+				}
+				if(b < 1) {
+					continue;
+				}
+				this.ensure(b + syms[k - 1] + 1);
+				for(int j = 1; j < k; j++) {
+					if(this.check[b + syms[j]] != -1) {
+						continue search;
+					}
+				}
+				break;
+			}
+			for(int j = 0; j < k; j++) {
+				this.check[b + syms[j]] = -2;
+				this.next[b + syms[j]] = b + syms[j] + 1;
+			}
+			this.cells = Math.max(this.cells, b + syms[k - 1] + 1);
+			this.free = this.free((tries >= 256) ? skip : this.free);
+			return b;
+		}
+		
+		/**
+		 * @return First free cell from `c`
+		 */
+		protected int free(int c) {
+			int r = c;
+			for(;;) {
+				this.ensure(r + 1);
+				if(this.next[r] == r) {
+					break;
+				}
+				r = this.next[r];
+			}
+			while(c != r) {
+				int n = this.next[c];
+				this.next[c] = r;
+				c = n;
+			}
+			return r;
+		}
+		
+		/**
+		 * Grow arrays to at least `len` cells
+		 */
+		protected void ensure(int len) {
+			if(len <= this.base.length) {
+				return;
+			}
+			int old = this.base.length;
+			int cap = Math.max(len, old + (old >> 1));
+			this.base = Arrays.copyOf(this.base, cap);
+			this.check = Arrays.copyOf(this.check, cap);
+			this.fail = Arrays.copyOf(this.fail, cap);
+			this.out = Arrays.copyOf(this.out, cap);
+			this.dict = Arrays.copyOf(this.dict, cap);
+			this.next = Arrays.copyOf(this.next, cap);
+			for(int i = old; i < cap; i++) {
+				this.next[i] = i;
+			}
+			Arrays.fill(this.check, old, cap, -1);
+			Arrays.fill(this.out, old, cap, -1);
+		}
+	
+	}
+	
+	/**
+	 * @return `true` if automaton is stored as double-array
+	 */
+	public boolean isCompact() {
+		return this.delta == null;
+	}
+	
+	/**
+	 * @param c Character
+	 * 
+	 * @return Symbol of character, 0 if not in alphabet
+	 */
+	public int symbol(char c) {
+		if(c < 256) {
+			return this.low[c];
+		}
+		int i = Arrays.binarySearch(this.high, c);
+		return (i < 0) ? 0 : this.highSymbols[i];
+	}
+	
+	/**
+	 * @param state Current state
+	 * @param c Next character
+	 * 
+	 * @return Next state
+	 */
+	public int next(int state, char c) {
+		if(this.delta != null) {
+			return this.delta[state * this.width + this.symbol(c)];
+		}
+		return this.step(state, this.symbol(c));
+	}
+	
+	/**
+	 * Compact transition, follows failure links
+	 */
+	protected int step(int state, int sym) {
+		if(sym == 0) {
+			return ROOT;
+		}
+		IntBuffer base = this.base;
+		IntBuffer check = this.check;
+		for(;;) {
+			int t = base.get(state) + sym;
+			if(t < this.cells && check.get(t) == state) {
+				return t;
+			}
+			if(state == ROOT) {
+				return ROOT;
+			}
+			state = this.fail.get(state);
+		}
+	}
+	
+	/**
+	 * @param state State
+	 * 
+	 * @return Longest pattern ending in this state or any shorter
+	 *         state linked by dictionary links, or `-1`. Use
+	 *         {@link AhoCorasick#nextMatch(int)} for following shorter
+	 */
+	public int firstMatch(int state) {
+		if(this.delta == null) {
+			return (this.cout.get(state) != -1) ? state : this.cdict.get(state);
+		}
+		return (this.out[state] != -1) ? state : this.dict[state];
+	}
+	
+	/**
+	 * @param match Value returned by {@link AhoCorasick#firstMatch(int)}
+	 *        or this method
+	 * 
+	 * @return Next shorter match or `-1`
+	 */
+	public int nextMatch(int match) {
+		return (this.delta == null) ? this.cdict.get(match) : this.dict[match];
+	}
+	
+	/**
+	 * @param match Value returned by {@link AhoCorasick#firstMatch(int)}
+	 *        or {@link AhoCorasick#nextMatch(int)}
+	 * 
+	 * @return Index of pattern
+	 */
+	public int pattern(int match) {
+		return (this.delta == null) ? this.cout.get(match) : this.out[match];
+	}
+	
+	/**
+	 * @param pattern Index of pattern
+	 * 
+	 * @return Length of pattern
+	 */
+	public int length(int pattern) {
+		return this.lengths[pattern];
+	}
+	
+	/**
+	 * @return Length of longest pattern, 0 if there are none
+	 */
+	public int getLongest() {
+		int max = this.longest;
+		if(max == -1) {
+			max = 0;
+			for(int len : this.lengths) {
+				max = Math.max(max, len);
+			}
+			this.longest = max;
+		}
+		return max;
+	}
+	
+	/**
+	 * @return Number of states
+	 */
+	public int size() {
+		return this.states;
+	}
+	
+	/**
+	 * @return Approximate size of tables, bytes
+	 */
+	public long getBytes() {
+		long ret = (this.low.length + this.highSymbols.length + this.lengths.length) * 4L + this.high.length * 2L;
+		if(this.delta == null) {
+			return ret + this.cells * 20L;
+		}
+		return ret + (this.delta.length + this.out.length + this.dict.length) * 4L;
+	}
+	
+	/**
+	 * Find all matches in text. For every start offset (relative to `off`)
+	 * is built list of matched patterns, longest first:
+	 *   m.heads[start] -> first match, m.nexts[match] -> next match or -1,
+	 *   m.found[match] -> pattern, m.lengths[match] -> length
+	 * 
+	 * @param text Text to scan
+	 * @param off Offset of text
+	 * @param len Length of text
+	 * @param m Output, buffers are grown when needed
+	 * 
+	 * @return Number of matches
+	 */
+	public int find(char[] text, int off, int len, Matches m) {
+		int[] heads = m.heads(len);
+		Arrays.fill(heads, 0, len, -1);
+		return this.find(text, off, len, m, 0, 0);
+	}
+	
+	/**
+	 * Find all matches in text and add them to matches already found
+	 * by another automaton. Lists are not sorted by length then.
+	 * 
+	 * @param text Text to scan
+	 * @param off Offset of text
+	 * @param len Length of text
+	 * @param m Output, heads must be already cleared for `len`
+	 * @param count Number of matches already in `m`
+	 * @param shift Added to index of every found pattern
+	 * 
+	 * @return Number of matches
+	 */
+	public int find(char[] text, int off, int len, Matches m, int count, int shift) {
+		int st = ROOT;
+		if(this.delta == null) {
+			IntBuffer out = this.cout;
+			IntBuffer dict = this.cdict;
+			for(int i = 0; i < len; i++) {
+				st = this.step(st, this.symbol(text[off + i]));
+				for(int mt = (out.get(st) != -1) ? st : dict.get(st); mt != -1; mt = dict.get(mt)) {
+					int pat = out.get(mt);
+					int start = i - this.lengths[pat] + 1;
+					count = m.add(count, start, pat + shift, this.lengths[pat]);
+				}
+			}
+			return count;
+		}
+		int[] delta = this.delta;
+		int w = this.width;
+		for(int i = 0; i < len; i++) {
+			st = delta[st * w + this.symbol(text[off + i])];
+			for(int mt = this.firstMatch(st); mt != -1; mt = this.dict[mt]) {
+				int pat = this.out[mt];
+				int start = i - this.lengths[pat] + 1;
+				count = m.add(count, start, pat + shift, this.lengths[pat]);
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * @param key Key
+	 * 
+	 * @return Index of pattern equal to `key`, or `-1`
+	 */
+	public int lookup(char[] key) {
+		if(key == null || key.length == 0) {
+			return -1;
+		}
+		int st = ROOT;
+		for(int i = 0, n = key.length; i < n; i++) {
+			int sym = this.symbol(key[i]);
+			if(sym == 0) {
+				return -1;
+			}
+			if(this.delta == null) {
+				int t = this.base.get(st) + sym;
+				if(t >= this.cells || this.check.get(t) != st) {
+					return -1;
+				}
+				st = t;
+			} else {
+				st = this.delta[st * this.width + sym];
+			}
+		}
+		/*
+		 * Pattern ending here is suffix of key, so it is the key itself
+		 * when lengths are same
+		 */
+		int pat = this.pattern(st);
+		return (pat != -1 && this.lengths[pat] == key.length) ? pat : -1;
+	}
+	
+	/**
+	 * Write automaton, readable by {@link AhoCorasick#map(ByteBuffer)}
+	 * 
+	 * @param out Output
+	 * 
+	 * @throws IOException On write error
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(this.width);
+		out.writeInt(this.high.length);
+		out.writeInt(this.lengths.length);
+		out.writeInt(this.states);
+		out.writeInt((this.delta == null) ? this.cells : -1);
+		AhoCorasick.write(out, IntBuffer.wrap(this.low));
+		for(int i = 0; i < this.high.length; i++) {
+			out.writeInt(this.high[i]);
+		}
+		AhoCorasick.write(out, IntBuffer.wrap(this.highSymbols));
+		AhoCorasick.write(out, IntBuffer.wrap(this.lengths));
+		if(this.delta != null) {
+			AhoCorasick.write(out, IntBuffer.wrap(this.delta));
+			AhoCorasick.write(out, IntBuffer.wrap(this.out));
+			AhoCorasick.write(out, IntBuffer.wrap(this.dict));
+			return;
+		}
+		AhoCorasick.write(out, this.base);
+		AhoCorasick.write(out, this.check);
+		AhoCorasick.write(out, this.fail);
+		AhoCorasick.write(out, this.cout);
+		AhoCorasick.write(out, this.cdict);
+	}
+	
+	protected static void write(DataOutput out, IntBuffer buf) throws IOException {
+		for(int i = 0, n = buf.limit(); i < n; i++) {
+			out.writeInt(buf.get(i));
+		}
+	}
+	
+	/**
+	 * Read automaton written by {@link AhoCorasick#write(DataOutput)}. Tables of
+	 * compact automaton are not copied, so buffer may be memory-mapped file.
+	 * Transition table of DFA is copied to heap. Position of buffer is
+	 * moved after automaton
+	 * 
+	 * @param buf Buffer (big-endian)
+	 * 
+	 * @return Automaton
+	 */
+	public static AhoCorasick map(ByteBuffer buf) {
+		IntBuffer ib = buf.slice().asIntBuffer();
+		int width = ib.get();
+		int nhigh = ib.get();
+		int npat = ib.get();
+		int states = ib.get();
+		int cells = ib.get();
+		int[] low = new int[256];
+		ib.get(low);
+		char[] high = new char[nhigh];
+		for(int i = 0; i < nhigh; i++) {
+			high[i] = (char) ib.get();
+		}
+		int[] highSymbols = new int[nhigh];
+		ib.get(highSymbols);
+		int[] lengths = new int[npat];
+		ib.get(lengths);
+		AhoCorasick ret;
+		if(cells == -1) {
+			int[] delta = new int[states * width];
+			int[] out = new int[states];
+			int[] dict = new int[states];
+			ib.get(delta);
+			ib.get(out);
+			ib.get(dict);
+			ret = new AhoCorasick(low, high, highSymbols, width, lengths, states, delta, out, dict,
+					0, null, null, null, null, null);
+		} else {
+			IntBuffer base = AhoCorasick.slice(ib, cells);
+			IntBuffer check = AhoCorasick.slice(ib, cells);
+			IntBuffer fail = AhoCorasick.slice(ib, cells);
+			IntBuffer cout = AhoCorasick.slice(ib, cells);
+			IntBuffer cdict = AhoCorasick.slice(ib, cells);
+			ret = new AhoCorasick(low, high, highSymbols, width, lengths, states, null, null, null,
+					cells, base, check, fail, cout, cdict);
+		}
+		buf.position(buf.position() + ib.position() * 4);
+		return ret;
+	}
+	
+	/**
+	 * @return Next `len` ints of buffer, position is moved after them
+	 */
+	protected static IntBuffer slice(IntBuffer buf, int len) {
+		IntBuffer ret = buf.slice();
+		ret.limit(len);
+		buf.position(buf.position() + len);
+		return ret;
+	}
+	
+	/**
+	 * Matches found by {@link AhoCorasick#find(char[], int, int, Matches)},
+	 * grouped by start offset, longest pattern first
+	 */
+	public static class Matches {
+		
+		/**
+		 * First match for start offset, or `-1`
+		 */
+		public int[] heads = new int[64];
+		
+		/**
+		 * Pattern of match
+		 */
+		public int[] found = new int[16];
+		
+		/**
+		 * Next (shorter) match with same start offset, or `-1`
+		 */
+		public int[] nexts = new int[16];
+		
+		/**
+		 * Length of matched text, differs from pattern for {@link FuzzyMatcher}
+		 */
+		public int[] lengths = new int[16];
+		
+		/**
+		 * @param len Minimal length
+		 * 
+		 * @return Heads array with minimal length `len`
+		 */
+		protected int[] heads(int len) {
+			if(this.heads.length < len) {
+				this.heads = new int[Math.max(len, this.heads.length * 2)];
+			}
+			return this.heads;
+		}
+		
+		/**
+		 * Matches of one start offset are added from shortest to longest,
+		 * so prepending keeps longest first
+		 * 
+		 * @return New number of matches
+		 */
+		protected int add(int count, int start, int pattern, int length) {
+			if(count == this.found.length) {
+				this.found = Arrays.copyOf(this.found, count * 2);
+				this.nexts = Arrays.copyOf(this.nexts, count * 2);
+				this.lengths = Arrays.copyOf(this.lengths, count * 2);
+			}
+			this.found[count] = pattern;
+			this.lengths[count] = length;
+			this.nexts[count] = this.heads[start];
+			this.heads[start] = count;
+			return count + 1;
+		}
+	
+	}
+	
+}
@@ -32,13 +32,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
-import org.bukkit.ChatColor;
-import org.bukkit.configuration.ConfigurationSection;
-
 public class AntiSwear {
 	
 	/**
@@ -77,6 +78,13 @@ public class AntiSwear {
 	public static final Pattern DIACRITICS =
 			Pattern.compile("[\\p{InCombiningDiacriticalMarks}\\p{IsLm}\\p{IsSk}]+");
 	
+	/**
+	 * Folded character for every character, 0 if character is removed
+	 * 
+	 * @see AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)
+	 */
+	protected static final char[] FOLD = AntiSwear.buildFold();
+	
 	public static String WHITELIST_SPACE_EQUALS = ".,:;?! \t\n\r\f";
 	
 	/**
@@ -84,6 +92,118 @@ public class AntiSwear {
 	 */
 	protected static char[][] EMPTY = new char[0][];
 	
+	/**
+	 * Batches are split until parts have at most this many messages
+	 */
+	public static int BATCH_SPLIT = 64;
+	
+	/**
+	 * Messages processed at once by {@link AntiSwear#processAll(Iterator)}
+	 */
+	public static int BATCH_CHUNK = 4096;
+	
+	/**
+	 * Pool for batches, created on first use
+	 */
+	protected static volatile ForkJoinPool POOL = null;
+	
+	/**
+	 * @return Shared pool for batches (daemon threads, one per CPU)
+	 */
+	public static ForkJoinPool getPool() {
+		ForkJoinPool pool = POOL;
+		if(pool == null) {
+			synchronized(AntiSwear.class) {
+				pool = POOL;
+				if(pool == null) {
+					POOL = pool = new ForkJoinPool();
+				}
+			}
+		}
+		return pool;
+	}
+	
+	/**
+	 * Compiled blacklist, whitelist and substitutions. Replaced as whole
+	 * on every change, so checked messages always see complete lists
+	 */
+	protected final AtomicReference<CompiledFilter> filter = 
+			new AtomicReference<CompiledFilter>(CompiledFilter.EMPTY);
+	
+	
+	/**
+	 * Cache of processed messages, `null` if disabled
+	 */
+	protected volatile ResultCache cache = null;
+	
+	/**
+	 * Latency histograms, `null` if disabled
+	 */
+	protected volatile Metrics metrics = null;
+	
+	/**
+	 * Create instance with no blacklist nor whitelist
+	 */
+	public AntiSwear() {}
+	
+	/**
+	 * @return Current compiled filter
+	 */
+	public CompiledFilter getFilter() {
+		return this.filter.get();
+	}
+	
+	/**
+	 * Replace compiled filter. Messages being checked finish with old one
+	 * 
+	 * @param filter New compiled filter
+	 */
+	public void setFilter(CompiledFilter filter) {
+		if(filter == null) {
+			throw new IllegalArgumentException("Filter cannot be null!");
+		}
+		this.filter.set(filter);
+		this.invalidate();
+	}
+	
+	/**
+	 * @return Cache of processed messages, `null` if disabled
+	 */
+	public ResultCache getCache() {
+		return this.cache;
+	}
+	
+	/**
+	 * @param cache Cache of processed messages, `null` to disable
+	 */
+	public void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+	
+	/**
+	 * @return Latency histograms, `null` if disabled
+	 */
+	public Metrics getMetrics() {
+		return this.metrics;
+	}
+	
+	/**
+	 * @param metrics Latency histograms, `null` to disable
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Remove cached results of old filter
+	 */
+	protected void invalidate() {
+		ResultCache cache = this.cache;
+		if(cache != null) {
+			cache.clear();
+		}
+	}
+	
 	/**
 	 * Blacklist - Disallowed words
 	 * Format of every char[][2] elements:
@@ -91,76 +211,243 @@ public class AntiSwear {
 	 *  
 	 * For example:
 	 *   { "idiot", "id**t", "noob", "n**b", "duck", "d***" }
+	 * 
+	 * @return Copy of current blacklist
 	 */
-	public char[][] BLACKLIST = null;
+	public char[][] getBlacklist() {
+		return this.filter.get().getBlacklist();
+	}
 	
 	/**
 	 * Whitelist - Allowed words
-	 * Contains only char
+	 * 
+	 * @return Copy of current whitelist
 	 */
-	public char[][] WHITELIST = null;
+	public char[][] getWhitelist() {
+		return this.filter.get().getWhitelist();
+	}
 	
+	/**
+	 * @return Substitutions applied when editing messages, or `null`
+	 */
+	public Transducer getSubstitutions() {
+		return this.filter.get().getSubstitutions();
+	}
 	
 	/**
-	 * Create instance with no blacklist nor whitelist
+	 * @param substitutions Substitutions applied when editing messages and
+	 *        blacklisted or whitelisted words. `null` to use only {@link AntiSwear#FOLD}
 	 */
-	public AntiSwear() {
-		this.BLACKLIST = EMPTY;
-		this.WHITELIST = EMPTY;
+	public void setSubstitutions(final Transducer substitutions) {
+		this.update(new Update() {
+			
+			@Override
+			public CompiledFilter apply(CompiledFilter cur) {
+				return new CompiledFilter(cur.getBlacklist(), cur.whitelist, substitutions, cur.fuzzyList);
+			}
+		
+		});
 	}
 	
-	public void addWhitelist(ConfigurationSection sec) {
-		this.WHITELIST = AntiSwear.contactSort(this.WHITELIST, AntiSwear.loadWhitelist(sec));
+	/**
+	 * @return Words matched with typos, pairs of edited word and allowed distance
+	 */
+	public char[][] getFuzzy() {
+		return this.filter.get().getFuzzy();
+	}
+	
+	/**
+	 * @param words Blacklisted words matched also with typos, every map is
+	 *        word and allowed distance (0 - {@link FuzzyMatcher#MAX_DISTANCE}),
+	 *        see {@link FuzzyMatcher#limit(int, int)}. `null` for exact matching only
+	 */
+	public void setFuzzy(Iterable<Map<?,?>> words) {
+		final char[][] fuzzy = AntiSwear.loadBlacklist(words);
+		this.update(new Update() {
+			
+			@Override
+			public CompiledFilter apply(CompiledFilter cur) {
+				return new CompiledFilter(cur.getBlacklist(), cur.whitelist, cur.substitutions, fuzzy);
+			}
+		
+		});
+	}
+	
+	/**
+	 * Change of compiled filter
+	 */
+	protected static interface Update {
+		
+		/**
+		 * @param cur Current filter
+		 * 
+		 * @return New filter
+		 */
+		public CompiledFilter apply(CompiledFilter cur);
+	
+	}
+	
+	/**
+	 * Apply change to current filter. Repeated, if filter was
+	 * replaced by other thread meanwhile
+	 * 
+	 * @param upd Change
+	 * 
+	 * @return New filter
+	 */
+	protected CompiledFilter update(Update upd) {
+		while(true) {
+			CompiledFilter cur = this.filter.get();
+			long time = System.nanoTime();
+			CompiledFilter nev = upd.apply(cur);
+			time = System.nanoTime() - time;
+			if(this.filter.compareAndSet(cur, nev)) {
+				if(nev != cur) {
+					this.invalidate();
+					Metrics metrics = this.metrics;
+					if(metrics != null) {
+						metrics.compile.record(time);
+					}
+				}
+				return nev;
+			}
+		}
+	}
+	
+	/**
+	 * @param blacklist Loaded blacklist to add, may be `null`
+	 * @param whitelist Loaded whitelist to add, may be `null`
+	 */
+	protected void add(final char[][] blacklist, final char[][] whitelist) {
+		if((blacklist == null || blacklist.length == 0) && (whitelist == null || whitelist.length == 0)) {
+			return;
+		}
+		this.update(new Update() {
+			
+			@Override
+			public CompiledFilter apply(CompiledFilter cur) {
+				return new CompiledFilter(AntiSwear.contactSortTwo(cur.getBlacklist(), blacklist), 
+						AntiSwear.contactSort(cur.whitelist, whitelist), cur.substitutions, cur.fuzzyList);
+			}
+		
+		});
+	}
+	
+	/**
+	 * Add word to blacklist or change its replacement without compiling
+	 * whole filter again, see {@link CompiledFilter#withWord(char[], char[])}
+	 * 
+	 * @param search Swear
+	 * @param replace Replacement
+	 * 
+	 * @return `true` If blacklist was changed
+	 */
+	public boolean addWord(String search, String replace) {
+		final char[][] pair = AntiSwear.loadBlacklist(search, replace);
+		if(pair == null) {
+			return false;
+		}
+		final boolean[] changed = new boolean[1];
+		this.update(new Update() {
+			
+			@Override
+			public CompiledFilter apply(CompiledFilter cur) {
+				CompiledFilter nev = cur.withWord(pair[0], pair[1]);
+				changed[0] = (nev != cur);
+				return nev;
+			}
+		
+		});
+		return changed[0];
+	}
+	
+	/**
+	 * Remove word from blacklist without compiling whole filter
+	 * again, see {@link CompiledFilter#withoutWord(char[])}
+	 * 
+	 * @param search Swear
+	 * 
+	 * @return `true` If word was blacklisted
+	 */
+	public boolean removeWord(String search) {
+		if(search == null) {
+			return false;
+		}
+		final char[] word = AntiSwear.removeTyposAll(search).toCharArray();
+		final boolean[] changed = new boolean[1];
+		this.update(new Update() {
+			
+			@Override
+			public CompiledFilter apply(CompiledFilter cur) {
+				CompiledFilter nev = cur.withoutWord(word);
+				changed[0] = (nev != null);
+				return (nev == null) ? cur : nev;
+			}
+		
+		});
+		return changed[0];
+	}
+	
+	/**
+	 * Compile words added or removed at runtime into matcher.
+	 * Slow for big blacklists, do not call on main thread
+	 */
+	public void compact() {
+		this.update(new Update() {
+			
+			@Override
+			public CompiledFilter apply(CompiledFilter cur) {
+				return cur.compact();
+			}
+		
+		});
 	}
 	
 	public void addWhitelist(Iterable<String> wh) {
-		this.WHITELIST = AntiSwear.contactSort(this.WHITELIST, AntiSwear.loadWhitelist(wh));
+		this.add(null, AntiSwear.loadWhitelist(wh));
 	}
 	
 	public void addWhitelist(Iterator<String> wh) {
-		this.WHITELIST = AntiSwear.contactSort(this.WHITELIST, AntiSwear.loadWhitelist(wh));
+		this.add(null, AntiSwear.loadWhitelist(wh));
 	}
 	
 	public void addWhitelist(String... strs) {
-		this.WHITELIST = AntiSwear.contactSort(this.WHITELIST, AntiSwear.loadWhitelist(strs));
+		this.add(null, AntiSwear.loadWhitelist(strs));
 	}
 	
 	public void addWhitelistRaw(char[]... sorted) {
-		this.WHITELIST = AntiSwear.contactSort(this.WHITELIST, sorted);
+		this.add(null, sorted);
 	}
 	
 	
 	public void addBlacklist(String search, String replace) {
-		this.BLACKLIST = AntiSwear.contactSortTwo(this.BLACKLIST, AntiSwear.loadBlacklist(search, replace));
-	}
-	
-	public void addBlacklist(ConfigurationSection sec) {
-		this.BLACKLIST = AntiSwear.contactSortTwo(this.BLACKLIST, AntiSwear.loadBlacklist(sec));
+		this.add(AntiSwear.loadBlacklist(search, replace), null);
 	}
 	
 	public void addBlacklist(Iterable<Map<?,?>> it) {
-		this.BLACKLIST = AntiSwear.contactSortTwo(this.BLACKLIST, AntiSwear.loadBlacklist(it));
+		this.add(AntiSwear.loadBlacklist(it), null);
 	}
 	
 	public void addBlacklist(Iterator<Map<?,?>> it) {
-		this.BLACKLIST = AntiSwear.contactSortTwo(this.BLACKLIST, AntiSwear.loadBlacklist(it));
+		this.add(AntiSwear.loadBlacklist(it), null);
 	}
 	
 	public void addBlacklist(Map<String,String> map) {
-		this.BLACKLIST = AntiSwear.contactSortTwo(this.BLACKLIST, AntiSwear.loadBlacklist(map));
+		this.add(AntiSwear.loadBlacklist(map), null);
 	}
 	
 	public void addBlacklistSorted(Map<char[],char[]> map) {
-		this.BLACKLIST = AntiSwear.contactSortTwo(this.BLACKLIST, AntiSwear.loadBlacklistSorted(map));
+		this.add(AntiSwear.loadBlacklistSorted(map), null);
 	}
 	
 	public void addBlacklistRaw(char[]... sorted) {
-		this.BLACKLIST = AntiSwear.contactSortTwo(this.BLACKLIST, sorted);
+		this.add(sorted, null);
 	}
 	
-
+	
 	/**
 	 * Use {@link AntiSwear#DIACRITICS} pattern to remove diacritics
+	 * Not used for checking messages anymore, see {@link AntiSwear#FOLD}
 	 * 
 	 * @param cs String to process
 	 * 
@@ -188,7 +475,7 @@ public class AntiSwear {
 			case 'w':
 			case 'u':
 				return 'u';
-				
+			
 			case 'k':
 			case 'c':
 			case '©':
@@ -208,13 +495,13 @@ public class AntiSwear {
 			case 'a':
 			case 'i':
 				return 'i';
-				
+			
 			case 'ß':
 			case 'b':
 			case 'Þ':
 			case 'þ':
 				return 'b';
-				
+			
 			case 'Ð':
 			case 'ð':
 			case 'Đ':
@@ -223,7 +510,7 @@ public class AntiSwear {
 			case 'ɖ':
 			case 'd':
 				return 'd';
-				
+			
 			case 'z':
 			case '$':
 			case '2':
@@ -237,67 +524,179 @@ public class AntiSwear {
 		return c;
 	}
 	
+	/**
+	 * @param c Character
+	 * 
+	 * @return `true` If character is kept in edited string by
+	 *         {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)}
+	 */
+	public static boolean isKept(char c) {
+		return AntiSwear.FOLD[c] != 0;
+	}
+	
+	/**
+	 * @param in Original string
+	 * @param in_off Offset of `in` string
+	 * @param indexes Indexes of edited characters in `in` string
+	 * @param ind_off Offset of indexes parameter
+	 * @param i Index of edited character
+	 * 
+	 * @return Index of first original character which was
+	 *         edited to character `i`
+	 */
+	public static int runStart(char[] in, int in_off, int[] indexes, int ind_off, int i) {
+		int last = indexes[ind_off + i];
+		int first = (i == 0) ? in_off : (indexes[ind_off + i - 1] + 1);
+		while(first < last && !AntiSwear.isKept(in[first])) {
+			first++;
+		}
+		return first;
+	}
+	
+	/**
+	 * @param c Character
+	 * 
+	 * @return `true` If character matches space in whitelisted words
+	 *         (see {@link AntiSwear#WHITELIST_SPACE_EQUALS})
+	 */
+	public static boolean isSpaceEquals(char c) {
+		return WHITELIST_SPACE_EQUALS.indexOf(c) != -1;
+	}
+	
 	/**
 	 * Make string readable for plugin and remove special and unicode characters
 	 * - remove punctuation, hiccups and debt
 	 * - remove similar characters
 	 * 
-	 * @see {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int[])}
+	 * @see {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)}
 	 */
 	public static String removeTyposAll(String in) {
-		char[] chars = AntiSwear.stripDiacritics(in).toCharArray();
-		int nevlen = AntiSwear.removeTyposSlang(chars, chars, 0, in.length(), null, 0);
+		char[] chars = in.toCharArray();
+		int nevlen = AntiSwear.removeTyposSlang(chars, chars, 0, chars.length, null, 0);
 		return String.copyValueOf(chars, 0, nevlen);
 	}
 	
 	/**
 	 * Make string readable for plugin
-	 * - remove similar characters excluding unicode
+	 * - remove similar characters including unicode
 	 * 
-	 * @see {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int[])}
+	 * @see {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)}
 	 */
 	public static String removeTyposSlang(String in) {
-		char[] chars = AntiSwear.stripDiacritics(in).toCharArray();
-		int nevlen = AntiSwear.removeTyposSlang(chars, chars, 0, in.length(), null, 0);
-		return String.copyValueOf(chars, 0, nevlen);
+		return AntiSwear.removeTyposAll(in);
 	}
 	
 	/**
 	 * Make string readable for plugin and remove special and unicode characters
+	 * in one pass using {@link AntiSwear#FOLD} table - diacritics, case and
+	 * similar characters are folded, other characters removed and repeated
+	 * characters joined. `out` may be same array as `bts`
 	 * 
 	 * @param out Output buffer
 	 * @param bts Input buffer
 	 * @param off Offset of input buffer
 	 * @param len Length of input buffer
-	 * @param indexes Index of character (pair with out parameter; may be null)
+	 * @param indexes Index of character in `bts` (pair with out parameter; may be null).
+	 *        For repeated characters index of the last one
 	 * @param ind_off Offset of indexes parameter
 	 * 
 	 * @return Length of new string (of `out` parameter)
 	 */
 	public static int removeTyposSlang(char[] out, char[] bts, int off, int len, int[] indexes, int ind_off) {
+		char[] fold = AntiSwear.FOLD;
 		len += off;
 		int cur = off;
 		int outi = 0;
-		int prev = -1;
+		char prev = 0;
 		for(; cur < len; cur++) {
-			int c = AntiSwear.getSimiliar(bts[cur]);
-			if(Character.isLetter(c) || Character.isDigit(c)) {
-				if(c == prev) {
-					if(indexes != null) {
-						indexes[ind_off + outi - 1] = cur;
-					}
-				} else {
-					prev = c;
-					if(indexes != null) {
-						indexes[ind_off + outi] = cur;
-					}
-					out[outi++] = (char) c;
+			char c = fold[bts[cur]];
+			if(c == 0) {
+				continue;
+			}
+			if(c == prev) {
+				if(indexes != null) {
+					indexes[ind_off + outi - 1] = cur;
+				}
+			} else {
+				prev = c;
+				if(indexes != null) {
+					indexes[ind_off + outi] = cur;
 				}
+				out[outi++] = c;
 			}
 		}
 		return outi;
 	}
 	
+	/**
+	 * Build {@link AntiSwear#FOLD} table
+	 * 
+	 * Every character is decomposed (NFD), diacritics are removed as
+	 * by {@link AntiSwear#stripDiacritics(CharSequence)} and
+	 * {@link AntiSwear#getSimiliar(char)} is applied. If only one letter
+	 * or digit is left, it is used, if more are left (eg. hangul)
+	 * original character is kept, otherwise character is removed
+	 * 
+	 * @return New table
+	 */
+	protected static char[] buildFold() {
+		char[] fold = new char[Character.MAX_VALUE + 1];
+		
+		//- Decompose all characters at once, separated by '\0' (starter, stays in place)
+		StringBuilder sb = new StringBuilder(fold.length * 2);
+		for(int i = 1, n = fold.length; i < n; i++) {
+			sb.append('\0').append((char) i);
+		}
+		String nfd = Normalizer.normalize(sb, Normalizer.Form.NFD);
+		
+		for(int i = 1, n = nfd.length(), cur = 1; cur < n; i++) {
+			char base = 0;
+			int left = 0;
+			for(; cur < n; cur++) {
+				char c = nfd.charAt(cur);
+				if(c == '\0') {
+					cur++;
+					break;
+				}
+				if(!AntiSwear.isDiacritic(c) && AntiSwear.isLetterOrDigit(AntiSwear.getSimiliar(c))) {
+					base = AntiSwear.getSimiliar(c);
+					left++;
+				}
+			}
+			if(left == 1) {
+				fold[i] = base;
+			} else if(left != 0) {
+				base = AntiSwear.getSimiliar((char) i);
+				if(AntiSwear.isLetterOrDigit(base)) {
+					fold[i] = base;
+				}
+			}
+		}
+		return fold;
+	}
+	
+	/**
+	 * @param c Character
+	 * 
+	 * @return `true` If character is letter or digit
+	 */
+	protected static boolean isLetterOrDigit(char c) {
+		return Character.isLetter(c) || Character.isDigit(c);
+	}
+	
+	/**
+	 * @param c Character
+	 * 
+	 * @return `true` If character is removed by {@link AntiSwear#DIACRITICS}
+	 */
+	protected static boolean isDiacritic(char c) {
+		if(c >= '\u0300' && c <= '\u036F') {
+			return true;
+		}
+		int type = Character.getType(c);
+		return type == Character.MODIFIER_LETTER || type == Character.MODIFIER_SYMBOL;
+	}
+	
 	/**
 	 * Equals method for char array
 	 * 
@@ -390,7 +789,7 @@ public class AntiSwear {
 	 * @param in_off Offset of `in` string
 	 * @param in_len Length of `in` string
 	 * @param indexes Pair with `edited`. The last `indexes` parameter from
-	 *        {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[])}
+	 *        {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)}
 	 * @param ind_off Offset of indexes parameter
 	 * 
 	 * @return If any swear was matched, array from `in` parameter is modified 
@@ -398,66 +797,172 @@ public class AntiSwear {
 	 */
 	public String doReplace(char[] edited, int edited_off, int edited_len, 
 			char[] in, int in_off, int in_len, int[] indexes, int ind_off) {
-		edited_len += edited_off;
+		return this.doReplace(edited, edited_off, edited_len, in, in_off, in_len, indexes, null, ind_off);
+	}
+	
+	/**
+	 * Do replace on string `in`.
+	 * 
+	 * @param edited Edited string.
+	 * @param edited_off Offset of `edited` string
+	 * @param edited_len Length of `edited` string
+	 * @param in Original string, in which will be bad words replaced
+	 * @param in_off Offset of `in` string
+	 * @param in_len Length of `in` string
+	 * @param indexes Pair with `edited`. The `indexes` parameter from
+	 *        {@link Transducer#removeTyposSlang(char[], char[], int, int, int[], int[], int)}
+	 * @param firsts Pair with `edited`. The `firsts` parameter from
+	 *        {@link Transducer#removeTyposSlang(char[], char[], int, int, int[], int[], int)}.
+	 *        If `null`, `indexes` are used
+	 * @param ind_off Offset of indexes and firsts parameters
+	 * 
+	 * @return If any swear was matched, returns new modified string. Otherwise returns `null`
+	 */
+	public String doReplace(char[] edited, int edited_off, int edited_len, 
+			char[] in, int in_off, int in_len, int[] indexes, int[] firsts, int ind_off) {
+		return this.doReplace(this.filter.get(), edited, edited_off, edited_len, 
+				in, in_off, in_len, indexes, firsts, ind_off);
+	}
+	
+	/**
+	 * Do replace on string `in` using given filter
+	 * 
+	 * @param cmp Compiled filter, which edited the string
+	 * 
+	 * @see AntiSwear#doReplace(char[], int, int, char[], int, int, int[], int[], int)
+	 */
+	public String doReplace(CompiledFilter cmp, char[] edited, int edited_off, int edited_len, 
+			char[] in, int in_off, int in_len, int[] indexes, int[] firsts, int ind_off) {
+		return this.doReplace(cmp, edited, edited_off, edited_len, in, in_off, in_len, 
+				indexes, firsts, ind_off, null);
+	}
+	
+	/**
+	 * Do replace on string `in` using given filter and record replaced swears
+	 * 
+	 * @param cmp Compiled filter, which edited the string
+	 * @param rec Filled with replaced swears, may be `null`
+	 * 
+	 * @see AntiSwear#doReplace(char[], int, int, char[], int, int, int[], int[], int)
+	 */
+	public String doReplace(CompiledFilter cmp, char[] edited, int edited_off, int edited_len, 
+			char[] in, int in_off, int in_len, int[] indexes, int[] firsts, int ind_off, 
+			ResultCache.Recorder rec) {
+		return this.doReplace(cmp, edited, edited_off, edited_len, in, in_off, in_len, 
+				indexes, firsts, ind_off, rec, null);
+	}
+	
+	/**
+	 * @param metrics Whitelist checks are timed, if not `null`
+	 * 
+	 * @see AntiSwear#doReplace(CompiledFilter, char[], int, int, char[], int, int, int[], int[], int, ResultCache.Recorder)
+	 */
+	protected String doReplace(CompiledFilter cmp, char[] edited, int edited_off, int edited_len, 
+			char[] in, int in_off, int in_len, int[] indexes, int[] firsts, int ind_off, 
+			ResultCache.Recorder rec, Metrics metrics) {
 		in_len += in_off;
-		boolean had = false;
-		StringBuilder sb = new StringBuilder();
-		int oelen = edited_len - 1; //- Minimal length of blacklisted word
-		int startfrom = 0;
+		if(firsts == null) {
+			firsts = indexes;
+		}
 		
-		char[][] bl = this.BLACKLIST;
-		char[][] wl = this.WHITELIST;
+		AhoCorasick.Matches m = Scratch.get(0).matches;
+		int count = cmp.matcher.find(edited, edited_off, edited_len, m);
+		if(cmp.addedMatcher != null) {
+			count = cmp.addedMatcher.find(edited, edited_off, edited_len, m, count, cmp.replace.size());
+		}
+		ind_off += edited_off;
+		if(cmp.fuzzy != null) {
+			count = cmp.fuzzy.find(edited, edited_off, edited_len, in, indexes, firsts, ind_off, m, count);
+		}
+		if(count == 0) {
+			return null;
+		}
+		int[] heads = m.heads;
 		
-		for(int oeoff = edited_off; oeoff < oelen; oeoff++) {
-			for(int i1 = 0, n1 = bl.length; i1 < n1;) {
-				char[] swear = bl[i1++];
-				if(oeoff > (oelen - swear.length + 1)) {
-					i1++;
-					continue;
-				}
-				char[] replaceto = bl[i1++];
-				if(AntiSwear.equals(edited, oeoff, swear, 0, swear.length)) {
-					int start = indexes[ind_off + oeoff];
-					int end = indexes[ind_off + oeoff + swear.length - 1];
-						
-					int wh_index = -1;
-					for(int i2 = 0, n2 = wl.length; i2 < n2; i2++) {
-						char[] wh = wl[i2];
-						
-						int chlen = wh.length - 1;
-						int choff = start - chlen;
-						if(choff < in_off) {
-							choff = in_off;
-						}
-						chlen = (chlen * 2) + swear.length;
-						if((chlen + choff) > in_len) {
-							chlen = in_len - in_off - choff;
-						}
-						wh_index = AntiSwear.indexOfIgnoreCaseWhitelist(in, choff, chlen, wh, 0, wh.length);
-						if(wh_index != -1) {
-							break;
-						}
+		StringBuilder sb = null; //- Created on first swear
+		int startfrom = 0;
+		int reach = -1; //- Last edited index covered by whitelisted word
+		int covered = -1; //- Last edited index covered by replaced swear
+		int scanned = 0;
+		long wltime = -1; //- Time of whitelist checks, -1 if none
+		
+		for(int oeoff = 0; oeoff < edited_len; oeoff++) {
+			for(; scanned <= oeoff; scanned++) {
+				for(int mt = heads[scanned]; mt != -1; mt = m.nexts[mt]) {
+					int pat = m.found[mt];
+					int wend = scanned + m.lengths[mt] - 1;
+					if(rec != null && cmp.hasAllow(pat)) {
+						rec.whitelisted = true;
 					}
-					if(wh_index != -1) {
+					if(wend <= reach) {
+						continue;
+					}
+					if(metrics == null || !cmp.hasAllow(pat)) {
+						if(cmp.isAllowed(pat, in, in_off, in_len, indexes, ind_off, scanned, wend)) {
+							reach = wend;
+						}
 						continue;
 					}
-					if(start > startfrom) {
-						sb.append(in, startfrom, (start - startfrom));
+					long time = System.nanoTime();
+					if(cmp.isAllowed(pat, in, in_off, in_len, indexes, ind_off, scanned, wend)) {
+						reach = wend;
 					}
-					sb.append(replaceto);
-					startfrom = end + 1;
-					oeoff += swear.length - 1;
-					had = true;
+					wltime = Math.max(wltime, 0) + System.nanoTime() - time;
 				}
 			}
+			//- Longest blacklisted word not covered by whitelist
+			char[] replaceto = null;
+			int swearlen = 0;
+			for(int mt = heads[oeoff]; mt != -1; mt = m.nexts[mt]) {
+				int pat = m.found[mt];
+				int len = m.lengths[mt];
+				if(len <= swearlen || reach >= (oeoff + len - 1) || covered >= (oeoff + len - 1)) {
+					continue;
+				}
+				char[] rep = cmp.replacement(pat);
+				if(rep != null) {
+					replaceto = rep;
+					swearlen = len;
+				}
+			}
+			if(replaceto == null) {
+				continue;
+			}
+			if(rec != null) {
+				rec.add(oeoff, swearlen, replaceto);
+			}
+			int start = firsts[ind_off + oeoff];
+			int end = indexes[ind_off + oeoff + swearlen - 1];
+			if(sb == null) {
+				sb = new StringBuilder(in_len - in_off + 16);
+			}
+			if(start >= startfrom) {
+				sb.append(in, startfrom, (start - startfrom));
+				sb.append(replaceto);
+			} else if(startfrom - start < replaceto.length) {
+				//- Overlaps previous swear (dupa + ass in "dupass"), only rest is replaced
+				sb.append(replaceto, startfrom - start, replaceto.length - (startfrom - start));
+			}
+			startfrom = end + 1;
+			covered = oeoff + swearlen - 1;
 		}
-		if(!had) {
+		if(wltime != -1) {
+			metrics.whitelist.record(wltime);
+		}
+		if(sb == null) {
 			return null;
 		}
 		sb.append(in, startfrom, (in_len - startfrom));
 		return sb.toString();
 	}
 	
+	/**
+	 * @return Automaton compiled from current blacklist and whitelist
+	 */
+	public AhoCorasick getMatcher() {
+		return this.filter.get().matcher;
+	}
+	
 	/**
 	 * @param in Message to check and process
 	 * 
@@ -474,29 +979,340 @@ public class AntiSwear {
 	 * @return If swear(s) were found, returns new modified string. Otherwise returns `null`
 	 */
 	public String processString(String in, String[] mini) {
-		char[] chars_orig = new char[in.length() + 2];
+		return this.processString(this.filter.get(), in, mini);
+	}
+	
+	/**
+	 * @param cmp Compiled filter
+	 * @param in Message to check and process
+	 * @param mini If not null and length >= 1, mini[0] is filled with minimalized string
+	 * 
+	 * @return If swear(s) were found, returns new modified string. Otherwise returns `null`
+	 */
+	protected String processString(CompiledFilter cmp, String in, String[] mini) {
+		Metrics metrics = this.metrics;
+		if(metrics != null && !metrics.sample()) {
+			metrics = null;
+		}
+		long start = (metrics == null) ? 0 : System.nanoTime();
+		if(mini == null && cmp.substitutions == null && !cmp.mayMatchRaw(in)) {
+			if(metrics != null) {
+				metrics.process.record(System.nanoTime() - start);
+			}
+			return null;
+		}
+		ResultCache cache = (mini == null) ? this.cache : null;
+		if(cache != null) {
+			String ret = cache.getRaw(in, cmp);
+			if(ret != null) {
+				if(metrics != null) {
+					metrics.process.record(System.nanoTime() - start);
+				}
+				return (ret == ResultCache.CLEAN) ? null : ret;
+			}
+		}
+		
+		long edited = (metrics == null) ? 0 : System.nanoTime();
+		int n = in.length() + 2;
+		Scratch sc = Scratch.get(n);
+		char[] chars_orig = sc.chars;
 		in.getChars(0, in.length(), chars_orig, 1);
 		chars_orig[0] = ' ';
-		chars_orig[chars_orig.length - 1] = ' ';
-		
-		in = AntiSwear.stripDiacritics(in);
+		chars_orig[n - 1] = ' ';
 		
-		char[] chars = new char[in.length() + 2];
-		in.getChars(0, in.length(), chars, 1);
-		chars[0] = ' ';
-		chars[chars.length - 1] = ' ';
-		
-		char[] out = new char[chars.length + 2];
-		int[] indexes = new int[chars.length + 2];
-		int len = AntiSwear.removeTyposSlang(out, chars, 0, chars.length, indexes, 0);
+		char[] out = sc.out;
+		int[] indexes = sc.indexes;
+		int[] firsts = null;
+		int len;
+		Transducer tr = cmp.substitutions;
+		if(tr == null) {
+			len = AntiSwear.removeTyposSlang(out, chars_orig, 0, n, indexes, 0);
+		} else {
+			firsts = sc.firsts;
+			len = tr.removeTyposSlang(out, chars_orig, 0, n, indexes, firsts, 0);
+		}
 		if(mini != null && mini.length >= 1) {
 			mini[0] = String.copyValueOf(out, 0, len);
 		}
-		String ret = this.doReplace(out, 0, len, chars_orig, 0, chars_orig.length, indexes, 0);
+		if(metrics != null) {
+			long now = System.nanoTime();
+			metrics.normalize.record(now - edited);
+			edited = now;
+		}
+		String ret;
+		if(tr != null && !cmp.mayMatch(out, 0, len)) {
+			ret = null;
+		} else if(cache == null) {
+			ret = this.doReplace(cmp, out, 0, len, chars_orig, 0, n, indexes, firsts, 0, null, metrics);
+		} else {
+			//- Fuzzy matches depend on spaces of original text, not kept in skeleton
+			String skeleton = (len <= ResultCache.MAX_KEY && cmp.fuzzy == null) ? new String(out, 0, len) : null;
+			ResultCache.Spans spans = (skeleton == null) ? null : cache.getSkeleton(skeleton, cmp);
+			if(spans != null) {
+				ret = spans.apply(chars_orig, 0, n, indexes, firsts, 0);
+			} else {
+				ResultCache.Recorder rec = sc.recorder;
+				rec.reset();
+				ret = this.doReplace(cmp, out, 0, len, chars_orig, 0, n, indexes, firsts, 0, rec, metrics);
+				spans = rec.toSpans();
+				if(skeleton != null && spans != null) {
+					cache.putSkeleton(skeleton, cmp, spans);
+				}
+			}
+		}
 		if(ret != null) {
-			return ret.substring(1, ret.length() - 1);
+			ret = ret.substring(1, ret.length() - 1);
 		}
-		return null;
+		if(cache != null) {
+			cache.putRaw(in, cmp, ret);
+		}
+		if(metrics != null) {
+			long end = System.nanoTime();
+			metrics.match.record(end - edited);
+			metrics.process.record(end - start);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Cheaper check used under load, see {@link LoadShedder}. Cached results are
+	 * used, others are checked without whitelist and words with typos
+	 * ({@link CompiledFilter#degraded()}), these results are not cached,
+	 * as they may differ from full check
+	 * 
+	 * @param in Message to check and process
+	 * @param level {@link LoadShedder#CACHED}, {@link LoadShedder#PREFILTER} (pre-filter
+	 *        is asked even when it is skipped for high pass rate) or {@link LoadShedder#BLOCK}
+	 *        (same, check of message not rejected by pre-filter nor cached needs permit)
+	 * @param shed Gives permits on {@link LoadShedder#BLOCK}
+	 * 
+	 * @return New modified string, `null` if clean or {@link LoadShedder#BLOCKED} if
+	 *        there was no permit
+	 */
+	public String processDegraded(String in, int level, LoadShedder shed) {
+		CompiledFilter cmp = this.filter.get();
+		CompiledFilter dg = cmp.degraded();
+		boolean always = (level >= LoadShedder.PREFILTER);
+		Transducer tr = cmp.substitutions;
+		if(tr == null && !(always ? dg.mayMatchRawAlways(in) : dg.mayMatchRaw(in))) {
+			return null;
+		}
+		ResultCache cache = this.cache;
+		if(cache != null) {
+			String ret = cache.getRaw(in, cmp);
+			if(ret != null) {
+				return (ret == ResultCache.CLEAN) ? null : ret;
+			}
+		}
+		
+		int n = in.length() + 2;
+		Scratch sc = Scratch.get(n);
+		char[] chars_orig = sc.chars;
+		in.getChars(0, in.length(), chars_orig, 1);
+		chars_orig[0] = ' ';
+		chars_orig[n - 1] = ' ';
+		
+		char[] out = sc.out;
+		int[] indexes = sc.indexes;
+		int[] firsts = null;
+		int len;
+		if(tr == null) {
+			len = AntiSwear.removeTyposSlang(out, chars_orig, 0, n, indexes, 0);
+		} else {
+			firsts = sc.firsts;
+			len = tr.removeTyposSlang(out, chars_orig, 0, n, indexes, firsts, 0);
+			if(!(always ? dg.mayMatchAlways(out, 0, len) : dg.mayMatch(out, 0, len))) {
+				return null;
+			}
+		}
+		String ret;
+		ResultCache.Spans spans = (cache == null || len > ResultCache.MAX_KEY) 
+				? null : cache.getSkeleton(new String(out, 0, len), cmp);
+		if(spans != null) {
+			ret = spans.apply(chars_orig, 0, n, indexes, firsts, 0);
+		} else if(level >= LoadShedder.BLOCK && !shed.acquire(System.nanoTime())) {
+			return LoadShedder.BLOCKED;
+		} else {
+			ret = this.doReplace(dg, out, 0, len, chars_orig, 0, n, indexes, firsts, 0, null, null);
+		}
+		if(ret != null) {
+			ret = ret.substring(1, ret.length() - 1);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @param in Message
+	 * 
+	 * @return Swears censored by {@link AntiSwear#processString(String)}, edited
+	 *        as they were matched (e.g. `fuk`), without duplicates. Empty if clean
+	 */
+	public List<String> findSwears(String in) {
+		return this.findSwears(this.filter.get(), in);
+	}
+	
+	/**
+	 * @param cmp Filter, which censored message
+	 * @param in Message
+	 * 
+	 * @return Swears matched by given filter, see {@link AntiSwear#findSwears(String)}
+	 */
+	public List<String> findSwears(CompiledFilter cmp, String in) {
+		int n = in.length() + 2;
+		Scratch sc = Scratch.get(n);
+		char[] chars_orig = sc.chars;
+		in.getChars(0, in.length(), chars_orig, 1);
+		chars_orig[0] = ' ';
+		chars_orig[n - 1] = ' ';
+		
+		char[] out = sc.out;
+		int[] indexes = sc.indexes;
+		int[] firsts = null;
+		int len;
+		Transducer tr = cmp.substitutions;
+		if(tr == null) {
+			len = AntiSwear.removeTyposSlang(out, chars_orig, 0, n, indexes, 0);
+		} else {
+			firsts = sc.firsts;
+			len = tr.removeTyposSlang(out, chars_orig, 0, n, indexes, firsts, 0);
+		}
+		ResultCache.Recorder rec = sc.recorder;
+		rec.reset();
+		this.doReplace(cmp, out, 0, len, chars_orig, 0, n, indexes, firsts, 0, rec, null);
+		List<String> ret = new ArrayList<String>(rec.count);
+		for(int i = 0; i < rec.count; i++) {
+			String word = new String(out, rec.spans[i * 2], rec.spans[i * 2 + 1]);
+			if(!ret.contains(word)) {
+				ret.add(word);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Process many messages in {@link AntiSwear#getPool()}
+	 * 
+	 * @see AntiSwear#processBatch(List, ForkJoinPool)
+	 */
+	public List<String> processBatch(List<? extends CharSequence> in) {
+		return this.processBatch(in, AntiSwear.getPool());
+	}
+	
+	/**
+	 * Process many messages in parallel. All messages are checked with
+	 * the same filter, even if it is changed meanwhile
+	 * 
+	 * @param in Messages, `null` elements are allowed
+	 * @param pool Pool splitting the work, `null` to process on this thread
+	 * 
+	 * @return Result of {@link AntiSwear#processString(String)} for every message, in order
+	 */
+	public List<String> processBatch(List<? extends CharSequence> in, ForkJoinPool pool) {
+		CharSequence[] arr = in.toArray(new CharSequence[in.size()]);
+		String[] out = new String[arr.length];
+		BatchTask task = new BatchTask(this.filter.get(), arr, out, 0, arr.length);
+		if(pool == null || pool.getParallelism() == 1 || arr.length <= BATCH_SPLIT) {
+			task.process();
+		} else {
+			pool.invoke(task);
+		}
+		return Arrays.asList(out);
+	}
+	
+	/**
+	 * Lazily process messages from iterator. Messages are read and processed
+	 * in parallel by chunks of {@link AntiSwear#BATCH_CHUNK}, results are
+	 * returned in order. Every chunk is checked with the filter current
+	 * when it is read
+	 * 
+	 * @param in Messages
+	 * 
+	 * @return Result of {@link AntiSwear#processString(String)} for every message
+	 */
+	public Iterator<String> processAll(final Iterator<? extends CharSequence> in) {
+		return new Iterator<String>() {
+			
+			protected List<CharSequence> chunk = new ArrayList<CharSequence>();
+			protected List<String> done = null;
+			protected int pos = 0;
+			
+			@Override
+			public boolean hasNext() {
+				if(this.done != null && this.pos < this.done.size()) {
+					return true;
+				}
+				if(!in.hasNext()) {
+					return false;
+				}
+				this.chunk.clear();
+				while(this.chunk.size() < BATCH_CHUNK && in.hasNext()) {
+					this.chunk.add(in.next());
+				}
+				this.done = AntiSwear.this.processBatch(this.chunk);
+				this.pos = 0;
+				return true;
+			}
+			
+			@Override
+			public String next() {
+				if(!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return this.done.get(this.pos++);
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		
+		};
+	}
+	
+	/**
+	 * Processes part of batch, split in halves while it is large
+	 */
+	protected class BatchTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		protected final CompiledFilter cmp;
+		protected final CharSequence[] in;
+		protected final String[] out;
+		protected final int from;
+		protected final int to;
+		
+		public BatchTask(CompiledFilter cmp, CharSequence[] in, String[] out, int from, int to) {
+			this.cmp = cmp;
+			this.in = in;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(this.to - this.from > BATCH_SPLIT) {
+				int mid = (this.from + this.to) >>> 1;
+				RecursiveAction.invokeAll(new BatchTask(this.cmp, this.in, this.out, this.from, mid),
+						new BatchTask(this.cmp, this.in, this.out, mid, this.to));
+			} else {
+				this.process();
+			}
+		}
+		
+		/**
+		 * Process whole part on current thread
+		 */
+		protected void process() {
+			for(int i = this.from; i < this.to; i++) {
+				CharSequence msg = this.in[i];
+				if(msg != null) {
+					this.out[i] = AntiSwear.this.processString(this.cmp, msg.toString(), null);
+				}
+			}
+		}
+	
 	}
 	
 	/**
@@ -507,12 +1323,12 @@ public class AntiSwear {
 	 */
 	public static String[] sort(String[] arr) {
 		Arrays.sort(arr, new Comparator<String>() {
-
+			
 			@Override
 			public int compare(String str1, String str2) {
 				return str2.length() - str1.length();
 			}
-			
+		
 		});
 		return arr;
 	}
@@ -525,12 +1341,12 @@ public class AntiSwear {
 	 */
 	public static char[][] sort(char[][] arr) {
 		Arrays.sort(arr, new Comparator<char[]>() {
-
+			
 			@Override
 			public int compare(char[] str1, char[] str2) {
 				return str2.length - str1.length;
 			}
-			
+		
 		});
 		return arr;
 	}
@@ -538,8 +1354,11 @@ public class AntiSwear {
 	/**
 	 * Sort array of char arrays - longer first. Do not pass
 	 * `null` arrays. Sort by key - every second value (0,2,4...)
+	 * Duplicate keys are removed, last replacement is kept
 	 * 
 	 * @param arr Array to sort
+	 * 
+	 * @return New sorted array
 	 */
 	public static char[][] sortTwo(char[][] arr) {
 		SortedMap<char[],char[]> ret = AntiSwear.getSortedBlacklistMap();
@@ -555,7 +1374,15 @@ public class AntiSwear {
 		return new TreeMap<char[],char[]>(new Comparator<char[]>(){
 			@Override
 			public int compare(char[] arg0, char[] arg1) {
-				return ((arg1.length - arg0.length) < 0) ? -1 : 1;
+				if(arg0.length != arg1.length) {
+					return arg1.length - arg0.length;
+				}
+				for(int i = 0, n = arg0.length; i < n; i++) {
+					if(arg0[i] != arg1[i]) {
+						return arg0[i] - arg1[i];
+					}
+				}
+				return 0;
 			}
 		});
 	}
@@ -575,7 +1402,7 @@ public class AntiSwear {
 					continue;
 				}
 				nev.put(AntiSwear.removeTyposAll(key.toString()).toCharArray(), 
-						ChatColor.translateAlternateColorCodes('&', val.toString()).toCharArray());
+						AntiSwear.translateColors(val.toString()).toCharArray());
 			}
 		}
 		return nev;
@@ -595,7 +1422,7 @@ public class AntiSwear {
 				continue;
 			}
 			nev.put(AntiSwear.removeTyposAll(key).toCharArray(), 
-					ChatColor.translateAlternateColorCodes('&', val).toCharArray());
+					AntiSwear.translateColors(val).toCharArray());
 		}
 		return nev;
 	}
@@ -606,23 +1433,35 @@ public class AntiSwear {
 		return nev;
 	}
 	
+	/**
+	 * Translate color codes with `&` (like `&4`) to Minecraft
+	 * color codes, same as Bukkit's `ChatColor.translateAlternateColorCodes`
+	 * 
+	 * @param text Text
+	 * 
+	 * @return Text with Minecraft color codes
+	 */
+	public static String translateColors(String text) {
+		char[] arr = text.toCharArray();
+		for(int i = 0, n = arr.length - 1; i < n; i++) {
+			if(arr[i] == '&' && "0123456789AaBbCcDdEeFfKkLlMmNnOoRr".indexOf(arr[i + 1]) != -1) {
+				arr[i] = '\u00A7';
+				arr[i + 1] = Character.toLowerCase(arr[i + 1]);
+			}
+		}
+		return new String(arr);
+	}
+	
 	public static char[][] loadBlacklist(String search, String replace) {
 		if(search == null || replace == null) {
 			return null;
 		}
 		return new char[][] {
 			AntiSwear.removeTyposAll(search).toCharArray(),
-			ChatColor.translateAlternateColorCodes('&', replace).toCharArray()
+			AntiSwear.translateColors(replace).toCharArray()
 		};
 	}
 	
-	public static char[][] loadBlacklist(ConfigurationSection sec) {
-		if(sec == null) {
-			return null;
-		}
-		return AntiSwear.loadBlacklist(sec.getMapList("Blacklist"));
-	}
-	
 	public static char[][] loadBlacklist(Iterable<Map<?,?>> vals) {
 		if(vals == null) {
 			return null;
@@ -663,13 +1502,6 @@ public class AntiSwear {
 		return out;
 	}
 	
-	public static char[][] loadWhitelist(ConfigurationSection sec) {
-		if(sec == null) {
-			return null;
-		}
-		return AntiSwear.loadWhitelist(sec.getStringList("Whitelist"));
-	}
-	
 	public static char[][] loadWhitelist(String[] strs) {
 		if(strs == null || strs.length == 0) {
 			return null;
@@ -742,8 +1574,91 @@ public class AntiSwear {
 		char[][] arr = new char[one.length + two.length][];
 		System.arraycopy(one, 0, arr, 0, one.length);
 		System.arraycopy(two, 0, arr, one.length, two.length);
-		AntiSwear.sortTwo(arr);
-		return arr;
+		return AntiSwear.sortTwo(arr);
+	}
+	
+	/**
+	 * Buffers reused by one thread, so checking clean message does
+	 * not allocate anything
+	 */
+	protected static class Scratch {
+		
+		/**
+		 * Longer messages use own buffers, so one long message does
+		 * not keep large buffers for ever
+		 */
+		public static final int MAX_LENGTH = 4096;
+		
+		/**
+		 * Buffers of current thread
+		 */
+		protected static final ThreadLocal<Scratch> LOCAL = new ThreadLocal<Scratch>() {
+			
+			@Override
+			protected Scratch initialValue() {
+				return new Scratch(256);
+			}
+		
+		};
+		
+		/**
+		 * Original message with spaces around
+		 */
+		public char[] chars;
+		
+		/**
+		 * Edited message
+		 */
+		public char[] out;
+		
+		/**
+		 * Indexes of edited characters
+		 */
+		public int[] indexes;
+		
+		/**
+		 * First indexes of edited characters
+		 */
+		public int[] firsts;
+		
+		/**
+		 * Matches of automaton
+		 */
+		public final AhoCorasick.Matches matches = new AhoCorasick.Matches();
+		
+		/**
+		 * Swears matched for {@link ResultCache}
+		 */
+		public final ResultCache.Recorder recorder = new ResultCache.Recorder();
+		
+		public Scratch(int len) {
+			this.chars = new char[len];
+			this.out = new char[len];
+			this.indexes = new int[len];
+			this.firsts = new int[len];
+		}
+		
+		/**
+		 * @param len Minimal length of buffers
+		 * 
+		 * @return Buffers of current thread, or new buffers if `len`
+		 *         is greater than {@link Scratch#MAX_LENGTH}
+		 */
+		public static Scratch get(int len) {
+			if(len > MAX_LENGTH) {
+				return new Scratch(len);
+			}
+			Scratch sc = LOCAL.get();
+			if(sc.chars.length < len) {
+				int nev = Math.min(MAX_LENGTH, Math.max(len, sc.chars.length * 2));
+				sc.chars = new char[nev];
+				sc.out = new char[nev];
+				sc.indexes = new int[nev];
+				sc.firsts = new int[nev];
+			}
+			return sc;
+		}
+	
 	}
 	
 }
@@ -25,17 +25,34 @@
 package eu.wordnice.antiswear;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 
 public class AntiSwearPlugin extends JavaPlugin implements Listener {
 	
@@ -73,23 +90,134 @@ public class AntiSwearPlugin extends JavaPlugin implements Listener {
 	/**
 	 * Block message with swear
 	 */
-	public boolean blockSwear = false;
+	public volatile boolean blockSwear = false;
 	
 	/**
 	 * Allow Operators to swear
 	 */
-	public boolean allowOpSwear = false;
+	public volatile boolean allowOpSwear = false;
 	
 	/**
-	 * Message sent to player on swear (may beÂ `null` = no message)
+	 * Message sent to player on swear (may be `null` = no message)
 	 */
-	public String swearMessage = null;
+	public volatile String swearMessage = null;
+	
+	/**
+	 * Blacklist changes made by commands are saved after this
+	 * delay (milliseconds) in one batch
+	 */
+	public static long SAVE_DELAY = 5000;
+	
+	/**
+	 * Thread for loading & compiling filters and saving config off the main thread
+	 */
+	protected ScheduledThreadPoolExecutor worker = null;
+	
+	/**
+	 * Blacklist changes not saved yet, { word, replacement or `null` to remove }
+	 */
+	protected final ConcurrentLinkedQueue<String[]> edits = new ConcurrentLinkedQueue<String[]>();
+	
+	/**
+	 * Blacklist changes made while reload is compiling new filters, applied
+	 * again to them. `null` if no reload is running, guarded by `editLock`
+	 */
+	protected List<String[]> reloadEdits = null;
+	
+	/**
+	 * Lock of {@link AntiSwearPlugin#edit(String, String)} and replacing filters by reload
+	 */
+	protected final Object editLock = new Object();
+	
+	/**
+	 * Saving of `edits` is scheduled
+	 */
+	protected final AtomicBoolean saveScheduled = new AtomicBoolean(false);
+	
+	/**
+	 * Watcher of config files, `null` if disabled
+	 */
+	protected ConfigWatcher watcher = null;
+	
+	/**
+	 * Endpoint with metrics, `null` if disabled
+	 */
+	protected MetricsServer metricsServer = null;
+	
+	/**
+	 * Filter of signs, books, anvils and commands
+	 */
+	protected ChannelListener channels = null;
+	
+	/**
+	 * Remembered permissions of players
+	 */
+	protected BypassCache bypass = null;
+	
+	/**
+	 * Filters used only for some players, worlds or channels
+	 */
+	protected volatile Profiles profiles = Profiles.EMPTY;
+	
+	/**
+	 * Swears split to more chat messages
+	 */
+	protected final SplitTracker splits = new SplitTracker(0);
+	
+	/**
+	 * Violation scores of players
+	 */
+	protected Violations violations = null;
+	
+	/**
+	 * Log of censored chat messages, `null` if disabled
+	 */
+	protected volatile AuditLog audit = null;
+	
+	/**
+	 * Cheaper checks of chat under load, `null` if disabled
+	 */
+	protected volatile LoadShedder shedder = null;
+	
+	/**
+	 * Message sent to player when chat message is blocked under load (may be `null` = no message)
+	 */
+	public volatile String shedMessage = null;
+	
+	/**
+	 * Created by server
+	 */
+	public AntiSwearPlugin() {
+		super();
+	}
+	
+	/**
+	 * Created outside of server (load tests), see
+	 * {@link JavaPlugin#JavaPlugin(JavaPluginLoader, PluginDescriptionFile, File, File)}
+	 */
+	protected AntiSwearPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+		super(loader, description, dataFolder, file);
+	}
 	
 	/**
 	 * @see org.bukkit.plugin.java.JavaPlugin#onEnable()
 	 */
 	@Override
 	public void onEnable() {
+		this.setup();
+		Bukkit.getPluginManager().registerEvents(this, this);
+		Bukkit.getPluginManager().registerEvents(this.channels, this);
+		Bukkit.getPluginManager().registerEvents(this.bypass, this);
+		ChannelListener.Anvils.register(this.channels, this);
+		this.getCommand("antiswear").setExecutor(this);
+		this.getLogger().info("BetterAntiSwear by wordnice was enabled!");
+	}
+	
+	/**
+	 * Load config and filters and start worker, without registering
+	 * listeners and command
+	 */
+	protected void setup() {
 		if(!new File(this.getConfig().getCurrentPath()).exists()) {
 			this.saveDefaultConfig();
 		}
@@ -98,43 +226,699 @@ public class AntiSwearPlugin extends JavaPlugin implements Listener {
 		this.aswear = new AntiSwear();
 		AntiSwear.LAST = this.aswear;
 		
+		this.worker = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread th = new Thread(r, "BetterAntiSwear-Worker");
+				th.setDaemon(true);
+				return th;
+			}
+		
+		});
+		this.worker.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		
+		this.channels = new ChannelListener(this);
+		this.bypass = new BypassCache(this);
+		this.violations = new Violations(this, new File(this.getDataFolder(), "violations.log"));
+		this.loadSettings(cfg);
+		Transducer tr = this.loadSubstitutions();
+		this.aswear.setFilter(this.loadFilter(cfg, tr));
+		this.setProfiles(this.loadProfiles(cfg, tr));
+		
+		if(cfg.getBoolean("WatchConfig", true)) {
+			this.watcher = new ConfigWatcher(this.getDataFolder(), 1000, new Runnable() {
+				
+				@Override
+				public void run() {
+					AntiSwearPlugin.this.reload(null);
+				}
+			
+			}, "config.yml", "substitutions.txt");
+			try {
+				this.watcher.start();
+			} catch(Exception e) {
+				this.getLogger().warning("Could not watch config files: " + e);
+				this.watcher = null;
+			}
+		}
+	}
+	
+	/**
+	 * @see org.bukkit.plugin.java.JavaPlugin#onDisable()
+	 */
+	@Override
+	public void onDisable() {
+		if(this.watcher != null) {
+			try {
+				this.watcher.close();
+			} catch(Exception e) {}
+			this.watcher = null;
+		}
+		this.closeMetricsServer();
+		if(this.bypass != null) {
+			this.bypass.setTime(0);
+		}
+		if(this.violations != null) {
+			this.violations.close();
+		}
+		this.closeAudit();
+		if(this.worker != null) {
+			//- Save edits and scores before stopping
+			this.worker.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					AntiSwearPlugin.this.saveEdits();
+					if(AntiSwearPlugin.this.violations != null) {
+						AntiSwearPlugin.this.violations.flush();
+					}
+				}
+			
+			});
+			this.worker.shutdown();
+			try {
+				this.worker.awaitTermination(10, TimeUnit.SECONDS);
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			this.worker = null;
+		}
+	}
+	
+	/**
+	 * Load settings of {@link LoadShedder}, kept when they did not change
+	 * 
+	 * @param cfg Config
+	 */
+	protected void loadShedder(ConfigurationSection cfg) {
+		String msg = cfg.getString("ShedMessage", null);
+		if(msg == null || msg.length() == 0 || msg.equalsIgnoreCase("null")) {
+			this.shedMessage = null;
+		} else {
+			this.shedMessage = ChatColor.translateAlternateColorCodes('&', msg);
+		}
+		long budget = cfg.getLong("ShedBudget", 0) * 1000;
+		long total = cfg.getLong("ShedBudgetTotal", 250) * 1000000;
+		int rate = cfg.getInt("ShedRate", 20);
+		LoadShedder shed = this.shedder;
+		if(budget <= 0) {
+			shed = null;
+		} else if(shed == null || shed.getBudget() != budget || shed.getTotal() != Math.max(0, total)
+				|| shed.getRate() != Math.max(0, rate)) {
+			shed = new LoadShedder(budget, total, rate);
+			shed.setListener(new LoadShedder.Listener() {
+				
+				@Override
+				public void changed(int from, int to, long p99, long total) {
+					AntiSwearPlugin.this.shedChanged(from, to, p99, total);
+				}
+			
+			});
+		} else {
+			return;
+		}
+		this.shedder = shed;
+		Metrics metrics = this.aswear.getMetrics();
+		if(metrics != null) {
+			metrics.shedLevel = LoadShedder.FULL;
+		}
+	}
+	
+	/**
+	 * Load settings of {@link AuditLog}, it is restarted only when they changed
+	 * 
+	 * @param cfg Config
+	 */
+	protected synchronized void loadAudit(ConfigurationSection cfg) {
+		AuditLog audit = this.audit;
+		if(!cfg.getBoolean("Audit", false)) {
+			this.closeAudit();
+			return;
+		}
+		int capacity = Math.max(1, cfg.getInt("AuditQueue", 10000));
+		long maxSize = Math.max(0, cfg.getLong("AuditMaxSize", 16)) << 20;
+		int keep = Math.max(0, cfg.getInt("AuditFiles", 30));
+		if(audit != null && audit.getCapacity() == capacity && audit.getMaxSize() == maxSize 
+				&& audit.getKeep() == keep) {
+			return;
+		}
+		this.closeAudit();
+		audit = new AuditLog(new File(this.getDataFolder(), "audit"), capacity, maxSize, keep, this.getLogger());
+		audit.start();
+		this.audit = audit;
+	}
+	
+	/**
+	 * Write queued entries of {@link AuditLog} and stop it
+	 */
+	protected synchronized void closeAudit() {
+		AuditLog audit = this.audit;
+		this.audit = null;
+		if(audit != null) {
+			try {
+				audit.close();
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Log and count level change of {@link LoadShedder}
+	 */
+	protected void shedChanged(int from, int to, long p99, long total) {
+		String msg = "Chat p99 " + Metrics.time(p99) + ", " + Metrics.time(total) + " per second, checks: "
+				+ LoadShedder.LEVELS[to] + " (was " + LoadShedder.LEVELS[from] + ")";
+		if(to > from) {
+			this.getLogger().warning(msg);
+		} else {
+			this.getLogger().info(msg);
+		}
+		Metrics metrics = this.aswear.getMetrics();
+		if(metrics != null) {
+			metrics.shedChanges.incrementAndGet();
+			metrics.shedLevel = to;
+		}
+	}
+	
+	/**
+	 * Load simple settings
+	 * 
+	 * @param cfg Config
+	 */
+	protected void loadSettings(ConfigurationSection cfg) {
 		this.blockSwear = cfg.getBoolean("BlockSwear", false);
 		this.allowOpSwear = cfg.getBoolean("AllowOPSwear", false);
-		this.swearMessage = cfg.getString("SwearMessage", null);
-		if(this.swearMessage == null || this.swearMessage.length() == 0 || this.swearMessage.equalsIgnoreCase("null")) {
+		String msg = cfg.getString("SwearMessage", null);
+		if(msg == null || msg.length() == 0 || msg.equalsIgnoreCase("null")) {
 			this.swearMessage = null;
 		} else {
-			this.swearMessage = ChatColor.translateAlternateColorCodes('&', this.swearMessage);
+			this.swearMessage = ChatColor.translateAlternateColorCodes('&', msg);
+		}
+		if(this.channels != null) {
+			this.channels.load(cfg);
+		}
+		if(this.bypass != null) {
+			this.bypass.setTime(Math.max(0, cfg.getLong("PermissionCacheTime", 60)) * 1000);
+		}
+		this.splits.setTime(Math.max(0, cfg.getLong("SplitSwearTime", 0)) * 1000);
+		if(this.violations != null) {
+			this.violations.load(cfg);
+		}
+		this.loadShedder(cfg);
+		this.loadAudit(cfg);
+		int size = cfg.getInt("CacheSize", 0);
+		long time = cfg.getLong("CacheTime", 0) * 1000;
+		ResultCache cache = this.aswear.getCache();
+		if(size <= 0) {
+			this.aswear.setCache(null);
+		} else if(cache == null || cache.getSize() != size || cache.getTime() != time) {
+			this.aswear.setCache(new ResultCache(size, time));
 		}
 		
-		/*
-		 * Load Whitelist
-		 */
-		this.aswear.WHITELIST = AntiSwear.loadWhitelist(cfg);
-		if(this.aswear.WHITELIST == null) {
-			this.aswear.WHITELIST = new char[0][];
-			this.getLogger().info("Loaded no whitelisted messages!"
-					+ "(section 'Whitelist' in '" + cfg.getCurrentPath() + "')!");
-		} else {
-			this.getLogger().info("Loaded " + this.aswear.WHITELIST.length + " whitelisted messages!");
+		Metrics metrics = this.aswear.getMetrics();
+		if(!cfg.getBoolean("Metrics", true)) {
+			metrics = null;
+		} else if(metrics == null) {
+			metrics = new Metrics();
 		}
+		this.aswear.setMetrics(metrics);
+		this.profiles.configure(this.aswear);
+		int port = cfg.getInt("MetricsPort", 0);
+		synchronized(this) {
+			MetricsServer server = this.metricsServer;
+			if(server != null && (metrics == null || server.metrics != metrics || server.getPort() != port)) {
+				this.closeMetricsServer();
+				server = null;
+			}
+			if(server == null && metrics != null && port > 0) {
+				try {
+					this.metricsServer = new MetricsServer(metrics, port);
+					this.metricsServer.start();
+					this.getLogger().info("Metrics available at http://127.0.0.1:" + port + "/metrics");
+				} catch(Exception e) {
+					this.getLogger().warning("Could not serve metrics on port " + port + ": " + e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Stop endpoint with metrics, if running
+	 */
+	protected synchronized void closeMetricsServer() {
+		if(this.metricsServer != null) {
+			try {
+				this.metricsServer.close();
+			} catch(Exception e) {}
+			this.metricsServer = null;
+		}
+	}
+	
+	/**
+	 * @return Substitutions from `substitutions.txt` or `null` if they can't be loaded
+	 */
+	protected Transducer loadSubstitutions() {
+		File subs = new File(this.getDataFolder(), "substitutions.txt");
+		if(!subs.exists()) {
+			this.saveResource("substitutions.txt", false);
+		}
+		try {
+			Transducer tr = Transducer.load(subs);
+			this.getLogger().info("Loaded " + tr.size() + " substitutions!");
+			if(!tr.getSkipped().isEmpty()) {
+				this.getLogger().warning("Skipped " + tr.getSkipped().size() 
+						+ " substitutions longer than source: " + tr.getSkipped());
+			}
+			return tr;
+		} catch(Exception e) {
+			this.getLogger().severe("Could not load substitutions from '" + subs + "': " + e);
+		}
+		return null;
+	}
+	
+	/**
+	 * Load and compile common blacklist and whitelist
+	 * 
+	 * @param cfg Config
+	 * @param tr Substitutions or `null`
+	 * 
+	 * @return Compiled filter
+	 */
+	protected CompiledFilter loadFilter(ConfigurationSection cfg, Transducer tr) {
+		List<Map<?,?>> blacklist = cfg.getMapList("Blacklist");
+		if(blacklist.isEmpty()) {
+			this.getLogger().severe("Missing blacklisted words "
+					+ "(section 'Blacklist' in '" + cfg.getCurrentPath() + "')!");
+		}
+		return this.loadFilter(null, blacklist, cfg.getStringList("Whitelist"), cfg.getMapList("Fuzzy"), tr, 
+				cfg.getBoolean("FilterCache", true));
+	}
+	
+	/**
+	 * Load and compile lists. Compiled filter is saved to `filter.bin`
+	 * (`filter-<profile>.bin`) and used again while lists are same
+	 * 
+	 * @param profile Name of profile, `null` for common lists
+	 * @param blacklist Blacklist (section `Blacklist`)
+	 * @param whitelist Whitelist (section `Whitelist`)
+	 * @param fuzzy Words matched with typos (section `Fuzzy`)
+	 * @param tr Substitutions or `null`
+	 * @param useCache Load and save compiled filter
+	 * 
+	 * @return Compiled filter
+	 */
+	protected CompiledFilter loadFilter(String profile, List<Map<?,?>> blacklist, List<String> whitelist, 
+			List<Map<?,?>> fuzzy, Transducer tr, boolean useCache) {
+		String what = (profile == null) ? "" : ("Profile '" + profile + "': ");
 		
 		/*
-		 * Load blacklist
+		 * Compiled filter from last start, if lists were not changed
 		 */
-		this.aswear.BLACKLIST = AntiSwear.loadBlacklist(cfg);
-		if(this.aswear.BLACKLIST == null) {
-			this.getLogger().severe("Missing blacklisted words "
-					+ "(section 'Blacklist' in '" + cfg.getCurrentPath() + "')!");
-			this.aswear.BLACKLIST = new char[0][];
+		final FilterCache cache = !useCache ? null : new FilterCache(new File(this.getDataFolder(), 
+				(profile == null) ? "filter.bin" : ("filter-" + profile + ".bin")));
+		byte[] key = null;
+		if(cache != null) {
+			try {
+				long start = System.nanoTime();
+				key = FilterCache.key(this.getDescription().getVersion() + " " + profile, blacklist, whitelist, fuzzy,
+						(tr == null) ? null : new File(this.getDataFolder(), "substitutions.txt"));
+				CompiledFilter ret = cache.load(key, tr);
+				if(ret != null) {
+					this.getLogger().info(what + "Loaded " + ret.getBlacklistSize() + " blacklisted and " 
+							+ ret.getWhitelistSize() + " whitelisted messages from '" + cache.getFile().getName() 
+							+ "' in " + ((System.nanoTime() - start) / 1000000) + " ms!");
+					return ret;
+				}
+			} catch(Exception e) {
+				this.getLogger().warning("Could not load compiled filter from '" + cache.getFile() + "': " + e);
+			}
+		}
+		
+		char[][] wh = AntiSwear.loadWhitelist(whitelist);
+		if(wh == null) {
+			wh = AntiSwear.EMPTY;
+			this.getLogger().info(what + "Loaded no whitelisted messages!");
 		} else {
-			this.getLogger().info("Loaded " 
-				+ (this.aswear.BLACKLIST.length / 2) + " blacklisted messages!");
+			this.getLogger().info(what + "Loaded " + wh.length + " whitelisted messages!");
+		}
+		char[][] bl = AntiSwear.loadBlacklist(blacklist);
+		if(bl == null) {
+			bl = AntiSwear.EMPTY;
+			this.getLogger().info(what + "Loaded no blacklisted messages!");
+		} else {
+			this.getLogger().info(what + "Loaded " + (bl.length / 2) + " blacklisted messages!");
+		}
+		char[][] fz = AntiSwear.loadBlacklist(fuzzy);
+		if(fz != null) {
+			this.getLogger().info(what + "Loaded " + (fz.length / 2) + " words matched with typos!");
 		}
 		
-		Bukkit.getPluginManager().registerEvents(this, this);
-		this.getCommand("antiswear").setExecutor(this);
-		this.getLogger().info("BetterAntiSwear by wordnice was enabled!");
+		long start = System.nanoTime();
+		final CompiledFilter ret = new CompiledFilter(bl, wh, tr, fz);
+		Metrics metrics = this.aswear.getMetrics();
+		if(metrics != null) {
+			metrics.compile.record(System.nanoTime() - start);
+		}
+		
+		final byte[] savekey = key;
+		ScheduledThreadPoolExecutor worker = this.worker;
+		if(savekey != null && worker != null) {
+			worker.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						cache.save(ret, savekey);
+					} catch(Exception e) {
+						AntiSwearPlugin.this.getLogger().warning("Could not save compiled filter to '" 
+								+ cache.getFile() + "': " + e);
+					}
+				}
+			
+			});
+		}
+		return ret;
+	}
+	
+	/**
+	 * Load and compile profiles (section `Profiles`), every one with
+	 * common lists and its own lists
+	 * 
+	 * @param cfg Config
+	 * @param tr Substitutions or `null`
+	 * 
+	 * @return Profiles
+	 */
+	protected Profiles loadProfiles(ConfigurationSection cfg, Transducer tr) {
+		ConfigurationSection sec = cfg.getConfigurationSection("Profiles");
+		if(sec == null) {
+			return Profiles.EMPTY;
+		}
+		List<Map<?,?>> blacklist = cfg.getMapList("Blacklist");
+		List<String> whitelist = cfg.getStringList("Whitelist");
+		List<Map<?,?>> fuzzy = cfg.getMapList("Fuzzy");
+		List<Profiles.Profile> list = new ArrayList<Profiles.Profile>();
+		for(String name : sec.getKeys(false)) {
+			ConfigurationSection prof = sec.getConfigurationSection(name);
+			if(prof == null) {
+				continue;
+			}
+			List<Map<?,?>> bl = new ArrayList<Map<?,?>>(blacklist);
+			bl.addAll(prof.getMapList("Blacklist"));
+			List<String> wl = new ArrayList<String>(whitelist);
+			wl.addAll(prof.getStringList("Whitelist"));
+			List<Map<?,?>> fz = new ArrayList<Map<?,?>>(fuzzy);
+			fz.addAll(prof.getMapList("Fuzzy"));
+			AntiSwear as = new AntiSwear();
+			as.setFilter(this.loadFilter(name, bl, wl, fz, tr, cfg.getBoolean("FilterCache", true)));
+			list.add(new Profiles.Profile(name, as, prof));
+		}
+		return new Profiles(list);
+	}
+	
+	/**
+	 * Replace profiles, they get cache and metrics settings of {@link AntiSwearPlugin#aswear}
+	 * 
+	 * @param profiles New profiles
+	 */
+	protected void setProfiles(Profiles profiles) {
+		profiles.configure(this.aswear);
+		this.profiles = profiles;
+	}
+	
+	/**
+	 * @param p Player, may be `null`
+	 * @param channel Channel (chat, sign, book, anvil, command)
+	 * 
+	 * @return AntiSwear of profile of message, {@link AntiSwearPlugin#aswear} if there is no profile
+	 */
+	public AntiSwear getAntiSwear(Player p, String channel) {
+		Profiles.Profile prof = this.profiles.get(p, channel);
+		return (prof == null) ? this.aswear : prof.aswear;
+	}
+	
+	/**
+	 * @return All AntiSwear instances, common one first
+	 */
+	public List<AntiSwear> getAntiSwears() {
+		List<AntiSwear> ret = new ArrayList<AntiSwear>();
+		ret.add(this.aswear);
+		for(Profiles.Profile prof : this.profiles.getProfiles()) {
+			ret.add(prof.aswear);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @param sec Config
+	 * 
+	 * @return Loaded section `Blacklist` or `null`
+	 */
+	public static char[][] loadBlacklist(ConfigurationSection sec) {
+		if(sec == null) {
+			return null;
+		}
+		return AntiSwear.loadBlacklist(sec.getMapList("Blacklist"));
+	}
+	
+	/**
+	 * @param sec Config
+	 * 
+	 * @return Loaded section `Whitelist` or `null`
+	 */
+	public static char[][] loadWhitelist(ConfigurationSection sec) {
+		if(sec == null) {
+			return null;
+		}
+		return AntiSwear.loadWhitelist(sec.getStringList("Whitelist"));
+	}
+	
+	/**
+	 * Load config again and compile new filter on worker thread. Chat
+	 * is checked with old filter until new one is ready
+	 * 
+	 * @param sender Who will be notified when done, may be `null`
+	 */
+	public void reload(final CommandSender sender) {
+		final ScheduledThreadPoolExecutor worker = this.worker;
+		if(worker == null) {
+			return;
+		}
+		worker.execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				AntiSwearPlugin pl = AntiSwearPlugin.this;
+				String msg;
+				try {
+					long start = System.nanoTime();
+					//- Edits saved below are in loaded config, later ones are applied again
+					synchronized(pl.editLock) {
+						pl.reloadEdits = new ArrayList<String[]>();
+					}
+					pl.saveEdits();
+					FileConfiguration cfg = YamlConfiguration.loadConfiguration(
+							new File(pl.getDataFolder(), "config.yml"));
+					Transducer tr = pl.loadSubstitutions();
+					CompiledFilter filter = pl.loadFilter(cfg, tr);
+					Profiles profiles = pl.loadProfiles(cfg, tr);
+					pl.loadSettings(cfg);
+					synchronized(pl.editLock) {
+						pl.aswear.setFilter(filter);
+						pl.setProfiles(profiles);
+						for(String[] edit : pl.reloadEdits) {
+							pl.apply(edit[0], edit[1]);
+						}
+						pl.reloadEdits = null;
+					}
+					msg = "Reloaded in " + ((System.nanoTime() - start) / 1000000) + " ms";
+					pl.getLogger().info(msg);
+				} catch(Exception e) {
+					synchronized(pl.editLock) {
+						pl.reloadEdits = null;
+					}
+					msg = ChatColor.RED + "Could not reload: " + e;
+					pl.getLogger().severe("Could not reload: " + e);
+				}
+				if(sender != null) {
+					final String tosend = PREFIX + msg;
+					Bukkit.getScheduler().runTask(pl, new Runnable() {
+						
+						@Override
+						public void run() {
+							sender.sendMessage(tosend);
+						}
+					
+					});
+				}
+			}
+		
+		});
+	}
+	
+	/**
+	 * Add word to blacklist (or change its replacement) or remove it.
+	 * Compiled filter is changed immediately, config is saved in batch later
+	 * 
+	 * @param word Swear
+	 * @param replace Replacement, `null` to remove word
+	 * 
+	 * @return `true` If blacklist was changed
+	 */
+	public boolean edit(String word, String replace) {
+		String[] edit = new String[] { word, replace };
+		synchronized(this.editLock) {
+			if(!this.apply(word, replace)) {
+				return false;
+			}
+			if(this.reloadEdits != null) {
+				this.reloadEdits.add(edit);
+			}
+		}
+		this.edits.add(edit);
+		ScheduledThreadPoolExecutor worker = this.worker;
+		if(worker != null && this.saveScheduled.compareAndSet(false, true)) {
+			worker.schedule(new Runnable() {
+				
+				@Override
+				public void run() {
+					AntiSwearPlugin.this.saveEdits();
+				}
+			
+			}, SAVE_DELAY, TimeUnit.MILLISECONDS);
+		}
+		return true;
+	}
+	
+	/**
+	 * Apply blacklist change to compiled filters of all profiles
+	 * 
+	 * @param word Swear
+	 * @param replace Replacement, `null` to remove word
+	 * 
+	 * @return `true` If any blacklist was changed
+	 */
+	protected boolean apply(String word, String replace) {
+		boolean changed = false;
+		for(AntiSwear as : this.getAntiSwears()) {
+			changed |= (replace == null) ? as.removeWord(word) : as.addWord(word, replace);
+		}
+		return changed;
+	}
+	
+	/**
+	 * Save pending blacklist changes to config.yml and compile them into
+	 * filter. Run on worker thread. Whole config is written again, so
+	 * its comments are not kept
+	 */
+	protected void saveEdits() {
+		this.saveScheduled.set(false);
+		if(this.edits.isEmpty()) {
+			return;
+		}
+		File file = new File(this.getDataFolder(), "config.yml");
+		FileConfiguration cfg = YamlConfiguration.loadConfiguration(file);
+		Transducer tr = this.aswear.getSubstitutions();
+		List<String[]> edits = new ArrayList<String[]>();
+		String[] edit;
+		while((edit = this.edits.poll()) != null) {
+			edits.add(edit);
+		}
+		cfg.set("Blacklist", AntiSwearPlugin.applyEdits(cfg.getMapList("Blacklist"), edits, tr, true));
+		//- Removed words are removed from profiles too, added ones are common
+		ConfigurationSection profiles = cfg.getConfigurationSection("Profiles");
+		if(profiles != null) {
+			for(String name : profiles.getKeys(false)) {
+				ConfigurationSection prof = profiles.getConfigurationSection(name);
+				if(prof != null && prof.contains("Blacklist")) {
+					prof.set("Blacklist", AntiSwearPlugin.applyEdits(prof.getMapList("Blacklist"), edits, tr, false));
+				}
+			}
+		}
+		int num = edits.size();
+		try {
+			cfg.save(file);
+			if(this.watcher != null) {
+				this.watcher.ignore(file.getName());
+			}
+			this.getLogger().info("Saved " + num + " blacklist changes to '" + file + "'");
+		} catch(Exception e) {
+			this.getLogger().severe("Could not save blacklist changes to '" + file + "': " + e);
+		}
+		for(AntiSwear as : this.getAntiSwears()) {
+			as.compact();
+		}
+	}
+	
+	/**
+	 * @param list Section `Blacklist`
+	 * @param edits Edits, { word, replacement or `null` to remove }
+	 * @param tr Substitutions or `null`
+	 * @param add Add words, otherwise words are only removed
+	 * 
+	 * @return Changed section
+	 */
+	protected static List<Map<?,?>> applyEdits(List<Map<?,?>> list, List<String[]> edits, Transducer tr, boolean add) {
+		list = new ArrayList<Map<?,?>>(list);
+		List<String> keys = new ArrayList<String>(list.size());
+		for(Map<?,?> ent : list) {
+			keys.add(ent.isEmpty() ? null : AntiSwearPlugin.key(ent.keySet().iterator().next(), tr));
+		}
+		for(String[] edit : edits) {
+			if(!add && edit[1] != null) {
+				continue;
+			}
+			String key = AntiSwearPlugin.key(edit[0], tr);
+			Iterator<String> kit = keys.iterator();
+			Iterator<Map<?,?>> lit = list.iterator();
+			while(kit.hasNext()) {
+				lit.next();
+				if(key.equals(kit.next())) {
+					kit.remove();
+					lit.remove();
+				}
+			}
+			if(edit[1] != null) {
+				keys.add(key);
+				list.add(Collections.singletonMap(edit[0], edit[1]));
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * @param word Swear
+	 * @param tr Substitutions or `null`
+	 * 
+	 * @return Key of swear, same for all its variants
+	 */
+	protected static String key(Object word, Transducer tr) {
+		String key = AntiSwear.removeTyposAll(String.valueOf(word));
+		return (tr == null) ? key : tr.removeTyposAll(key);
+	}
+	
+	/**
+	 * @param p Player
+	 * 
+	 * @return `true` if messages of player are not scanned, remembered in {@link BypassCache}
+	 */
+	public boolean canSwear(Player p) {
+		if(p == null) {
+			return true;
+		}
+		BypassCache bypass = this.bypass;
+		return (bypass == null) ? this.lookupSwear(p) : bypass.get(p);
+	}
+	
+	/**
+	 * @param p Player
+	 * 
+	 * @return `true` if messages of player are not scanned, always asks permission plugin
+	 */
+	public boolean lookupSwear(Player p) {
+		return (this.allowOpSwear && p.isOp()) || p.hasPermission("BetterAntiSwear.Swear");
 	}
 	
 	/**
@@ -142,11 +926,45 @@ public class AntiSwearPlugin extends JavaPlugin implements Listener {
 	 */
 	@EventHandler(ignoreCancelled=true)
 	public void onChat(AsyncPlayerChatEvent event) {
+		Metrics metrics = this.aswear.getMetrics();
+		long start = System.nanoTime();
 		Player p = event.getPlayer();
-		if(p == null || (this.allowOpSwear && p.isOp()) || p.hasPermission("BetterAntiSwear.Swear")) {
+		if(this.canSwear(p)) {
+			if(metrics != null) {
+				metrics.bypassed.incrementAndGet();
+			}
 			return;
 		}
-		String nevmsg = this.aswear.processString(event.getMessage(), null);
+		Violations vio = this.violations;
+		if(vio != null && vio.isMuted(p.getUniqueId())) {
+			event.setCancelled(true);
+			if(vio.getMuteMessage() != null) {
+				p.sendMessage(vio.getMuteMessage());
+			}
+			if(metrics != null) {
+				metrics.muted.incrementAndGet();
+			}
+			return;
+		}
+		AntiSwear as = this.getAntiSwear(p, "chat");
+		CompiledFilter cmp = as.getFilter();
+		LoadShedder shed = this.shedder;
+		String original = event.getMessage();
+		String split = this.splits.process(p.getUniqueId(), as, original);
+		String msg = (split == null) ? original : split;
+		String nevmsg = (shed == null) ? as.processString(msg, null) : shed.process(as, msg);
+		if(nevmsg == LoadShedder.BLOCKED) {
+			event.setCancelled(true);
+			if(this.shedMessage != null) {
+				p.sendMessage(this.shedMessage);
+			}
+			if(metrics != null) {
+				metrics.shed.incrementAndGet();
+			}
+			nevmsg = null;
+		} else if(nevmsg == null) {
+			nevmsg = split;
+		}
 		if(nevmsg != null) {
 			if(this.swearMessage != null) {
 				p.sendMessage(this.swearMessage);
@@ -156,16 +974,113 @@ public class AntiSwearPlugin extends JavaPlugin implements Listener {
 			} else {
 				event.setMessage(nevmsg);
 			}
+			if(vio != null) {
+				vio.add(p);
+			}
+			AuditLog audit = this.audit;
+			if(audit != null && !audit.log("chat", p.getUniqueId(), p.getName(), as, cmp, original, nevmsg)
+					&& metrics != null) {
+				metrics.auditDropped.incrementAndGet();
+			}
+		}
+		long time = System.nanoTime() - start;
+		if(shed != null) {
+			shed.record(time);
+		}
+		if(metrics != null) {
+			metrics.scanned.incrementAndGet();
+			if(nevmsg != null) {
+				(this.blockSwear ? metrics.blocked : metrics.censored).incrementAndGet();
+			}
+			metrics.chat.record(time);
 		}
 	}
 	
+	/**
+	 * @param event Event
+	 */
+	@EventHandler(priority=EventPriority.MONITOR)
+	public void onQuit(PlayerQuitEvent event) {
+		this.splits.forget(event.getPlayer().getUniqueId());
+	}
+	
 	/**
 	 * Called on command
 	 * See {@link JavaPlugin#onCommand(CommandSender, Command, String, String[])}
 	 */
 	@Override
 	public boolean onCommand(CommandSender sender, Command command, String typed, String[] args) {
-		if(args.length >= 1 && args[0].equalsIgnoreCase("test") 
+		if(args.length == 1 && args[0].equalsIgnoreCase("reload")
+				&& (sender.isOp() || sender.hasPermission("BetterAntiSwear.Reload"))) {
+			sender.sendMessage(PREFIX + "Reloading...");
+			this.reload(sender);
+			return true;
+		} else if(args.length >= 3 && args[0].equalsIgnoreCase("add")
+				&& (sender.isOp() || sender.hasPermission("BetterAntiSwear.Edit"))) {
+			String mask = args[2];
+			for(int i = 3, n = args.length; i < n; i++) {
+				mask += " " + args[i];
+			}
+			if(this.edit(args[1], mask)) {
+				sender.sendMessage(PREFIX + "Blacklisted " + args[1] + " as " 
+						+ ChatColor.translateAlternateColorCodes('&', mask));
+			} else {
+				sender.sendMessage(PREFIX + args[1] + " is already blacklisted as " 
+						+ ChatColor.translateAlternateColorCodes('&', mask));
+			}
+			return true;
+		} else if(args.length == 2 && args[0].equalsIgnoreCase("remove")
+				&& (sender.isOp() || sender.hasPermission("BetterAntiSwear.Edit"))) {
+			if(this.edit(args[1], null)) {
+				sender.sendMessage(PREFIX + "Removed " + args[1] + " from blacklist");
+			} else {
+				sender.sendMessage(PREFIX + ChatColor.RED + args[1] + " is not blacklisted");
+			}
+			return true;
+		} else if(args.length == 1 && args[0].equalsIgnoreCase("cache")
+				&& (sender.isOp() || sender.hasPermission("BetterAntiSwear.Test"))) {
+			ResultCache cache = this.aswear.getCache();
+			sender.sendMessage(PREFIX + ((cache == null) ? "Cache is disabled" : ("Cache " + cache)));
+			return true;
+		} else if(args.length == 1 && args[0].equalsIgnoreCase("stats")
+				&& (sender.isOp() || sender.hasPermission("BetterAntiSwear.Test"))) {
+			Metrics metrics = this.aswear.getMetrics();
+			if(metrics == null) {
+				sender.sendMessage(PREFIX + "Metrics are disabled");
+				return true;
+			}
+			sender.sendMessage(PREFIX + "Statistics since start:");
+			for(String line : metrics.format()) {
+				sender.sendMessage(ChatColor.YELLOW + line);
+			}
+			LoadShedder shed = this.shedder;
+			if(shed != null) {
+				sender.sendMessage(ChatColor.YELLOW + "chat checks: " + shed);
+			}
+			AuditLog audit = this.audit;
+			if(audit != null) {
+				sender.sendMessage(ChatColor.YELLOW + "audit log: " + audit);
+			}
+			return true;
+		} else if(args.length == 2 && (args[0].equalsIgnoreCase("score") || args[0].equalsIgnoreCase("forgive"))
+				&& (sender.isOp() || sender.hasPermission("BetterAntiSwear.Edit"))) {
+			Player target = Bukkit.getPlayerExact(args[1]);
+			Violations vio = this.violations;
+			if(vio == null || vio.getHalfLife() == 0) {
+				sender.sendMessage(PREFIX + "Violation scores are disabled");
+			} else if(target == null) {
+				sender.sendMessage(PREFIX + ChatColor.RED + args[1] + " is not online");
+			} else if(args[0].equalsIgnoreCase("forgive")) {
+				vio.reset(target.getUniqueId());
+				sender.sendMessage(PREFIX + "Score and mute of " + target.getName() + " were reset");
+			} else {
+				long muted = vio.getMuted(target.getUniqueId());
+				sender.sendMessage(PREFIX + target.getName() + " has violation score " 
+						+ String.format(Locale.ROOT, "%.2f", vio.getScore(target.getUniqueId()))
+						+ ((muted == 0) ? "" : (", muted for " + ((muted - System.currentTimeMillis()) / 1000) + " s")));
+			}
+			return true;
+		} else if(args.length >= 1 && args[0].equalsIgnoreCase("test") 
 				&& (sender.isOp() || sender.hasPermission("BetterAntiSwear.Test"))) {
 			String msg = "";
 			for(int i = 1, n = args.length; i < n; i++) {
@@ -176,7 +1091,8 @@ public class AntiSwearPlugin extends JavaPlugin implements Listener {
 			}
 			long start = System.nanoTime();
 			String[] mini = new String[1];
-			String process = this.aswear.processString(msg, mini);
+			AntiSwear as = (sender instanceof Player) ? this.getAntiSwear((Player) sender, "chat") : this.aswear;
+			String process = as.processString(msg, mini);
 			sender.sendMessage(new String[] {
 				(PREFIX + msg),
 				(ChatColor.YELLOW + "" + ChatColor.ITALIC + "" + (System.nanoTime() - start) 
@@ -186,6 +1102,15 @@ public class AntiSwearPlugin extends JavaPlugin implements Listener {
 			return true;
 		} else if(sender.isOp() || sender.hasPermission("BetterAntiSwear.Test")) {
 			sender.sendMessage(PREFIX + "/" + typed + " test <message>");
+			sender.sendMessage(PREFIX + "/" + typed + " cache");
+			sender.sendMessage(PREFIX + "/" + typed + " stats");
+			if(sender.isOp() || sender.hasPermission("BetterAntiSwear.Reload")) {
+				sender.sendMessage(PREFIX + "/" + typed + " reload");
+			}
+			if(sender.isOp() || sender.hasPermission("BetterAntiSwear.Edit")) {
+				sender.sendMessage(PREFIX + "/" + typed + " add <word> <replacement>");
+				sender.sendMessage(PREFIX + "/" + typed + " remove <word>");
+			}
 			return true;
 		}
 		return false;
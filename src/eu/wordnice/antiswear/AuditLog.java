@@ -0,0 +1,533 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Log of censored messages, written by one thread
+ * 
+ * {@link AuditLog#log(String, UUID, String, AntiSwear, String, String)} only
+ * counts and queues entry to lock-free queue, when queue is full the entry is
+ * dropped and counted. Writer thread wakes every {@link AuditLog#FLUSH_DELAY}
+ * milliseconds, finds matched swears of queued messages and writes all of them
+ * with one {@link FileChannel#write(ByteBuffer)}. Every entry is one line:
+ * 
+ *   time \t channel \t uuid \t player \t swears \t original \t censored
+ * 
+ * with tabs, new lines and backslashes escaped by backslash, so files can
+ * be scanned by {@link LogScanner} (`--message` with 6th column) or grep.
+ * When file reaches {@link AuditLog#maxSize} or day changes, it is renamed
+ * to `audit-<day>.<n>.log` and compressed by gzip, only {@link AuditLog#keep}
+ * newest archives are kept.
+ */
+public class AuditLog implements Runnable {
+	
+	/**
+	 * Time between writes, milliseconds
+	 */
+	public static long FLUSH_DELAY = 200;
+	
+	/**
+	 * Entries written at once
+	 */
+	protected static final int BATCH = 4096;
+	
+	/**
+	 * Failed writes of one batch before it is dropped
+	 */
+	protected static final int RETRIES = 5;
+	
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Censored message
+	 */
+	protected static class Entry {
+		
+		public final long time;
+		public final String channel;
+		public final UUID id;
+		public final String name;
+		public final AntiSwear aswear;
+		public final CompiledFilter filter;
+		public final String original;
+		public final String censored;
+		
+		public Entry(long time, String channel, UUID id, String name, AntiSwear aswear, 
+				CompiledFilter filter, String original, String censored) {
+			this.time = time;
+			this.channel = channel;
+			this.id = id;
+			this.name = name;
+			this.aswear = aswear;
+			this.filter = filter;
+			this.original = original;
+			this.censored = censored;
+		}
+	
+	}
+	
+	/**
+	 * Directory with logs
+	 */
+	protected final File dir;
+	
+	/**
+	 * Current log
+	 */
+	protected final File file;
+	
+	/**
+	 * Maximal queued entries
+	 */
+	protected final int capacity;
+	
+	/**
+	 * Size of file when it is rotated, bytes, 0 = only daily
+	 */
+	protected final long maxSize;
+	
+	/**
+	 * Kept archives, 0 = all
+	 */
+	protected final int keep;
+	
+	protected final Logger logger;
+	
+	protected final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+	
+	/**
+	 * Queued entries, bounds {@link AuditLog#queue}
+	 */
+	protected final AtomicInteger queued = new AtomicInteger();
+	
+	protected final AtomicLong written = new AtomicLong();
+	protected final AtomicLong dropped = new AtomicLong();
+	
+	protected volatile boolean running = false;
+	protected Thread thread = null;
+	
+	/**
+	 * Open log, day of its first entry and its size, used only by writer thread
+	 */
+	protected FileChannel ch = null;
+	protected String day = null;
+	protected long size = 0;
+	
+	protected final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+	protected final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+	protected final StringBuilder sb = new StringBuilder(65536);
+	
+	/**
+	 * Batch not written because of error, written again before new entries
+	 */
+	protected ByteBuffer pending = null;
+	protected int pendingNum = 0;
+	protected int failures = 0;
+	
+	/**
+	 * @param dir Directory with logs
+	 * @param capacity Maximal queued entries
+	 * @param maxSize Size of file when it is rotated, bytes, 0 = only daily
+	 * @param keep Kept archives, 0 = all
+	 * @param logger Logger of write errors
+	 */
+	public AuditLog(File dir, int capacity, long maxSize, int keep, Logger logger) {
+		if(capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive!");
+		}
+		this.dir = dir;
+		this.file = new File(dir, "audit.log");
+		this.capacity = capacity;
+		this.maxSize = Math.max(0, maxSize);
+		this.keep = Math.max(0, keep);
+		this.logger = logger;
+	}
+	
+	/**
+	 * @return Directory with logs
+	 */
+	public File getDir() {
+		return this.dir;
+	}
+	
+	/**
+	 * @return Maximal queued entries
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+	
+	/**
+	 * @return Size of file when it is rotated, bytes, 0 = only daily
+	 */
+	public long getMaxSize() {
+		return this.maxSize;
+	}
+	
+	/**
+	 * @return Kept archives, 0 = all
+	 */
+	public int getKeep() {
+		return this.keep;
+	}
+	
+	/**
+	 * @return Entries written to file
+	 */
+	public long getWritten() {
+		return this.written.get();
+	}
+	
+	/**
+	 * @return Entries dropped because queue was full or they could not be written
+	 */
+	public long getDropped() {
+		return this.dropped.get();
+	}
+	
+	/**
+	 * Start writer thread
+	 */
+	public synchronized void start() {
+		if(this.thread != null) {
+			return;
+		}
+		this.running = true;
+		this.thread = new Thread(this, "BetterAntiSwear-Audit");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+	
+	/**
+	 * Write queued entries and stop writer thread
+	 * 
+	 * @throws InterruptedException If interrupted while waiting for writer
+	 */
+	public synchronized void close() throws InterruptedException {
+		Thread th = this.thread;
+		if(th == null) {
+			return;
+		}
+		this.running = false;
+		LockSupport.unpark(th);
+		th.join(10000);
+		this.thread = null;
+	}
+	
+	/**
+	 * Queue censored message, never blocks
+	 * 
+	 * @param channel Channel (chat)
+	 * @param id Player
+	 * @param name Name of player
+	 * @param aswear AntiSwear which censored message
+	 * @param filter Its filter used for message, swears are found by writer
+	 *        with it even if filter was replaced meanwhile
+	 * @param original Original message
+	 * @param censored Censored message
+	 * 
+	 * @return `false` If entry was dropped, queue is full
+	 */
+	public boolean log(String channel, UUID id, String name, AntiSwear aswear, CompiledFilter filter, 
+			String original, String censored) {
+		int cur;
+		do {
+			cur = this.queued.get();
+			if(cur >= this.capacity) {
+				this.dropped.incrementAndGet();
+				return false;
+			}
+		} while(!this.queued.compareAndSet(cur, cur + 1));
+		this.queue.offer(new Entry(System.currentTimeMillis(), channel, id, name, aswear, filter, 
+				original, censored));
+		return true;
+	}
+	
+	/**
+	 * Writer thread
+	 */
+	@Override
+	public void run() {
+		while(this.running || !this.queue.isEmpty() || this.pending != null) {
+			if(this.pending == null && this.queue.isEmpty()) {
+				LockSupport.parkNanos(FLUSH_DELAY * 1000000);
+				continue;
+			}
+			try {
+				this.write();
+			} catch(Exception e) {
+				this.logger.warning("Could not write audit log '" + this.file + "': " + e);
+				this.closeFile();
+				this.failed();
+				//- Do not spin on full disk
+				LockSupport.parkNanos(FLUSH_DELAY * 1000000 * 10);
+			}
+		}
+		this.closeFile();
+	}
+	
+	/**
+	 * Write batch left by failed write or one batch of queued entries
+	 * 
+	 * @throws IOException On write error
+	 */
+	protected void write() throws IOException {
+		long now = System.currentTimeMillis();
+		String today = this.dayFormat.format(new Date(now));
+		if(this.ch == null) {
+			this.open(today);
+		} else if(!today.equals(this.day) || (this.maxSize != 0 && this.size >= this.maxSize)) {
+			this.rotate();
+			this.open(today);
+		}
+		if(this.pending == null) {
+			this.pending = this.batch();
+		}
+		ByteBuffer buf = this.pending;
+		while(buf.hasRemaining()) {
+			this.size += this.ch.write(buf);
+		}
+		this.pending = null;
+		this.failures = 0;
+		this.written.addAndGet(this.pendingNum);
+	}
+	
+	/**
+	 * Take one batch of queued entries, sets {@link AuditLog#pendingNum}
+	 * 
+	 * @return Lines of entries
+	 */
+	protected ByteBuffer batch() {
+		StringBuilder sb = this.sb;
+		sb.setLength(0);
+		int num = 0;
+		Entry e;
+		Date date = new Date();
+		while(num < BATCH && (e = this.queue.poll()) != null) {
+			this.queued.decrementAndGet();
+			num++;
+			date.setTime(e.time);
+			sb.append(this.timeFormat.format(date)).append('\t');
+			AuditLog.escape(sb, e.channel).append('\t');
+			sb.append(e.id).append('\t');
+			AuditLog.escape(sb, e.name).append('\t');
+			List<String> swears = e.aswear.findSwears(e.filter, e.original);
+			for(int i = 0; i < swears.size(); i++) {
+				if(i != 0) {
+					sb.append(',');
+				}
+				AuditLog.escape(sb, swears.get(i));
+			}
+			sb.append('\t');
+			AuditLog.escape(sb, e.original).append('\t');
+			AuditLog.escape(sb, e.censored).append('\n');
+		}
+		this.pendingNum = num;
+		return ByteBuffer.wrap(sb.toString().getBytes(UTF8));
+	}
+	
+	/**
+	 * After failed write drop the batch when it failed {@link AuditLog#RETRIES}
+	 * times, and when log is closed also queued entries, they are counted as dropped
+	 */
+	protected void failed() {
+		if(this.pending != null && (++this.failures >= RETRIES || !this.running)) {
+			this.logger.warning("Dropped " + this.pendingNum + " entries of audit log");
+			this.dropped.addAndGet(this.pendingNum);
+			this.pending = null;
+			this.failures = 0;
+		}
+		if(!this.running) {
+			while(this.queue.poll() != null) {
+				this.queued.decrementAndGet();
+				this.dropped.incrementAndGet();
+			}
+		}
+	}
+	
+	/**
+	 * Append escaped text
+	 * 
+	 * @return Same builder
+	 */
+	protected static StringBuilder escape(StringBuilder sb, String str) {
+		for(int i = 0, n = str.length(); i < n; i++) {
+			char c = str.charAt(i);
+			switch(c) {
+				case '\\':
+					sb.append("\\\\");
+					break;
+				case '\t':
+					sb.append("\\t");
+					break;
+				case '\n':
+					sb.append("\\n");
+					break;
+				case '\r':
+					sb.append("\\r");
+					break;
+				default:
+					sb.append(c);
+			}
+		}
+		return sb;
+	}
+	
+	/**
+	 * Open log for appending, log left from other day is rotated first
+	 */
+	protected void open(String today) throws IOException {
+		if(!this.dir.isDirectory() && !this.dir.mkdirs()) {
+			throw new IOException("Could not create directory");
+		}
+		if(this.file.isFile() && this.file.length() != 0) {
+			String old = this.dayFormat.format(new Date(this.file.lastModified()));
+			if(!old.equals(today) || (this.maxSize != 0 && this.file.length() >= this.maxSize)) {
+				this.day = old;
+				this.archive();
+			}
+		}
+		this.ch = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.size = this.ch.size();
+		this.day = today;
+	}
+	
+	/**
+	 * Close current log and archive it
+	 */
+	protected void rotate() throws IOException {
+		this.closeFile();
+		this.archive();
+	}
+	
+	protected void closeFile() {
+		FileChannel ch = this.ch;
+		this.ch = null;
+		if(ch != null) {
+			try {
+				ch.force(true);
+				ch.close();
+			} catch(IOException ioe) {}
+		}
+	}
+	
+	/**
+	 * Compress closed log to `audit-<day>.<n>.log.gz` and delete old archives
+	 */
+	protected void archive() throws IOException {
+		int n = 1;
+		File plain, gz;
+		do {
+			plain = new File(this.dir, "audit-" + this.day + "." + n + ".log");
+			gz = new File(plain.getPath() + ".gz");
+			n++;
+		} while(plain.exists() || gz.exists());
+		if(!this.file.renameTo(plain)) {
+			throw new IOException("Could not rename to '" + plain + "'");
+		}
+		InputStream in = new FileInputStream(plain);
+		try {
+			OutputStream out = new GZIPOutputStream(new FileOutputStream(gz), 65536);
+			try {
+				byte[] buf = new byte[65536];
+				int read;
+				while((read = in.read(buf)) != -1) {
+					out.write(buf, 0, read);
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+		plain.delete();
+		if(this.keep == 0) {
+			return;
+		}
+		File[] archives = this.dir.listFiles();
+		if(archives == null) {
+			return;
+		}
+		archives = AuditLog.archives(archives);
+		for(int i = 0; i < archives.length - this.keep; i++) {
+			archives[i].delete();
+		}
+	}
+	
+	/**
+	 * @return Compressed logs, oldest first
+	 */
+	protected static File[] archives(File[] files) {
+		int num = 0;
+		for(File f : files) {
+			String name = f.getName();
+			if(name.startsWith("audit-") && name.endsWith(".log.gz")) {
+				files[num++] = f;
+			}
+		}
+		files = Arrays.copyOf(files, num);
+		Arrays.sort(files, new Comparator<File>() {
+			
+			@Override
+			public int compare(File a, File b) {
+				long diff = a.lastModified() - b.lastModified();
+				return (diff < 0) ? -1 : ((diff > 0) ? 1 : a.getName().compareTo(b.getName()));
+			}
+		
+		});
+		return files;
+	}
+	
+	@Override
+	public String toString() {
+		return "written: " + this.written.get() + ", dropped: " + this.dropped.get()
+				+ ", queued: " + this.queued.get() + "/" + this.capacity;
+	}
+	
+}
@@ -0,0 +1,258 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+
+/**
+ * Remembered {@link AntiSwearPlugin#lookupSwear(Player)} of online players
+ * 
+ * Permission plugins may need long time to resolve permission, so it is
+ * looked up on join and read from map on chat threads. Bukkit has no event
+ * for changed permissions, so the map is cleared after commands editing
+ * permissions ({@link BypassCache#COMMANDS}), on world change, on reload
+ * and every {@link BypassCache#time} milliseconds. Generation counter keeps
+ * lookups racing with clear from remembering old value.
+ */
+public class BypassCache implements Listener {
+	
+	/**
+	 * Commands which may change permissions or operators (lower case, without slash)
+	 */
+	public static Set<String> COMMANDS = new HashSet<String>(Arrays.asList(
+			"op", "deop", "lp", "luckperms", "perm", "perms", "permissions", "pex",
+			"manuadd", "manudel", "manuaddp", "manudelp", "mangaddp", "mangdelp"));
+	
+	protected final AntiSwearPlugin plugin;
+	
+	/**
+	 * Bypass of players by UUID
+	 */
+	protected final ConcurrentHashMap<UUID,Boolean> cache = new ConcurrentHashMap<UUID,Boolean>();
+	
+	/**
+	 * Incremented on every clear, lookups started before clear are not remembered
+	 */
+	protected volatile int generation = 0;
+	
+	/**
+	 * Time after which all entries are forgotten, milliseconds, 0 = disabled
+	 */
+	protected volatile long time = 0;
+	
+	/**
+	 * Task clearing cache, -1 if not scheduled
+	 */
+	protected int task = -1;
+	
+	/**
+	 * @param plugin Plugin
+	 */
+	public BypassCache(AntiSwearPlugin plugin) {
+		this.plugin = plugin;
+	}
+	
+	/**
+	 * @return Time after which all entries are forgotten, milliseconds, 0 = disabled
+	 */
+	public long getTime() {
+		return this.time;
+	}
+	
+	/**
+	 * Forget all players and schedule periodic clearing
+	 * 
+	 * @param time Time after which all entries are forgotten, milliseconds, 0 = disabled
+	 */
+	public synchronized void setTime(long time) {
+		if(this.task != -1 && time != this.time) {
+			Bukkit.getScheduler().cancelTask(this.task);
+			this.task = -1;
+		}
+		this.time = time;
+		this.clear();
+		if(this.task == -1 && time > 0) {
+			long ticks = Math.max(1, time / 50);
+			this.task = Bukkit.getScheduler().scheduleSyncRepeatingTask(this.plugin, new Runnable() {
+				
+				@Override
+				public void run() {
+					BypassCache.this.clear();
+				}
+			
+			}, ticks, ticks);
+		}
+	}
+	
+	/**
+	 * @return Number of remembered players
+	 */
+	public int size() {
+		return this.cache.size();
+	}
+	
+	/**
+	 * @param p Player
+	 * 
+	 * @return `true` if player may swear
+	 */
+	public boolean get(Player p) {
+		if(this.time == 0) {
+			return this.plugin.lookupSwear(p);
+		}
+		UUID id = p.getUniqueId();
+		Boolean ret = this.cache.get(id);
+		Metrics metrics = this.plugin.aswear.getMetrics();
+		if(ret != null) {
+			if(metrics != null) {
+				metrics.bypassHits.incrementAndGet();
+			}
+			return ret;
+		}
+		int gen = this.generation;
+		long start = System.nanoTime();
+		ret = this.plugin.lookupSwear(p);
+		if(metrics != null) {
+			metrics.permission.record(System.nanoTime() - start);
+		}
+		if(gen == this.generation) {
+			this.cache.put(id, ret);
+			//- Cleared meanwhile
+			if(gen != this.generation) {
+				this.cache.remove(id);
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Forget all players
+	 */
+	public void clear() {
+		this.generation++;
+		this.cache.clear();
+	}
+	
+	/**
+	 * Forget player
+	 */
+	protected void forget(UUID id) {
+		this.generation++;
+		this.cache.remove(id);
+	}
+	
+	/**
+	 * Forget all players now and on next tick, after command is executed
+	 */
+	protected void clearLater() {
+		this.clear();
+		Bukkit.getScheduler().runTask(this.plugin, new Runnable() {
+			
+			@Override
+			public void run() {
+				BypassCache.this.clear();
+			}
+		
+		});
+	}
+	
+	/**
+	 * @return `true` if command may change permissions
+	 */
+	protected static boolean isPermissionCommand(String cmd) {
+		cmd = cmd.trim();
+		if(cmd.startsWith("/")) {
+			cmd = cmd.substring(1);
+		}
+		int end = cmd.indexOf(' ');
+		String label = ((end == -1) ? cmd : cmd.substring(0, end)).toLowerCase(Locale.ROOT);
+		return COMMANDS.contains(label.substring(label.indexOf(':') + 1));
+	}
+	
+	/**
+	 * @param event Event
+	 */
+	@EventHandler(priority=EventPriority.MONITOR)
+	public void onJoin(PlayerJoinEvent event) {
+		if(this.time != 0) {
+			this.get(event.getPlayer());
+		}
+	}
+	
+	/**
+	 * @param event Event
+	 */
+	@EventHandler(priority=EventPriority.MONITOR)
+	public void onQuit(PlayerQuitEvent event) {
+		this.forget(event.getPlayer().getUniqueId());
+	}
+	
+	/**
+	 * Permissions may be different in every world
+	 * 
+	 * @param event Event
+	 */
+	@EventHandler(priority=EventPriority.MONITOR)
+	public void onWorld(PlayerChangedWorldEvent event) {
+		this.forget(event.getPlayer().getUniqueId());
+	}
+	
+	/**
+	 * @param event Event
+	 */
+	@EventHandler(ignoreCancelled=true, priority=EventPriority.MONITOR)
+	public void onCommand(PlayerCommandPreprocessEvent event) {
+		if(BypassCache.isPermissionCommand(event.getMessage())) {
+			this.clearLater();
+		}
+	}
+	
+	/**
+	 * @param event Event
+	 */
+	@EventHandler(priority=EventPriority.MONITOR)
+	public void onServerCommand(ServerCommandEvent event) {
+		if(BypassCache.isPermissionCommand(event.getCommand())) {
+			this.clearLater();
+		}
+	}
+	
+}
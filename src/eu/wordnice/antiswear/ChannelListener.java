@@ -0,0 +1,613 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.bukkit.Bukkit;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Sign;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.SignChangeEvent;
+import org.bukkit.event.inventory.InventoryEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerEditBookEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BookMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Filter of signs, books, anvil names and private message commands
+ * 
+ * These events are called on main thread. Texts expected to be checked
+ * within {@link ChannelListener#budget} are checked right away, longer
+ * ones (books with many pages) are checked on {@link AntiSwear#getPool()}
+ * and censored texts are written back on next tick, if they were not
+ * changed meanwhile.
+ */
+public class ChannelListener implements Listener {
+	
+	/**
+	 * Plugin
+	 */
+	protected final AntiSwearPlugin plugin;
+	
+	/**
+	 * Filter signs
+	 */
+	protected volatile boolean signs = true;
+	
+	/**
+	 * Filter books
+	 */
+	protected volatile boolean books = true;
+	
+	/**
+	 * Filter anvil names
+	 */
+	protected volatile boolean anvils = true;
+	
+	/**
+	 * Filtered commands (lower case, without slash) and number
+	 * of arguments before message (e.g. player name)
+	 */
+	protected volatile Map<String,Integer> commands = new HashMap<String,Integer>();
+	
+	/**
+	 * Longest check done on main thread, nanoseconds
+	 */
+	protected volatile long budget = 250000;
+	
+	/**
+	 * Average time of check per character, nanoseconds. Not synchronized,
+	 * lost updates do not matter
+	 */
+	protected volatile double nsPerChar = 50;
+	
+	/**
+	 * Command checked off main thread is being run again, see
+	 * {@link ChannelListener#resend(Player, String)}. Used only on main thread
+	 */
+	protected boolean resending = false;
+	
+	/**
+	 * Callback with result of check done off main thread
+	 */
+	protected static interface Apply {
+		
+		/**
+		 * Called on main thread
+		 * 
+		 * @param out Censored texts, `null` for clean ones
+		 */
+		public void apply(String[] out);
+	
+	}
+	
+	/**
+	 * @param plugin Plugin
+	 */
+	public ChannelListener(AntiSwearPlugin plugin) {
+		this.plugin = plugin;
+	}
+	
+	/**
+	 * Load settings
+	 * 
+	 * @param cfg Config
+	 */
+	public void load(ConfigurationSection cfg) {
+		this.signs = cfg.getBoolean("FilterSigns", true);
+		this.books = cfg.getBoolean("FilterBooks", true);
+		this.anvils = cfg.getBoolean("FilterAnvils", true);
+		Map<String,Integer> commands = new HashMap<String,Integer>();
+		for(String cmd : cfg.getStringList("FilterCommands")) {
+			String[] parts = cmd.trim().toLowerCase(Locale.ROOT).split("\\s+");
+			if(parts[0].length() == 0) {
+				continue;
+			}
+			int skip = 0;
+			if(parts.length > 1) {
+				try {
+					skip = Integer.parseInt(parts[1]);
+				} catch(NumberFormatException nfe) {
+					this.plugin.getLogger().warning("Invalid FilterCommands entry: " + cmd);
+					continue;
+				}
+			}
+			commands.put((parts[0].charAt(0) == '/') ? parts[0].substring(1) : parts[0], skip);
+		}
+		this.commands = commands;
+		this.budget = Math.max(0, cfg.getLong("SyncBudget", 250)) * 1000;
+	}
+	
+	/**
+	 * @return `true` if texts with given number of characters should be checked on main thread
+	 */
+	protected boolean inline(int chars) {
+		return chars * this.nsPerChar <= this.budget;
+	}
+	
+	/**
+	 * Check texts with current filter and update {@link ChannelListener#nsPerChar}
+	 * 
+	 * @param as Filter, see {@link AntiSwearPlugin#getAntiSwear(Player, String)}
+	 * @param in Texts, `null` elements are allowed
+	 * 
+	 * @return Censored texts, `null` for clean ones, or `null` if all texts are clean
+	 */
+	protected String[] scan(AntiSwear as, String[] in) {
+		long start = System.nanoTime();
+		List<String> res = as.processBatch(Arrays.asList(in), null);
+		int chars = 0;
+		for(String str : in) {
+			if(str != null) {
+				chars += str.length();
+			}
+		}
+		if(chars != 0) {
+			//- Moving average, new value has weight 1/8, outliers (GC pause, cold code) are capped
+			double avg = this.nsPerChar;
+			this.nsPerChar = avg + (Math.min((double) (System.nanoTime() - start) / chars, avg * 4) - avg) / 8;
+		}
+		for(String str : res) {
+			if(str != null) {
+				return res.toArray(new String[res.size()]);
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Check texts on {@link AntiSwear#getPool()} and apply censored texts on next tick
+	 * 
+	 * @param as Filter
+	 * @param in Texts
+	 * @param apply Called only if some text was censored
+	 */
+	protected void defer(final AntiSwear as, final String[] in, final Apply apply) {
+		final long start = System.nanoTime();
+		AntiSwear.getPool().execute(new Runnable() {
+			
+			@Override
+			public void run() {
+				final String[] out = ChannelListener.this.scan(as, in);
+				if(out == null) {
+					return;
+				}
+				Bukkit.getScheduler().runTask(ChannelListener.this.plugin, new Runnable() {
+					
+					@Override
+					public void run() {
+						apply.apply(out);
+						Metrics metrics = ChannelListener.this.plugin.aswear.getMetrics();
+						if(metrics != null) {
+							metrics.deferred.record(System.nanoTime() - start);
+						}
+					}
+				
+				});
+			}
+		
+		});
+	}
+	
+	/**
+	 * Count checked text and notify player about swear
+	 * 
+	 * @param p Player to notify or `null`
+	 * @param swear Text contained swear
+	 * @param blocked Text was blocked, not censored
+	 */
+	protected void checked(Player p, boolean swear, boolean blocked) {
+		Metrics metrics = this.plugin.aswear.getMetrics();
+		if(metrics != null) {
+			metrics.scanned.incrementAndGet();
+			if(swear) {
+				(blocked ? metrics.blocked : metrics.censored).incrementAndGet();
+			}
+		}
+		if(swear && p != null && this.plugin.swearMessage != null && p.isOnline()) {
+			p.sendMessage(this.plugin.swearMessage);
+		}
+	}
+	
+	/**
+	 * @return `true` if player may swear (counted as bypassed)
+	 */
+	protected boolean bypass(Player p) {
+		if(!this.plugin.canSwear(p)) {
+			return false;
+		}
+		Metrics metrics = this.plugin.aswear.getMetrics();
+		if(metrics != null) {
+			metrics.bypassed.incrementAndGet();
+		}
+		return true;
+	}
+	
+	protected static void record(Histogram hist, long start) {
+		if(hist != null) {
+			hist.record(System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * @param event Event
+	 */
+	@EventHandler(ignoreCancelled=true, priority=EventPriority.HIGH)
+	public void onSign(SignChangeEvent event) {
+		if(!this.signs) {
+			return;
+		}
+		long start = System.nanoTime();
+		Metrics metrics = this.plugin.aswear.getMetrics();
+		final Player p = event.getPlayer();
+		final String[] lines = event.getLines().clone();
+		int chars = 0;
+		for(String line : lines) {
+			chars += (line == null) ? 0 : line.length();
+		}
+		if(chars == 0 || this.bypass(p)) {
+			return;
+		}
+		AntiSwear as = this.plugin.getAntiSwear(p, "sign");
+		if(this.inline(chars)) {
+			String[] out = this.scan(as, lines);
+			if(out != null) {
+				for(int i = 0; i < out.length; i++) {
+					if(out[i] != null) {
+						event.setLine(i, out[i]);
+					}
+				}
+			}
+			this.checked(p, out != null, false);
+		} else {
+			final Block block = event.getBlock();
+			this.defer(as, lines, new Apply() {
+				
+				@Override
+				public void apply(String[] out) {
+					BlockState state = block.getState();
+					if(!(state instanceof Sign) || !Arrays.equals(((Sign) state).getLines(), lines)) {
+						return;
+					}
+					Sign sign = (Sign) state;
+					for(int i = 0; i < out.length; i++) {
+						if(out[i] != null) {
+							sign.setLine(i, out[i]);
+						}
+					}
+					sign.update();
+					ChannelListener.this.checked(p, true, false);
+				}
+			
+			});
+		}
+		ChannelListener.record((metrics == null) ? null : metrics.sign, start);
+	}
+	
+	/**
+	 * @param event Event
+	 */
+	@EventHandler(ignoreCancelled=true, priority=EventPriority.HIGH)
+	public void onBook(PlayerEditBookEvent event) {
+		if(!this.books) {
+			return;
+		}
+		long start = System.nanoTime();
+		Metrics metrics = this.plugin.aswear.getMetrics();
+		final Player p = event.getPlayer();
+		BookMeta meta = event.getNewBookMeta();
+		final List<String> pages = new ArrayList<String>(meta.getPages());
+		//- Title is checked as last page
+		String[] in = pages.toArray(new String[pages.size() + 1]);
+		in[pages.size()] = (event.isSigning() && meta.hasTitle()) ? meta.getTitle() : null;
+		int chars = 0;
+		for(String str : in) {
+			chars += (str == null) ? 0 : str.length();
+		}
+		if(chars == 0 || this.bypass(p)) {
+			return;
+		}
+		AntiSwear as = this.plugin.getAntiSwear(p, "book");
+		final int slot = event.getSlot();
+		//- Book in off hand (slot -1) can't be found later by 1.7.9 API, checked now
+		if(slot < 0 || this.inline(chars)) {
+			String[] out = this.scan(as, in);
+			if(out != null) {
+				meta = meta.clone();
+				ChannelListener.censor(meta, pages, out);
+				event.setNewBookMeta(meta);
+			}
+			this.checked(p, out != null, false);
+		} else {
+			this.defer(as, in, new Apply() {
+				
+				@Override
+				public void apply(String[] out) {
+					if(!p.isOnline()) {
+						return;
+					}
+					ItemStack item = p.getInventory().getItem(slot);
+					ItemMeta im = (item == null) ? null : item.getItemMeta();
+					if(!(im instanceof BookMeta) || !pages.equals(((BookMeta) im).getPages())) {
+						return;
+					}
+					ChannelListener.censor((BookMeta) im, pages, out);
+					item.setItemMeta(im);
+					p.getInventory().setItem(slot, item);
+					ChannelListener.this.checked(p, true, false);
+				}
+			
+			});
+		}
+		ChannelListener.record((metrics == null) ? null : metrics.book, start);
+	}
+	
+	/**
+	 * Replace censored pages and title of book
+	 * 
+	 * @param meta Book
+	 * @param pages Original pages
+	 * @param out Censored pages and title as last element
+	 */
+	protected static void censor(BookMeta meta, List<String> pages, String[] out) {
+		List<String> nev = new ArrayList<String>(pages);
+		for(int i = 0, n = pages.size(); i < n; i++) {
+			if(out[i] != null) {
+				nev.set(i, out[i]);
+			}
+		}
+		meta.setPages(nev);
+		if(out[pages.size()] != null) {
+			meta.setTitle(out[pages.size()]);
+		}
+	}
+	
+	/**
+	 * @param event Event
+	 */
+	@EventHandler(ignoreCancelled=true, priority=EventPriority.LOW)
+	public void onCommand(PlayerCommandPreprocessEvent event) {
+		Map<String,Integer> commands = this.commands;
+		if(commands.isEmpty() || this.resending) {
+			return;
+		}
+		long start = System.nanoTime();
+		Metrics metrics = this.plugin.aswear.getMetrics();
+		String msg = event.getMessage();
+		int end = msg.indexOf(' ');
+		if(end == -1) {
+			return;
+		}
+		String label = msg.substring(1, end).toLowerCase(Locale.ROOT);
+		//- Command with plugin prefix, /essentials:msg
+		Integer skip = commands.get(label.substring(label.indexOf(':') + 1));
+		if(skip == null) {
+			return;
+		}
+		//- Skip arguments before message
+		int off = end;
+		for(int i = 0; i <= skip && off != -1; i++) {
+			while(off < msg.length() && msg.charAt(off) == ' ') {
+				off++;
+			}
+			if(i != skip) {
+				off = msg.indexOf(' ', off);
+			}
+		}
+		if(off == -1 || off >= msg.length()) {
+			return;
+		}
+		final Player p = event.getPlayer();
+		if(this.bypass(p)) {
+			return;
+		}
+		final String head = msg.substring(0, off);
+		String[] in = new String[] { msg.substring(off) };
+		final AntiSwear as = this.plugin.getAntiSwear(p, "command");
+		if(this.inline(in[0].length())) {
+			String[] out = this.scan(as, in);
+			if(out != null) {
+				if(this.plugin.blockSwear) {
+					event.setCancelled(true);
+				} else {
+					event.setMessage(head + out[0]);
+				}
+			}
+			this.checked(p, out != null, this.plugin.blockSwear);
+		} else {
+			//- Command is run again with result on next tick
+			event.setCancelled(true);
+			final long time = System.nanoTime();
+			final String text = in[0];
+			AntiSwear.getPool().execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					final String[] out = ChannelListener.this.scan(as, new String[] { text });
+					Bukkit.getScheduler().runTask(ChannelListener.this.plugin, new Runnable() {
+						
+						@Override
+						public void run() {
+							if(!p.isOnline()) {
+								return;
+							}
+							boolean block = ChannelListener.this.plugin.blockSwear;
+							if(out == null) {
+								ChannelListener.this.resend(p, head + text);
+							} else if(!block) {
+								ChannelListener.this.resend(p, head + out[0]);
+							}
+							ChannelListener.this.checked(p, out != null, block);
+							Metrics metrics = ChannelListener.this.plugin.aswear.getMetrics();
+							if(metrics != null) {
+								metrics.deferred.record(System.nanoTime() - time);
+							}
+						}
+					
+					});
+				}
+			
+			});
+		}
+		ChannelListener.record((metrics == null) ? null : metrics.command, start);
+	}
+	
+	/**
+	 * Run command again like typed by player. {@link PlayerCommandPreprocessEvent}
+	 * is called first, so other plugins (cooldowns, mutes, spies) see censored
+	 * command, this listener skips it
+	 * 
+	 * @param p Player
+	 * @param msg Command with slash
+	 */
+	protected void resend(Player p, String msg) {
+		PlayerCommandPreprocessEvent event = new PlayerCommandPreprocessEvent(p, msg);
+		this.resending = true;
+		try {
+			Bukkit.getPluginManager().callEvent(event);
+		} finally {
+			this.resending = false;
+		}
+		if(!event.isCancelled()) {
+			p.performCommand(event.getMessage().substring(1));
+		}
+	}
+	
+	/**
+	 * Filter of anvil names. PrepareAnvilEvent exists only since Bukkit 1.9,
+	 * so it is registered and read by reflection and plugin still builds
+	 * against older API
+	 */
+	public static class Anvils implements Listener, EventExecutor {
+		
+		protected static final String EVENT = "org.bukkit.event.inventory.PrepareAnvilEvent";
+		
+		protected final ChannelListener channels;
+		protected final Class<? extends Event> event;
+		protected final Method getResult;
+		protected final Method setResult;
+		
+		/**
+		 * @param channels Settings
+		 * @param event PrepareAnvilEvent
+		 * 
+		 * @throws NoSuchMethodException If event has no result
+		 */
+		protected Anvils(ChannelListener channels, Class<? extends Event> event) throws NoSuchMethodException {
+			this.channels = channels;
+			this.event = event;
+			this.getResult = event.getMethod("getResult");
+			this.setResult = event.getMethod("setResult", ItemStack.class);
+		}
+		
+		/**
+		 * Register filter if server has PrepareAnvilEvent
+		 * 
+		 * @param channels Settings
+		 * @param plugin Owner of listener
+		 * 
+		 * @return `false` If server is older than 1.9
+		 */
+		public static boolean register(ChannelListener channels, Plugin plugin) {
+			Anvils anvils;
+			try {
+				anvils = new Anvils(channels, Class.forName(EVENT).asSubclass(Event.class));
+			} catch(ClassNotFoundException cnfe) {
+				return false;
+			} catch(NoSuchMethodException nsme) {
+				return false;
+			}
+			Bukkit.getPluginManager().registerEvent(anvils.event, anvils, EventPriority.HIGH, anvils, plugin);
+			return true;
+		}
+		
+		@Override
+		public void execute(Listener listener, Event event) throws EventException {
+			if(!this.event.isInstance(event)) {
+				return;
+			}
+			try {
+				this.onAnvil((InventoryEvent) event);
+			} catch(IllegalAccessException iae) {
+				throw new EventException(iae);
+			} catch(InvocationTargetException ite) {
+				throw new EventException(ite.getCause());
+			}
+		}
+		
+		/**
+		 * Names are short, they are always checked on main thread. Player is not
+		 * notified, event is called on every typed character
+		 * 
+		 * @param event PrepareAnvilEvent
+		 */
+		protected void onAnvil(InventoryEvent event) throws IllegalAccessException, InvocationTargetException {
+			ChannelListener ch = this.channels;
+			ItemStack item = (ItemStack) this.getResult.invoke(event);
+			if(!ch.anvils || item == null || !item.hasItemMeta()) {
+				return;
+			}
+			long start = System.nanoTime();
+			Metrics metrics = ch.plugin.aswear.getMetrics();
+			ItemMeta meta = item.getItemMeta();
+			HumanEntity human = event.getView().getPlayer();
+			if(!meta.hasDisplayName() || !(human instanceof Player) || ch.bypass((Player) human)) {
+				return;
+			}
+			AntiSwear as = ch.plugin.getAntiSwear((Player) human, "anvil");
+			String[] out = ch.scan(as, new String[] { meta.getDisplayName() });
+			if(out != null) {
+				item = item.clone();
+				meta.setDisplayName(out[0]);
+				item.setItemMeta(meta);
+				this.setResult.invoke(event, item);
+			}
+			ch.checked(null, out != null, false);
+			ChannelListener.record((metrics == null) ? null : metrics.anvil, start);
+		}
+	
+	}
+	
+}
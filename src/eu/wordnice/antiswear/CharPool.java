@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable list of char arrays packed into one buffer
+ * 
+ * Every `char[]` object costs at least 16 bytes of header and padding,
+ * which is more than most swears and replacements. Pool keeps all of them
+ * in one `CharBuffer` with end offsets, so 100k entries are 2 objects.
+ * Pool can be written by {@link CharPool#write(DataOutput)} and used directly
+ * from memory-mapped file by {@link CharPool#map(ByteBuffer)}.
+ */
+public class CharPool {
+	
+	/**
+	 * Pool with no entries
+	 */
+	public static final CharPool EMPTY = new CharPool(AntiSwear.EMPTY);
+	
+	/**
+	 * All entries
+	 */
+	protected final CharBuffer chars;
+	
+	/**
+	 * End of entry `i` shifted left by one, lowest bit is set for `null` entries
+	 */
+	protected final IntBuffer ends;
+	
+	/**
+	 * @param arr Entries, may contain `null`
+	 */
+	public CharPool(char[][] arr) {
+		this(Arrays.asList(arr));
+	}
+	
+	/**
+	 * @param arr Entries, may contain `null`
+	 */
+	public CharPool(List<char[]> arr) {
+		int n = arr.size();
+		int total = 0;
+		for(int i = 0; i < n; i++) {
+			char[] cur = arr.get(i);
+			if(cur != null) {
+				total += cur.length;
+			}
+		}
+		char[] chars = new char[total];
+		int[] ends = new int[n];
+		int off = 0;
+		for(int i = 0; i < n; i++) {
+			char[] cur = arr.get(i);
+			if(cur == null) {
+				ends[i] = (off << 1) | 1;
+			} else {
+				System.arraycopy(cur, 0, chars, off, cur.length);
+				off += cur.length;
+				ends[i] = off << 1;
+			}
+		}
+		this.chars = CharBuffer.wrap(chars);
+		this.ends = IntBuffer.wrap(ends);
+	}
+	
+	protected CharPool(CharBuffer chars, IntBuffer ends) {
+		this.chars = chars;
+		this.ends = ends;
+	}
+	
+	/**
+	 * @return Number of entries
+	 */
+	public int size() {
+		return this.ends.limit();
+	}
+	
+	/**
+	 * @return Start of entry
+	 */
+	protected int start(int i) {
+		return (i == 0) ? 0 : (this.ends.get(i - 1) >>> 1);
+	}
+	
+	/**
+	 * @param i Index of entry
+	 * 
+	 * @return `true` if entry is `null`
+	 */
+	public boolean isNull(int i) {
+		return (this.ends.get(i) & 1) != 0;
+	}
+	
+	/**
+	 * @param i Index of entry
+	 * 
+	 * @return Length of entry, 0 for `null`
+	 */
+	public int length(int i) {
+		return (this.ends.get(i) >>> 1) - this.start(i);
+	}
+	
+	/**
+	 * @param i Index of entry
+	 * 
+	 * @return Copy of entry or `null`
+	 */
+	public char[] get(int i) {
+		int end = this.ends.get(i);
+		if((end & 1) != 0) {
+			return null;
+		}
+		int start = this.start(i);
+		char[] ret = new char[(end >>> 1) - start];
+		for(int j = 0; j < ret.length; j++) {
+			ret[j] = this.chars.get(start + j);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Same as `Arrays.equals(get(i), arr)`, without copying
+	 * 
+	 * @param i Index of entry
+	 * @param arr Array, may be `null`
+	 * 
+	 * @return `true` if entry equals to `arr`
+	 */
+	public boolean equals(int i, char[] arr) {
+		int end = this.ends.get(i);
+		if((end & 1) != 0 || arr == null) {
+			return ((end & 1) != 0) && arr == null;
+		}
+		int start = this.start(i);
+		if((end >>> 1) - start != arr.length) {
+			return false;
+		}
+		for(int j = 0; j < arr.length; j++) {
+			if(this.chars.get(start + j) != arr[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return Copy of all entries
+	 */
+	public char[][] toArray() {
+		char[][] ret = new char[this.size()][];
+		for(int i = 0; i < ret.length; i++) {
+			ret[i] = this.get(i);
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return Size of buffers, bytes
+	 */
+	public long getBytes() {
+		return this.chars.limit() * 2L + this.ends.limit() * 4L;
+	}
+	
+	/**
+	 * Write pool, readable by {@link CharPool#map(ByteBuffer)}
+	 * 
+	 * @param out Output
+	 * 
+	 * @throws IOException On write error
+	 */
+	public void write(DataOutput out) throws IOException {
+		int n = this.size();
+		int total = this.chars.limit();
+		out.writeInt(n);
+		out.writeInt(total);
+		for(int i = 0; i < n; i++) {
+			out.writeInt(this.ends.get(i));
+		}
+		for(int i = 0; i < total; i++) {
+			out.writeChar(this.chars.get(i));
+		}
+		//- Keep following data aligned to int
+		if((total & 1) != 0) {
+			out.writeChar(0);
+		}
+	}
+	
+	/**
+	 * Use pool written by {@link CharPool#write(DataOutput)}. Entries are
+	 * not copied, so buffer may be memory-mapped file. Position of buffer is
+	 * moved after pool
+	 * 
+	 * @param buf Buffer (big-endian)
+	 * 
+	 * @return Pool
+	 */
+	public static CharPool map(ByteBuffer buf) {
+		ByteBuffer cur = buf.slice();
+		int n = cur.getInt();
+		int total = cur.getInt();
+		IntBuffer ends = cur.slice().asIntBuffer();
+		ends.limit(n);
+		cur.position(cur.position() + n * 4);
+		CharBuffer chars = cur.slice().asCharBuffer();
+		chars.limit(total);
+		cur.position(cur.position() + ((total + 1) & ~1) * 2);
+		buf.position(buf.position() + cur.position());
+		return new CharPool(chars, ends);
+	}
+	
+}
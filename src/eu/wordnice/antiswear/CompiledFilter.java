@@ -0,0 +1,1016 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blacklist, whitelist and substitutions compiled into one {@link AhoCorasick}
+ * automaton. Every distinct edited word is one pattern, which may have
+ * replacement (blacklisted) and/or whitelist entries (allowed)
+ * 
+ * Words added or removed at runtime are kept in small overlay next to
+ * compiled matcher, so change takes time proportional to word and number
+ * of pending changes. Call {@link CompiledFilter#compact()} off the main
+ * thread to compile them into matcher.
+ * 
+ * Words listed with allowed distance are matched also with typos,
+ * see {@link FuzzyMatcher}.
+ * 
+ * Compiled filter can be saved by {@link CompiledFilter#write(DataOutput)} and
+ * loaded again without compiling by {@link CompiledFilter#map(ByteBuffer, Transducer)}.
+ * 
+ * Instances are immutable and may be shared between threads
+ */
+public class CompiledFilter {
+	
+	/**
+	 * No pattern ids
+	 */
+	protected static final int[] NONE = new int[0];
+	
+	/**
+	 * Filter with no blacklist nor whitelist
+	 */
+	public static final CompiledFilter EMPTY = new CompiledFilter(null, null, null);
+	
+	/**
+	 * Number of pending changes, after which filter should be compacted
+	 */
+	public static final int MAX_PENDING = 256;
+	
+	/**
+	 * Blacklist from which was matcher compiled
+	 * 
+	 * @see AntiSwear#getBlacklist()
+	 */
+	protected final CharPool blacklist;
+	
+	/**
+	 * Whitelist from which was matcher compiled
+	 * 
+	 * @see AntiSwear#getWhitelist()
+	 */
+	protected final char[][] whitelist;
+	
+	/**
+	 * Substitutions from which was matcher compiled, may be `null`
+	 */
+	protected final Transducer substitutions;
+	
+	/**
+	 * Compiled matcher
+	 */
+	protected final AhoCorasick matcher;
+	
+	/**
+	 * Replacement of pattern, `null` if pattern is only whitelisted
+	 */
+	protected final CharPool replace;
+	
+	/**
+	 * Whitelist entries of pattern, `null` if pattern is only blacklisted
+	 */
+	protected final Allow[] allow;
+	
+	/**
+	 * Pattern of every blacklist pair (index / 2), `-1` for empty words
+	 */
+	protected final int[] pairs;
+	
+	/**
+	 * Sorted patterns of matcher removed from blacklist at runtime
+	 */
+	protected final int[] removed;
+	
+	/**
+	 * Sorted patterns of matcher with replacement changed at runtime,
+	 * never in `removed`
+	 */
+	protected final int[] changed;
+	
+	/**
+	 * Pairs of edited swear and new replacement for `changed` patterns
+	 */
+	protected final char[][] changedTo;
+	
+	/**
+	 * Words not in matcher added at runtime, pairs of edited swear and replacement
+	 */
+	protected final char[][] added;
+	
+	/**
+	 * Keys of `added` words (with substitutions)
+	 */
+	protected final char[][] addedKeys;
+	
+	/**
+	 * Matcher of `added` words, its pattern `i` is pattern `replace.size() + i`
+	 * of this filter. `null` if no words were added
+	 */
+	protected final AhoCorasick addedMatcher;
+	
+	/**
+	 * Pre-filter of blacklisted patterns of matcher
+	 */
+	protected final PreFilter prefilter;
+	
+	/**
+	 * Pre-filter of `added` words, `null` if no words were added
+	 */
+	protected final PreFilter addedPrefilter;
+	
+	/**
+	 * Words matched with typos, pairs of edited word and allowed distance
+	 */
+	protected final char[][] fuzzyList;
+	
+	/**
+	 * Matcher of words with typos, `null` if there are none
+	 */
+	protected final FuzzyMatcher fuzzy;
+	
+	/**
+	 * Cheaper copy of this filter, created by {@link CompiledFilter#degraded()}
+	 */
+	protected volatile CompiledFilter degraded = null;
+	
+	/**
+	 * Compile filter
+	 * 
+	 * @param blacklist Loaded blacklist (pairs of edited swear and replacement), may be `null`
+	 * @param whitelist Loaded whitelist, may be `null`
+	 * @param tr Substitutions, may be `null`
+	 */
+	public CompiledFilter(char[][] blacklist, char[][] whitelist, Transducer tr) {
+		this(blacklist, whitelist, tr, null);
+	}
+	
+	/**
+	 * Compile filter
+	 * 
+	 * @param blacklist Loaded blacklist (pairs of edited swear and replacement), may be `null`
+	 * @param whitelist Loaded whitelist, may be `null`
+	 * @param tr Substitutions, may be `null`
+	 * @param fuzzy Words matched with typos, loaded as blacklist (pairs of edited
+	 *        word and allowed distance), may be `null`. Words not in blacklist are ignored
+	 */
+	public CompiledFilter(char[][] blacklist, char[][] whitelist, Transducer tr, char[][] fuzzy) {
+		if(blacklist == null) {
+			blacklist = AntiSwear.EMPTY;
+		}
+		if(whitelist == null) {
+			whitelist = AntiSwear.EMPTY;
+		}
+		Map<String,Integer> ids = new HashMap<String,Integer>();
+		List<char[]> keys = new ArrayList<char[]>();
+		List<char[]> replace = new ArrayList<char[]>();
+		List<Allow> allow = new ArrayList<Allow>();
+		int[] pairs = new int[blacklist.length / 2];
+		
+		for(int i = 0, n = blacklist.length - 1; i < n; i += 2) {
+			String key = new String(blacklist[i]);
+			if(tr != null) {
+				key = tr.removeTyposAll(key);
+			}
+			Integer id = ids.get(key);
+			if(key.length() == 0) {
+				pairs[i / 2] = -1;
+				continue;
+			} else if(id != null) {
+				pairs[i / 2] = id;
+				continue;
+			}
+			pairs[i / 2] = keys.size();
+			ids.put(key, keys.size());
+			keys.add(key.toCharArray());
+			replace.add(blacklist[i + 1]);
+			allow.add(null);
+		}
+		
+		for(int i = 0, n = whitelist.length; i < n; i++) {
+			char[] wh = whitelist[i];
+			int lead = 0;
+			int n2 = wh.length;
+			while(lead < n2 && !AntiSwear.isKept(wh[lead])) {
+				lead++;
+			}
+			int tail = n2;
+			while(tail > lead && !AntiSwear.isKept(wh[tail - 1])) {
+				tail--;
+			}
+			if(lead == tail) {
+				continue;
+			}
+			boolean strict = false;
+			for(int i2 = 0; i2 < n2; i2++) {
+				char c = wh[i2];
+				if(!AntiSwear.isKept(c) && !Character.isSpaceChar(c)) {
+					strict = true;
+					break;
+				}
+			}
+			String key = new String(wh, lead, tail - lead);
+			key = (tr == null) ? AntiSwear.removeTyposAll(key) : tr.removeTyposAll(key);
+			if(key.length() == 0) {
+				continue;
+			}
+			Integer id = ids.get(key);
+			if(id == null) {
+				id = keys.size();
+				ids.put(key, id);
+				keys.add(key.toCharArray());
+				replace.add(null);
+				allow.add(null);
+			} else if(replace.get(id) != null) {
+				//- Same edited word as blacklisted - compare original text
+				strict = true;
+			}
+			allow.set(id, new Allow(wh, lead, (lead != 0), (tail != n2), strict, allow.get(id)));
+		}
+		
+		this.blacklist = new CharPool(blacklist);
+		this.whitelist = whitelist;
+		this.substitutions = tr;
+		this.matcher = new AhoCorasick(keys.toArray(new char[0][]));
+		this.replace = new CharPool(replace);
+		for(int i = 0, n = keys.size(); i < n; i++) {
+			if(this.replace.isNull(i)) {
+				keys.set(i, null);
+			}
+		}
+		this.prefilter = new PreFilter(keys.toArray(new char[0][]));
+		this.allow = allow.toArray(new Allow[0]);
+		this.pairs = pairs;
+		this.removed = NONE;
+		this.changed = NONE;
+		this.changedTo = AntiSwear.EMPTY;
+		this.added = AntiSwear.EMPTY;
+		this.addedKeys = AntiSwear.EMPTY;
+		this.addedMatcher = null;
+		this.addedPrefilter = null;
+		this.fuzzyList = (fuzzy == null) ? AntiSwear.EMPTY : fuzzy;
+		this.fuzzy = CompiledFilter.compileFuzzy(this.fuzzyList, this.matcher, this.replace, tr);
+	}
+	
+	/**
+	 * Same filter with other runtime changes
+	 */
+	protected CompiledFilter(CompiledFilter base, int[] removed, int[] changed, char[][] changedTo, 
+			char[][] added, char[][] addedKeys) {
+		this.blacklist = base.blacklist;
+		this.whitelist = base.whitelist;
+		this.substitutions = base.substitutions;
+		this.matcher = base.matcher;
+		this.replace = base.replace;
+		this.allow = base.allow;
+		this.pairs = base.pairs;
+		this.removed = removed;
+		this.changed = changed;
+		this.changedTo = changedTo;
+		this.added = added;
+		this.addedKeys = addedKeys;
+		this.addedMatcher = (addedKeys.length == 0) ? null : new AhoCorasick(addedKeys);
+		this.prefilter = base.prefilter;
+		this.addedPrefilter = (addedKeys.length == 0) ? null : new PreFilter(addedKeys);
+		this.fuzzyList = base.fuzzyList;
+		this.fuzzy = base.fuzzy;
+	}
+	
+	/**
+	 * Same filter with other whitelist entries and without words with typos
+	 */
+	protected CompiledFilter(CompiledFilter base, Allow[] allow) {
+		this.blacklist = base.blacklist;
+		this.whitelist = base.whitelist;
+		this.substitutions = base.substitutions;
+		this.matcher = base.matcher;
+		this.replace = base.replace;
+		this.allow = allow;
+		this.pairs = base.pairs;
+		this.removed = base.removed;
+		this.changed = base.changed;
+		this.changedTo = base.changedTo;
+		this.added = base.added;
+		this.addedKeys = base.addedKeys;
+		this.addedMatcher = base.addedMatcher;
+		this.prefilter = base.prefilter;
+		this.addedPrefilter = base.addedPrefilter;
+		this.fuzzyList = null;
+		this.fuzzy = null;
+	}
+	
+	/**
+	 * Read filter, see {@link CompiledFilter#map(ByteBuffer, Transducer)}
+	 */
+	protected CompiledFilter(CharPool blacklist, char[][] whitelist, Transducer tr, AhoCorasick matcher,
+			CharPool replace, Allow[] allow, int[] pairs, PreFilter prefilter, char[][] fuzzy) {
+		this.blacklist = blacklist;
+		this.whitelist = whitelist;
+		this.substitutions = tr;
+		this.matcher = matcher;
+		this.replace = replace;
+		this.allow = allow;
+		this.pairs = pairs;
+		this.removed = NONE;
+		this.changed = NONE;
+		this.changedTo = AntiSwear.EMPTY;
+		this.added = AntiSwear.EMPTY;
+		this.addedKeys = AntiSwear.EMPTY;
+		this.addedMatcher = null;
+		this.prefilter = prefilter;
+		this.addedPrefilter = null;
+		this.fuzzyList = fuzzy;
+		this.fuzzy = CompiledFilter.compileFuzzy(fuzzy, matcher, replace, tr);
+	}
+	
+	/**
+	 * @param fuzzy Pairs of edited word and allowed distance
+	 * @param matcher Compiled matcher
+	 * @param replace Replacements of patterns
+	 * @param tr Substitutions, may be `null`
+	 * 
+	 * @return Matcher of blacklisted words with allowed distance, or `null`
+	 */
+	protected static FuzzyMatcher compileFuzzy(char[][] fuzzy, AhoCorasick matcher, CharPool replace, Transducer tr) {
+		List<char[]> keys = new ArrayList<char[]>();
+		List<Integer> dists = new ArrayList<Integer>();
+		List<Integer> pats = new ArrayList<Integer>();
+		for(int i = 0, n = fuzzy.length - 1; i < n; i += 2) {
+			char[] key = fuzzy[i];
+			if(tr != null) {
+				key = tr.removeTyposAll(new String(key)).toCharArray();
+			}
+			int pat = matcher.lookup(key);
+			if(pat == -1 || replace.isNull(pat)) {
+				continue;
+			}
+			int dist;
+			try {
+				dist = FuzzyMatcher.limit(key.length, Integer.parseInt(new String(fuzzy[i + 1]).trim()));
+			} catch(NumberFormatException e) {
+				continue;
+			}
+			if(dist != 0) {
+				keys.add(key);
+				dists.add(dist);
+				pats.add(pat);
+			}
+		}
+		if(keys.isEmpty()) {
+			return null;
+		}
+		int[] d = new int[keys.size()];
+		int[] p = new int[keys.size()];
+		for(int i = 0; i < d.length; i++) {
+			d[i] = dists.get(i);
+			p[i] = pats.get(i);
+		}
+		return new FuzzyMatcher(keys.toArray(new char[0][]), d, p);
+	}
+	
+	/**
+	 * Write compiled filter, readable by {@link CompiledFilter#map(ByteBuffer, Transducer)}.
+	 * Substitutions are not written
+	 * 
+	 * @param out Output
+	 * 
+	 * @throws IOException On write error
+	 * @throws IllegalStateException If there are runtime changes not compacted
+	 */
+	public void write(DataOutput out) throws IOException {
+		if(this.getPending() != 0) {
+			throw new IllegalStateException("Filter has " + this.getPending() + " pending changes!");
+		}
+		this.blacklist.write(out);
+		new CharPool(this.whitelist).write(out);
+		this.replace.write(out);
+		this.matcher.write(out);
+		out.writeInt(this.pairs.length);
+		for(int i = 0; i < this.pairs.length; i++) {
+			out.writeInt(this.pairs[i]);
+		}
+		List<char[]> words = new ArrayList<char[]>();
+		for(int i = 0; i < this.allow.length; i++) {
+			for(Allow a = this.allow[i]; a != null; a = a.next) {
+				words.add(a.word);
+			}
+		}
+		out.writeInt(words.size());
+		for(int i = 0; i < this.allow.length; i++) {
+			for(Allow a = this.allow[i]; a != null; a = a.next) {
+				out.writeInt(i);
+				out.writeInt(a.lead);
+				out.writeInt((a.left ? 1 : 0) | (a.right ? 2 : 0) | (a.strict ? 4 : 0));
+			}
+		}
+		new CharPool(words).write(out);
+		this.prefilter.write(out);
+		new CharPool(this.fuzzyList).write(out);
+	}
+	
+	/**
+	 * Read filter written by {@link CompiledFilter#write(DataOutput)}. Large
+	 * tables are not copied, so buffer may be memory-mapped file. Position
+	 * of buffer is moved after filter
+	 * 
+	 * @param buf Buffer (big-endian)
+	 * @param tr Substitutions, same as when filter was compiled
+	 * 
+	 * @return Filter
+	 */
+	public static CompiledFilter map(ByteBuffer buf, Transducer tr) {
+		CharPool blacklist = CharPool.map(buf);
+		char[][] whitelist = CharPool.map(buf).toArray();
+		CharPool replace = CharPool.map(buf);
+		AhoCorasick matcher = AhoCorasick.map(buf);
+		int[] pairs = new int[buf.getInt()];
+		for(int i = 0; i < pairs.length; i++) {
+			pairs[i] = buf.getInt();
+		}
+		int[] entries = new int[buf.getInt() * 3];
+		for(int i = 0; i < entries.length; i++) {
+			entries[i] = buf.getInt();
+		}
+		CharPool words = CharPool.map(buf);
+		Allow[] allow = new Allow[replace.size()];
+		//- Entries are written from head of list
+		for(int i = entries.length / 3 - 1; i >= 0; i--) {
+			int pat = entries[i * 3];
+			int flags = entries[i * 3 + 2];
+			allow[pat] = new Allow(words.get(i), entries[i * 3 + 1], (flags & 1) != 0, (flags & 2) != 0,
+					(flags & 4) != 0, allow[pat]);
+		}
+		PreFilter prefilter = PreFilter.read(buf);
+		char[][] fuzzy = CharPool.map(buf).toArray();
+		return new CompiledFilter(blacklist, whitelist, tr, matcher, replace, allow, pairs, prefilter, fuzzy);
+	}
+	
+	/**
+	 * Cheap check before {@link AntiSwear#doReplace(CompiledFilter, char[], int, int, char[], int, int, int[], int[], int)},
+	 * see {@link PreFilter}
+	 * 
+	 * @param in Edited message
+	 * @param off Offset
+	 * @param len Length
+	 * 
+	 * @return `false` if message surely contains no blacklisted word
+	 */
+	public boolean mayMatch(char[] in, int off, int len) {
+		PreFilter pre = this.prefilter;
+		//- Typos break trigrams
+		if(!pre.isUseful() || this.fuzzy != null) {
+			return true;
+		}
+		return pre.count(pre.mayMatch(in, off, len)
+				|| (this.addedPrefilter != null && this.addedPrefilter.mayMatch(in, off, len)));
+	}
+	
+	/**
+	 * Same as {@link CompiledFilter#mayMatch(char[], int, int)} for original message,
+	 * edited on the fly. Only for filter without substitutions
+	 * 
+	 * @param in Original message
+	 * 
+	 * @return `false` if message surely contains no blacklisted word
+	 */
+	public boolean mayMatchRaw(CharSequence in) {
+		PreFilter pre = this.prefilter;
+		if(!pre.isUseful() || this.fuzzy != null) {
+			return true;
+		}
+		return pre.count(pre.mayMatchRaw(in)
+				|| (this.addedPrefilter != null && this.addedPrefilter.mayMatchRaw(in)));
+	}
+	
+	/**
+	 * Same as {@link CompiledFilter#mayMatch(char[], int, int)}, but pre-filter
+	 * is asked even when it is skipped for high pass rate, and words with
+	 * typos are ignored
+	 */
+	protected boolean mayMatchAlways(char[] in, int off, int len) {
+		return this.prefilter.mayMatch(in, off, len)
+				|| (this.addedPrefilter != null && this.addedPrefilter.mayMatch(in, off, len));
+	}
+	
+	/**
+	 * Same as {@link CompiledFilter#mayMatchRaw(CharSequence)}, but pre-filter
+	 * is asked even when it is skipped for high pass rate, and words with
+	 * typos are ignored
+	 */
+	protected boolean mayMatchRawAlways(CharSequence in) {
+		return this.prefilter.mayMatchRaw(in)
+				|| (this.addedPrefilter != null && this.addedPrefilter.mayMatchRaw(in));
+	}
+	
+	/**
+	 * @param word Edited swear, see {@link AntiSwear#removeTyposAll(String)}
+	 * 
+	 * @return Key of word in matcher (with substitutions)
+	 */
+	protected char[] key(char[] word) {
+		if(this.substitutions == null) {
+			return word;
+		}
+		return this.substitutions.removeTyposAll(new String(word)).toCharArray();
+	}
+	
+	/**
+	 * @param pat Pattern
+	 * 
+	 * @return Length of pattern
+	 */
+	public int length(int pat) {
+		int n = this.replace.size();
+		return (pat < n) ? this.matcher.length(pat) : this.addedMatcher.length(pat - n);
+	}
+	
+	/**
+	 * @param pat Pattern
+	 * 
+	 * @return Replacement of pattern, `null` if pattern is not blacklisted
+	 */
+	public char[] replacement(int pat) {
+		int n = this.replace.size();
+		if(pat >= n) {
+			return this.added[(pat - n) * 2 + 1];
+		}
+		if(this.removed.length != 0 && Arrays.binarySearch(this.removed, pat) >= 0) {
+			return null;
+		}
+		if(this.changed.length != 0) {
+			int i = Arrays.binarySearch(this.changed, pat);
+			if(i >= 0) {
+				return this.changedTo[i * 2 + 1];
+			}
+		}
+		return this.replace.get(pat);
+	}
+	
+	/**
+	 * Add word to blacklist or change its replacement
+	 * 
+	 * @param word Edited swear, see {@link AntiSwear#removeTyposAll(String)}
+	 * @param replaceto Replacement
+	 * 
+	 * @return New filter, or this one if nothing changed
+	 */
+	public CompiledFilter withWord(char[] word, char[] replaceto) {
+		char[] key = this.key(word);
+		if(key.length == 0) {
+			return this;
+		}
+		int pat = this.matcher.lookup(key);
+		if(pat != -1) {
+			if(Arrays.equals(this.replacement(pat), replaceto)) {
+				return this;
+			}
+			int[] removed = CompiledFilter.without(this.removed, pat);
+			int i = Arrays.binarySearch(this.changed, pat);
+			int[] changed = this.changed;
+			char[][] changedTo = this.changedTo;
+			if(i >= 0) {
+				changedTo = changedTo.clone();
+			} else if(!this.replace.equals(pat, replaceto)) {
+				i = -i - 1;
+				changed = new int[changed.length + 1];
+				System.arraycopy(this.changed, 0, changed, 0, i);
+				System.arraycopy(this.changed, i, changed, i + 1, this.changed.length - i);
+				changed[i] = pat;
+				changedTo = CompiledFilter.insert(changedTo, i * 2, 2);
+			}
+			if(i >= 0) {
+				if(this.replace.equals(pat, replaceto)) {
+					changed = CompiledFilter.without(changed, pat);
+					changedTo = CompiledFilter.delete(changedTo, i * 2, 2);
+				} else {
+					changedTo[i * 2] = word;
+					changedTo[i * 2 + 1] = replaceto;
+				}
+			}
+			return new CompiledFilter(this, removed, changed, changedTo, this.added, this.addedKeys);
+		}
+		
+		char[][] added;
+		char[][] addedKeys;
+		int i = CompiledFilter.indexOf(this.addedKeys, key);
+		if(i == -1) {
+			i = this.addedKeys.length;
+			added = CompiledFilter.insert(this.added, i * 2, 2);
+			addedKeys = CompiledFilter.insert(this.addedKeys, i, 1);
+			addedKeys[i] = key;
+		} else if(Arrays.equals(this.added[i * 2 + 1], replaceto)) {
+			return this;
+		} else {
+			added = this.added.clone();
+			addedKeys = this.addedKeys;
+		}
+		added[i * 2] = word;
+		added[i * 2 + 1] = replaceto;
+		return new CompiledFilter(this, this.removed, this.changed, this.changedTo, added, addedKeys);
+	}
+	
+	/**
+	 * Remove word from blacklist. Whitelist entries of word are kept
+	 * 
+	 * @param word Edited swear, see {@link AntiSwear#removeTyposAll(String)}
+	 * 
+	 * @return New filter, or `null` if word is not blacklisted
+	 */
+	public CompiledFilter withoutWord(char[] word) {
+		char[] key = this.key(word);
+		if(key.length == 0) {
+			return null;
+		}
+		int pat = this.matcher.lookup(key);
+		if(pat != -1) {
+			if(this.replacement(pat) == null) {
+				return null;
+			}
+			int[] removed = this.removed;
+			if(!this.replace.isNull(pat)) {
+				int i = -Arrays.binarySearch(removed, pat) - 1;
+				removed = new int[removed.length + 1];
+				System.arraycopy(this.removed, 0, removed, 0, i);
+				System.arraycopy(this.removed, i, removed, i + 1, this.removed.length - i);
+				removed[i] = pat;
+			}
+			int i = Arrays.binarySearch(this.changed, pat);
+			int[] changed = this.changed;
+			char[][] changedTo = this.changedTo;
+			if(i >= 0) {
+				changed = CompiledFilter.without(changed, pat);
+				changedTo = CompiledFilter.delete(changedTo, i * 2, 2);
+			}
+			return new CompiledFilter(this, removed, changed, changedTo, this.added, this.addedKeys);
+		}
+		int i = CompiledFilter.indexOf(this.addedKeys, key);
+		if(i == -1) {
+			return null;
+		}
+		return new CompiledFilter(this, this.removed, this.changed, this.changedTo, 
+				CompiledFilter.delete(this.added, i * 2, 2), CompiledFilter.delete(this.addedKeys, i, 1));
+	}
+	
+	/**
+	 * Used under load (see {@link LoadShedder}). Whitelist checks compare
+	 * original text around every matched word and words with typos walk
+	 * trie from every word, this filter skips both - whitelisted words
+	 * are censored too, misspelled ones are not
+	 * 
+	 * @return Same filter without whitelist and words with typos, created once
+	 */
+	public CompiledFilter degraded() {
+		CompiledFilter ret = this.degraded;
+		if(ret == null) {
+			ret = new CompiledFilter(this, new Allow[0]);
+			this.degraded = ret;
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return Number of words added, removed or changed since filter was compiled
+	 */
+	public int getPending() {
+		return this.removed.length + this.changed.length + this.addedKeys.length;
+	}
+	
+	/**
+	 * Compile runtime changes into matcher. Takes time proportional
+	 * to whole dictionary
+	 * 
+	 * @return New filter, or this one if there are no pending changes
+	 */
+	public CompiledFilter compact() {
+		if(this.getPending() == 0) {
+			return this;
+		}
+		return new CompiledFilter(this.getBlacklist(), this.whitelist, this.substitutions, this.fuzzyList);
+	}
+	
+	/**
+	 * @return Index of `key` in `arr`, or `-1`
+	 */
+	protected static int indexOf(char[][] arr, char[] key) {
+		for(int i = 0, n = arr.length; i < n; i++) {
+			if(Arrays.equals(arr[i], key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return Copy of `arr` with `num` `null` elements at index `i`
+	 */
+	protected static char[][] insert(char[][] arr, int i, int num) {
+		char[][] ret = new char[arr.length + num][];
+		System.arraycopy(arr, 0, ret, 0, i);
+		System.arraycopy(arr, i, ret, i + num, arr.length - i);
+		return ret;
+	}
+	
+	/**
+	 * @return Copy of `arr` without `num` elements at index `i`
+	 */
+	protected static char[][] delete(char[][] arr, int i, int num) {
+		char[][] ret = new char[arr.length - num][];
+		System.arraycopy(arr, 0, ret, 0, i);
+		System.arraycopy(arr, i + num, ret, i, arr.length - i - num);
+		return ret;
+	}
+	
+	/**
+	 * @return Copy of sorted `arr` without `val`, or `arr` if not found
+	 */
+	protected static int[] without(int[] arr, int val) {
+		int i = Arrays.binarySearch(arr, val);
+		if(i < 0) {
+			return arr;
+		}
+		int[] ret = new int[arr.length - 1];
+		System.arraycopy(arr, 0, ret, 0, i);
+		System.arraycopy(arr, i + 1, ret, i, arr.length - i - 1);
+		return ret;
+	}
+	
+	/**
+	 * @param pat Pattern
+	 * 
+	 * @return `true` If pattern has any whitelist entry
+	 */
+	public boolean hasAllow(int pat) {
+		return pat < this.allow.length && this.allow[pat] != null;
+	}
+	
+	/**
+	 * Check if pattern matched in edited string is whitelisted
+	 * 
+	 * @param pat Pattern
+	 * @param in Original string
+	 * @param in_off Offset of `in` string
+	 * @param in_end End of `in` string (offset + length)
+	 * @param indexes Indexes of edited characters in `in` string
+	 * @param ind_off Offset of indexes parameter
+	 * @param start Index of first matched edited character
+	 * @param end Index of last matched edited character
+	 * 
+	 * @return `true` If any whitelist entry of pattern matches
+	 */
+	public boolean isAllowed(int pat, char[] in, int in_off, int in_end, 
+			int[] indexes, int ind_off, int start, int end) {
+		if(pat >= this.allow.length) {
+			return false;
+		}
+		Allow a = this.allow[pat];
+		if(a == null) {
+			return false;
+		}
+		int from = AntiSwear.runStart(in, in_off, indexes, ind_off, start);
+		int to = indexes[ind_off + start];
+		int lastFrom = (start == end) ? from : AntiSwear.runStart(in, in_off, indexes, ind_off, end);
+		int last = indexes[ind_off + end];
+		return this.isAllowed(pat, in, in_off, in_end, from, to, lastFrom, last);
+	}
+	
+	/**
+	 * Check if pattern matched in edited string is whitelisted, matched
+	 * characters are given as ranges of original string
+	 * 
+	 * @see CompiledFilter.Allow#matches(char[], int, int, int, int, int, int)
+	 */
+	protected boolean isAllowed(int pat, char[] in, int in_off, int in_end, 
+			int from, int to, int lastFrom, int last) {
+		if(pat >= this.allow.length) {
+			return false;
+		}
+		Allow a = this.allow[pat];
+		for(; a != null; a = a.next) {
+			if(a.matches(in, in_off, in_end, from, to, lastFrom, last)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return Copy of blacklist including runtime changes, pairs of edited
+	 *         swear and replacement
+	 */
+	public char[][] getBlacklist() {
+		if(this.getPending() == 0) {
+			return this.blacklist.toArray();
+		}
+		List<char[]> ret = new ArrayList<char[]>(this.blacklist.size() + this.added.length);
+		for(int i = 0, n = this.pairs.length; i < n; i++) {
+			int pat = this.pairs[i];
+			char[] replaceto = (pat == -1) ? this.blacklist.get(i * 2 + 1) : this.replacement(pat);
+			if(replaceto != null) {
+				ret.add(this.blacklist.get(i * 2));
+				ret.add(replaceto);
+			}
+		}
+		for(int i = 0, n = this.changed.length; i < n; i++) {
+			//- Only whitelisted before
+			if(this.replace.isNull(this.changed[i])) {
+				ret.add(this.changedTo[i * 2]);
+				ret.add(this.changedTo[i * 2 + 1]);
+			}
+		}
+		ret.addAll(Arrays.asList(this.added));
+		return AntiSwear.sortTwo(ret.toArray(new char[0][]));
+	}
+	
+	/**
+	 * @return Copy of whitelist
+	 */
+	public char[][] getWhitelist() {
+		return this.whitelist.clone();
+	}
+	
+	/**
+	 * @return Copy of words matched with typos, pairs of edited word and allowed distance
+	 */
+	public char[][] getFuzzy() {
+		return this.fuzzyList.clone();
+	}
+	
+	/**
+	 * @return Matcher of words with typos, `null` if there are none
+	 */
+	public FuzzyMatcher getFuzzyMatcher() {
+		return this.fuzzy;
+	}
+	
+	/**
+	 * @return Substitutions or `null`
+	 */
+	public Transducer getSubstitutions() {
+		return this.substitutions;
+	}
+	
+	/**
+	 * @return Compiled automaton
+	 */
+	public AhoCorasick getMatcher() {
+		return this.matcher;
+	}
+	
+	/**
+	 * @return Approximate size of compiled tables (matcher, packed
+	 *         blacklist and replacements, pre-filter, fuzzy matcher), bytes
+	 */
+	public long getBytes() {
+		return this.matcher.getBytes() + this.blacklist.getBytes() + this.replace.getBytes()
+				+ this.prefilter.getBytes() + ((this.fuzzy == null) ? 0 : this.fuzzy.getBytes());
+	}
+	
+	/**
+	 * @return Pre-filter of compiled blacklist (without words added at runtime)
+	 */
+	public PreFilter getPreFilter() {
+		return this.prefilter;
+	}
+	
+	/**
+	 * @return Number of blacklisted words
+	 */
+	public int getBlacklistSize() {
+		if(this.getPending() != 0) {
+			return this.getBlacklist().length / 2;
+		}
+		return this.blacklist.size() / 2;
+	}
+	
+	/**
+	 * @return Number of whitelisted words
+	 */
+	public int getWhitelistSize() {
+		return this.whitelist.length;
+	}
+	
+	/**
+	 * Compiled whitelist entry
+	 */
+	protected static class Allow {
+		
+		/**
+		 * Original whitelisted word
+		 */
+		public final char[] word;
+		
+		/**
+		 * Index of first edited character in `word`
+		 */
+		public final int lead;
+		
+		/**
+		 * Word must start after space (see {@link AntiSwear#WHITELIST_SPACE_EQUALS})
+		 */
+		public final boolean left;
+		
+		/**
+		 * Word must end before space (see {@link AntiSwear#WHITELIST_SPACE_EQUALS})
+		 */
+		public final boolean right;
+		
+		/**
+		 * Compare original text instead of edited, when word contains special
+		 * characters or edited word is also blacklisted
+		 */
+		public final boolean strict;
+		
+		/**
+		 * Next entry with same edited word or `null`
+		 */
+		public final Allow next;
+		
+		public Allow(char[] word, int lead, boolean left, boolean right, boolean strict, Allow next) {
+			this.word = word;
+			this.lead = lead;
+			this.left = left;
+			this.right = right;
+			this.strict = strict;
+			this.next = next;
+		}
+		
+		/**
+		 * Repeated characters may join more words, so first and last edited
+		 * character are given as ranges of original string
+		 * 
+		 * @param in Original string
+		 * @param in_off Offset of `in` string
+		 * @param in_end End of `in` string (offset + length)
+		 * @param from Start of first matched character in `in`
+		 * @param to End (inclusive) of first matched character in `in`
+		 * @param lastFrom Start of last matched character in `in`
+		 * @param last End (inclusive) of last matched character in `in`
+		 * 
+		 * @return `true` If this entry matches
+		 */
+		public boolean matches(char[] in, int in_off, int in_end, int from, int to, int lastFrom, int last) {
+			if(this.strict) {
+				int len = this.word.length;
+				for(int p = from; p <= to; p++) {
+					int off = p - this.lead;
+					if(off >= in_off && (off + len) <= in_end
+							&& AntiSwear.equalsIgnoreCaseWhitelist(in, off, this.word, 0, len)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			if(this.left) {
+				boolean ok = false;
+				for(int p = from; p <= to && !ok; p++) {
+					ok = (p == in_off || AntiSwear.isSpaceEquals(in[p - 1])) && AntiSwear.isKept(in[p]);
+				}
+				if(!ok) {
+					return false;
+				}
+			}
+			if(this.right) {
+				boolean ok = false;
+				for(int p = lastFrom; p <= last && !ok; p++) {
+					ok = ((p + 1) == in_end || AntiSwear.isSpaceEquals(in[p + 1])) && AntiSwear.isKept(in[p]);
+				}
+				if(!ok) {
+					return false;
+				}
+			}
+			return true;
+		}
+	
+	}
+	
+}
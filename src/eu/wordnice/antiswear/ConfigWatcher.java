@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch files in directory and run task, when they are changed.
+ * Changes are debounced - task is run once after no change was
+ * seen for given time (editors write files in more steps)
+ */
+public class ConfigWatcher implements Runnable, Closeable {
+	
+	/**
+	 * Watched directory
+	 */
+	protected final Path dir;
+	
+	/**
+	 * Names of watched files
+	 */
+	protected final Set<String> names;
+	
+	/**
+	 * Quiet time in milliseconds
+	 */
+	protected final long debounce;
+	
+	/**
+	 * Task run on change
+	 */
+	protected final Runnable task;
+	
+	/**
+	 * Last modification time of files written by plugin itself
+	 */
+	protected final ConcurrentMap<String,Long> written = new ConcurrentHashMap<String,Long>();
+	
+	/**
+	 * Watch service, `null` if not started
+	 */
+	protected volatile WatchService service = null;
+	
+	/**
+	 * @param dir Directory with files
+	 * @param debounce Quiet time in milliseconds
+	 * @param task Task run on change
+	 * @param names Names of watched files
+	 */
+	public ConfigWatcher(File dir, long debounce, Runnable task, String... names) {
+		this.dir = dir.toPath();
+		this.debounce = debounce;
+		this.task = task;
+		this.names = new HashSet<String>(Arrays.asList(names));
+	}
+	
+	/**
+	 * Start watching in new daemon thread
+	 * 
+	 * @throws IOException If directory can't be watched
+	 */
+	public void start() throws IOException {
+		WatchService ws = this.dir.getFileSystem().newWatchService();
+		this.dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		this.service = ws;
+		Thread th = new Thread(this, "BetterAntiSwear-Watcher");
+		th.setDaemon(true);
+		th.start();
+	}
+	
+	@Override
+	public void run() {
+		WatchService ws = this.service;
+		Set<String> changed = new HashSet<String>();
+		try {
+			while(true) {
+				changed.clear();
+				if(!this.isChanged(ws.take(), changed)) {
+					continue;
+				}
+				//- Wait until changes stop
+				WatchKey key;
+				while((key = ws.poll(this.debounce, TimeUnit.MILLISECONDS)) != null) {
+					this.isChanged(key, changed);
+				}
+				for(String name : changed) {
+					if(!this.isWritten(name)) {
+						this.task.run();
+						break;
+					}
+				}
+			}
+		} catch(InterruptedException ie) {
+			//- Stopped
+		} catch(ClosedWatchServiceException cwse) {
+			//- Stopped
+		}
+	}
+	
+	/**
+	 * Ignore current version of file, after it was written by plugin
+	 * 
+	 * @param name Name of file
+	 */
+	public void ignore(String name) {
+		this.written.put(name, this.dir.resolve(name).toFile().lastModified());
+	}
+	
+	/**
+	 * @param name Name of file
+	 * 
+	 * @return `true` If current version of file was written by plugin
+	 */
+	protected boolean isWritten(String name) {
+		Long written = this.written.get(name);
+		return written != null && written == this.dir.resolve(name).toFile().lastModified();
+	}
+	
+	/**
+	 * @param key Signalled key
+	 * @param changed Names of changed watched files are added here
+	 * 
+	 * @return `true` If any watched file was changed
+	 */
+	protected boolean isChanged(WatchKey key, Set<String> changed) {
+		boolean ret = false;
+		for(WatchEvent<?> ev : key.pollEvents()) {
+			Object ctx = ev.context();
+			if(ctx instanceof Path) {
+				String name = ((Path) ctx).getFileName().toString();
+				if(this.names.contains(name)) {
+					changed.add(name);
+					ret = true;
+				}
+			}
+		}
+		key.reset();
+		return ret;
+	}
+	
+	/**
+	 * Stop watching
+	 */
+	@Override
+	public void close() throws IOException {
+		WatchService ws = this.service;
+		this.service = null;
+		if(ws != null) {
+			ws.close();
+		}
+	}
+	
+}
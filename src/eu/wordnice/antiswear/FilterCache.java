@@ -0,0 +1,249 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled filter saved in binary file, so it does not have to be
+ * edited and compiled again on every start
+ * 
+ * File starts with magic number, {@link FilterCache#VERSION} and key - hash
+ * of everything filter was compiled from (see {@link FilterCache#key(String, List, List, List, File)}).
+ * When key matches, rest of file is memory-mapped and used by
+ * {@link CompiledFilter#map(ByteBuffer, Transducer)}, large tables are not
+ * even read until they are needed.
+ */
+public class FilterCache {
+	
+	/**
+	 * First bytes of file, `BASF`
+	 */
+	public static final int MAGIC = 0x42415346;
+	
+	/**
+	 * Version of file format and normalization, increase when any of them changes
+	 */
+	public static final int VERSION = 2;
+	
+	/**
+	 * Length of key, bytes
+	 */
+	public static final int KEY_LENGTH = 16;
+	
+	/**
+	 * Cache file
+	 */
+	protected final File file;
+	
+	/**
+	 * @param file Cache file
+	 */
+	public FilterCache(File file) {
+		this.file = file;
+	}
+	
+	/**
+	 * @return Cache file
+	 */
+	public File getFile() {
+		return this.file;
+	}
+	
+	/**
+	 * @param salt Other input, e.g. version of plugin
+	 * @param blacklist Section `Blacklist` of config, may be `null`
+	 * @param whitelist Section `Whitelist` of config, may be `null`
+	 * @param fuzzy Section `Fuzzy` of config, may be `null`
+	 * @param substitutions File with substitutions, `null` if not used
+	 * 
+	 * @return Hash of everything compiled filter depends on
+	 * 
+	 * @throws IOException If substitutions can't be read
+	 */
+	public static byte[] key(String salt, List<?> blacklist, List<?> whitelist, List<?> fuzzy, 
+			File substitutions) throws IOException {
+		Hash h = new Hash();
+		h.update(String.valueOf(salt));
+		h.update(VERSION + " " + AhoCorasick.MAX_TABLE + " " + PreFilter.BITS_PER_GRAM + " " + FuzzyMatcher.MAX_DISTANCE);
+		//- Diacritics table depends on Unicode version of JVM
+		h.update(new String(AntiSwear.FOLD));
+		for(List<?> list : Arrays.asList(blacklist, whitelist, fuzzy)) {
+			if(list == null) {
+				h.update("null");
+				continue;
+			}
+			h.update("list " + list.size());
+			for(Object ent : list) {
+				if(!(ent instanceof Map)) {
+					h.update(String.valueOf(ent));
+					continue;
+				}
+				Map<?,?> map = (Map<?,?>) ent;
+				h.update("map " + map.size());
+				for(Map.Entry<?,?> pair : map.entrySet()) {
+					h.update(String.valueOf(pair.getKey()));
+					h.update(String.valueOf(pair.getValue()));
+				}
+			}
+		}
+		if(substitutions == null) {
+			h.update("none");
+		} else {
+			byte[] bts = Files.readAllBytes(substitutions.toPath());
+			h.update("file " + bts.length);
+			for(int i = 0; i < bts.length; i++) {
+				h.update((char) (bts[i] & 0xFF));
+			}
+		}
+		return h.digest();
+	}
+	
+	/**
+	 * 128-bit hash (two multiplicative lanes). Config is not adversarial,
+	 * so cryptographic hash is not needed - SHA-256 of 100k words takes
+	 * few hundreds of milliseconds on cold JVM
+	 */
+	protected static class Hash {
+		
+		protected long h1 = 0x243F6A8885A308D3L;
+		protected long h2 = 0x13198A2E03707344L;
+		
+		protected void update(char c) {
+			this.h1 = (this.h1 ^ c) * 0x9E3779B97F4A7C15L;
+			this.h2 = Long.rotateLeft(this.h2 + c, 31) * 0xC2B2AE3D27D4EB4FL;
+		}
+		
+		/**
+		 * Add string with its length, so concatenations differ
+		 */
+		protected void update(String str) {
+			int len = str.length();
+			this.update((char) (len >>> 16));
+			this.update((char) len);
+			for(int i = 0; i < len; i++) {
+				this.update(str.charAt(i));
+			}
+		}
+		
+		protected byte[] digest() {
+			return ByteBuffer.allocate(KEY_LENGTH).putLong(Hash.mix(this.h1 ^ Hash.mix(this.h2)))
+					.putLong(Hash.mix(this.h2 + this.h1)).array();
+		}
+		
+		/**
+		 * Finalizer of MurmurHash3
+		 */
+		protected static long mix(long h) {
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			h *= 0xC4CEB9FE1A85EC53L;
+			h ^= h >>> 33;
+			return h;
+		}
+	
+	}
+	
+	/**
+	 * @param key Key from {@link FilterCache#key(String, List, List, List, File)}
+	 * @param tr Substitutions, same as hashed in key
+	 * 
+	 * @return Cached filter or `null` if there is no cache or it is outdated
+	 * 
+	 * @throws IOException On read error or when file is corrupted
+	 */
+	public CompiledFilter load(byte[] key, Transducer tr) throws IOException {
+		if(!this.file.isFile()) {
+			return null;
+		}
+		FileChannel ch = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = ch.size();
+			ByteBuffer head = ByteBuffer.allocate(8 + KEY_LENGTH);
+			while(head.hasRemaining() && ch.read(head) != -1) {}
+			head.flip();
+			if(head.remaining() < 8 + KEY_LENGTH || head.getInt() != MAGIC || head.getInt() != VERSION) {
+				return null;
+			}
+			byte[] found = new byte[KEY_LENGTH];
+			head.get(found);
+			if(!Arrays.equals(found, key)) {
+				return null;
+			}
+			ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buf.position(head.limit());
+			try {
+				return CompiledFilter.map(buf, tr);
+			} catch(RuntimeException re) {
+				throw new IOException("Corrupted file " + this.file, re);
+			}
+		} finally {
+			ch.close();
+		}
+	}
+	
+	/**
+	 * Write filter to cache. File is replaced at once, so it is never
+	 * seen half-written
+	 * 
+	 * @param cmp Filter with no pending changes
+	 * @param key Key from {@link FilterCache#key(String, List, List, List, File)}
+	 * 
+	 * @throws IOException On write error
+	 */
+	public void save(CompiledFilter cmp, byte[] key) throws IOException {
+		File tmp = new File(this.file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.write(key);
+			cmp.write(out);
+		} finally {
+			out.close();
+		}
+		try {
+			Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException amnse) {
+			Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+}
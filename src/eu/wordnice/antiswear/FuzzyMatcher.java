@@ -0,0 +1,313 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.util.Arrays;
+
+/**
+ * Finds blacklisted words with typos - up to 2 inserted, missing, changed
+ * or swapped (neighbour) characters, e.g. `fcuk`, `idoit` or `bastrad`
+ * 
+ * Only words with allowed distance are put into trie, which is walked
+ * from every offset of edited message with one row of Damerau-Levenshtein
+ * distances per level (Levenshtein automaton simulated by dynamic
+ * programming). Subtree is skipped when no distance in row is low enough,
+ * so only few nodes are visited.
+ * 
+ * Edited message has no spaces and few distinct vowels, so typos would
+ * join almost anything. Match must start at start of word of original
+ * message, must not continue to next word and must start and end with
+ * same characters as swear (typos are usually inside of word, and `fun`
+ * would be `fuck` with one changed character).
+ * 
+ * Exact matches are left to {@link AhoCorasick}. Words added at runtime
+ * are matched exactly until filter is compacted, {@link StreamScanner}
+ * matches only exactly.
+ */
+public class FuzzyMatcher {
+	
+	/**
+	 * Highest allowed distance
+	 */
+	public static final int MAX_DISTANCE = 2;
+	
+	/**
+	 * Rows of distances of current thread
+	 */
+	protected static final ThreadLocal<int[]> ROWS = new ThreadLocal<int[]>() {
+		
+		@Override
+		protected int[] initialValue() {
+			return new int[256];
+		}
+	
+	};
+	
+	/**
+	 * Character of node, node 0 is root
+	 */
+	protected final char[] chars;
+	
+	/**
+	 * First child of node or `-1`
+	 */
+	protected final int[] first;
+	
+	/**
+	 * Next child of same parent or `-1`
+	 */
+	protected final int[] sibling;
+	
+	/**
+	 * Pattern ending in node or `-1`
+	 */
+	protected final int[] pattern;
+	
+	/**
+	 * Allowed distance of pattern ending in node
+	 */
+	protected final int[] distance;
+	
+	/**
+	 * Highest allowed distance of patterns in subtree of node
+	 */
+	protected final int[] reach;
+	
+	/**
+	 * Length of longest key
+	 */
+	protected final int depth;
+	
+	/**
+	 * Length of row, longest matched text + 1
+	 */
+	protected final int width;
+	
+	/**
+	 * @param keys Keys (edited words)
+	 * @param distances Allowed distance of key, see {@link FuzzyMatcher#limit(int, int)}
+	 * @param patterns Pattern of key, added to matches
+	 */
+	public FuzzyMatcher(char[][] keys, int[] distances, int[] patterns) {
+		int n = 1;
+		int depth = 0;
+		for(char[] key : keys) {
+			n += key.length;
+			depth = Math.max(depth, key.length);
+		}
+		char[] chars = new char[n];
+		int[] first = new int[n];
+		int[] sibling = new int[n];
+		int[] pattern = new int[n];
+		int[] distance = new int[n];
+		int[] reach = new int[n];
+		Arrays.fill(first, -1);
+		Arrays.fill(sibling, -1);
+		Arrays.fill(pattern, -1);
+		int nodes = 1;
+		for(int i = 0; i < keys.length; i++) {
+			char[] key = keys[i];
+			int node = 0;
+			reach[0] = Math.max(reach[0], distances[i]);
+			for(int d = 0; d < key.length; d++) {
+				int ch = FuzzyMatcher.child(chars, first, sibling, node, key[d]);
+				if(ch == -1) {
+					ch = nodes++;
+					chars[ch] = key[d];
+					sibling[ch] = first[node];
+					first[node] = ch;
+				}
+				node = ch;
+				reach[node] = Math.max(reach[node], distances[i]);
+			}
+			pattern[node] = patterns[i];
+			distance[node] = distances[i];
+		}
+		this.chars = Arrays.copyOf(chars, nodes);
+		this.first = Arrays.copyOf(first, nodes);
+		this.sibling = Arrays.copyOf(sibling, nodes);
+		this.pattern = Arrays.copyOf(pattern, nodes);
+		this.distance = Arrays.copyOf(distance, nodes);
+		this.reach = Arrays.copyOf(reach, nodes);
+		this.depth = depth;
+		this.width = depth + MAX_DISTANCE + 1;
+	}
+	
+	/**
+	 * Short words have only few characters to change, so even one typo
+	 * turns them into common words (`ass` - `as`). Keys with less than
+	 * 3 characters are matched exactly, less than 5 with one typo
+	 * 
+	 * @param length Length of key (edited, `fuck` is `fuk`)
+	 * @param distance Requested distance
+	 * 
+	 * @return Allowed distance
+	 */
+	public static int limit(int length, int distance) {
+		return Math.max(0, Math.min(Math.min(distance, MAX_DISTANCE), (length - 1) / 2));
+	}
+	
+	/**
+	 * @return Child of node with character `c`, or `-1`
+	 */
+	protected static int child(char[] chars, int[] first, int[] sibling, int node, char c) {
+		for(int ch = first[node]; ch != -1; ch = sibling[ch]) {
+			if(chars[ch] == c) {
+				return ch;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Find words with typos in text and add them to matches found by
+	 * {@link AhoCorasick}. Every match has its own length, for every
+	 * start offset and word only match with lowest distance is added
+	 * (longest of them, ending with last character of word)
+	 * 
+	 * @param text Text to scan (edited)
+	 * @param off Offset of text
+	 * @param len Length of text
+	 * @param in Original text
+	 * @param indexes Indexes of edited characters in `in` (last of repeated)
+	 * @param firsts First indexes of edited characters in `in`
+	 * @param ind_off Offset of indexes and firsts of first edited character
+	 * @param m Output, heads must be already cleared for `len`
+	 * @param count Number of matches already in `m`
+	 * 
+	 * @return Number of matches
+	 */
+	public int find(char[] text, int off, int len, char[] in, int[] indexes, int[] firsts, int ind_off,
+			AhoCorasick.Matches m, int count) {
+		int w = this.width;
+		int[] rows = ROWS.get();
+		if(rows.length < (this.depth + 1) * w) {
+			rows = new int[(this.depth + 1) * w];
+			ROWS.set(rows);
+		}
+		for(int j = 0; j < w; j++) {
+			rows[j] = j;
+		}
+		for(int s = 0, end; s < len; s = end) {
+			end = s + 1;
+			while(end < len && !FuzzyMatcher.isBreak(in, indexes, firsts, ind_off, end)) {
+				end++;
+			}
+			int node = FuzzyMatcher.child(this.chars, this.first, this.sibling, 0, text[off + s]);
+			if(node != -1) {
+				count = this.walk(node, 1, (char) 0, text, off + s, Math.min(w, end - s + 1), s, rows, m, count);
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * @return `true` If there is white space in original text between
+	 *         edited characters `i - 1` and `i`
+	 */
+	protected static boolean isBreak(char[] in, int[] indexes, int[] firsts, int ind_off, int i) {
+		for(int p = indexes[ind_off + i - 1] + 1, n = firsts[ind_off + i]; p < n; p++) {
+			if(Character.isWhitespace(in[p])) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Compute row of node and walk its subtree
+	 * 
+	 * @param node Node
+	 * @param d Depth of node (row)
+	 * @param pc Character of parent
+	 * @param text Text
+	 * @param at Offset of match in text
+	 * @param cols Columns of row (matched text lengths 0 .. cols - 1)
+	 * @param start Start offset of match, for matches
+	 * @param rows Rows of distances
+	 * @param m Output
+	 * @param count Number of matches
+	 * 
+	 * @return Number of matches
+	 */
+	protected int walk(int node, int d, char pc, char[] text, int at, int cols, int start, 
+			int[] rows, AhoCorasick.Matches m, int count) {
+		int w = this.width;
+		int prev = (d - 1) * w;
+		int cur = prev + w;
+		char c = this.chars[node];
+		int min = d;
+		rows[cur] = d;
+		for(int j = 1; j < cols; j++) {
+			char t = text[at + j - 1];
+			int v = rows[prev + j - 1] + ((t == c) ? 0 : 1);
+			v = Math.min(v, Math.min(rows[prev + j], rows[cur + j - 1]) + 1);
+			//- Swapped characters
+			if(j >= 2 && d >= 2 && t == pc && text[at + j - 2] == c) {
+				v = Math.min(v, rows[prev - w + j - 2] + 1);
+			}
+			rows[cur + j] = v;
+			if(v < min) {
+				min = v;
+			}
+		}
+		if(min > this.reach[node]) {
+			return count;
+		}
+		int pat = this.pattern[node];
+		if(pat != -1 && min <= this.distance[node]) {
+			int best = -1;
+			int bestv = this.distance[node];
+			for(int j = 1; j < cols; j++) {
+				if(rows[cur + j] <= bestv && text[at + j - 1] == c) {
+					bestv = rows[cur + j];
+					best = j;
+				}
+			}
+			if(best != -1 && bestv != 0) {
+				count = m.add(count, start, pat, best);
+			}
+		}
+		for(int ch = this.first[node]; ch != -1; ch = this.sibling[ch]) {
+			count = this.walk(ch, d + 1, c, text, at, cols, start, rows, m, count);
+		}
+		return count;
+	}
+	
+	/**
+	 * @return Number of nodes
+	 */
+	public int size() {
+		return this.chars.length;
+	}
+	
+	/**
+	 * @return Approximate size of tables, bytes
+	 */
+	public long getBytes() {
+		return this.chars.length * 22L;
+	}
+	
+}
@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values (nanoseconds), HDR-style
+ * 
+ * Values are counted in buckets with relative width 1/16 (16 buckets
+ * for every power of two), so percentiles have error at most 6.25 %.
+ * Recording is one atomic increment, threads never wait.
+ */
+public class Histogram {
+	
+	/**
+	 * Bits of sub-buckets for every power of two
+	 */
+	protected static final int SUB_BITS = 4;
+	
+	protected static final int SUB = 1 << SUB_BITS;
+	
+	/**
+	 * Number of buckets, enough for all positive long values
+	 */
+	protected static final int BUCKETS = (64 - SUB_BITS) * SUB;
+	
+	protected final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	protected final AtomicLong count = new AtomicLong();
+	protected final AtomicLong sum = new AtomicLong();
+	protected final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * @param value Value, negative values are counted as 0
+	 */
+	public void record(long value) {
+		if(value < 0) {
+			value = 0;
+		}
+		this.counts.incrementAndGet(Histogram.bucket(value));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(value);
+		long m;
+		while(value > (m = this.max.get()) && !this.max.compareAndSet(m, value)) {}
+	}
+	
+	/**
+	 * @return Bucket of value
+	 */
+	protected static int bucket(long value) {
+		if(value < SUB) {
+			return (int) value;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB - 1);
+		return (exp - SUB_BITS + 1) * SUB + sub;
+	}
+	
+	/**
+	 * @return Lowest value of bucket
+	 */
+	protected static long lowest(int bucket) {
+		if(bucket < SUB) {
+			return bucket;
+		}
+		int exp = bucket / SUB + SUB_BITS - 1;
+		return (1L << exp) | ((long) (bucket % SUB) << (exp - SUB_BITS));
+	}
+	
+	/**
+	 * @return Highest value of bucket
+	 */
+	protected static long highest(int bucket) {
+		if(bucket < SUB) {
+			return bucket;
+		}
+		int exp = bucket / SUB + SUB_BITS - 1;
+		return Histogram.lowest(bucket) + (1L << (exp - SUB_BITS)) - 1;
+	}
+	
+	/**
+	 * @return Number of recorded values
+	 */
+	public long getCount() {
+		return this.count.get();
+	}
+	
+	/**
+	 * @return Sum of recorded values
+	 */
+	public long getSum() {
+		return this.sum.get();
+	}
+	
+	/**
+	 * @return Highest recorded value
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+	
+	/**
+	 * @return Average of recorded values, 0 if there are none
+	 */
+	public double getMean() {
+		long n = this.count.get();
+		return (n == 0) ? 0 : (double) this.sum.get() / n;
+	}
+	
+	/**
+	 * @param percentiles Percentiles (0-100), sorted
+	 * 
+	 * @return Values at given percentiles (middle of bucket), 0 if nothing was recorded
+	 */
+	public long[] getPercentiles(double... percentiles) {
+		long[] snap = new long[BUCKETS];
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			snap[i] = this.counts.get(i);
+			total += snap[i];
+		}
+		long[] ret = new long[percentiles.length];
+		if(total == 0) {
+			return ret;
+		}
+		long seen = 0;
+		int b = -1;
+		for(int p = 0; p < percentiles.length; p++) {
+			long need = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * total));
+			while(seen < need && b < BUCKETS - 1) {
+				seen += snap[++b];
+			}
+			ret[p] = Math.min((Histogram.lowest(b) + Histogram.highest(b)) / 2, this.max.get());
+		}
+		return ret;
+	}
+	
+}
@@ -0,0 +1,334 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Cheaper checks of chat messages when scanning takes too long (bots flooding chat)
+ * 
+ * Time of every message is recorded by {@link LoadShedder#record(long)}.
+ * After every second p99 of that second is compared with per-message budget
+ * and sum of times with aggregate budget. When any of them is exceeded, one
+ * level down the ladder is taken:
+ * 
+ * - {@link LoadShedder#FULL} - whole pipeline with whitelist
+ * - {@link LoadShedder#CACHED} - cached results (also of edited message), others
+ *   are checked without whitelist and words with typos ({@link CompiledFilter#degraded()})
+ * - {@link LoadShedder#PREFILTER} - same, pre-filter is asked for every message,
+ *   even when it is skipped for high pass rate
+ * - {@link LoadShedder#BLOCK} - same, but only {@link LoadShedder#getRate()}
+ *   unsure messages (not rejected by pre-filter nor cached) per second are
+ *   checked, other unsure ones are blocked
+ * 
+ * One level up is taken after few calm seconds (under half of both budgets).
+ * When load returns right after that, more calm seconds are needed next time,
+ * so flood does not flip levels every few seconds. Changes are counted and
+ * reported to {@link LoadShedder.Listener}.
+ */
+public class LoadShedder {
+	
+	public static final int FULL = 0;
+	public static final int CACHED = 1;
+	public static final int PREFILTER = 2;
+	public static final int BLOCK = 3;
+	
+	/**
+	 * Names of levels
+	 */
+	public static final String[] LEVELS = { "full", "cached", "prefilter", "block" };
+	
+	/**
+	 * Returned by {@link LoadShedder#process(AntiSwear, String)} for blocked
+	 * message, compared by identity
+	 */
+	public static final String BLOCKED = new String("");
+	
+	/**
+	 * Length of window, nanoseconds
+	 */
+	protected static final long WINDOW = 1000000000L;
+	
+	/**
+	 * Fewer messages in window do not have meaningful p99
+	 */
+	protected static final int MIN_SAMPLES = 50;
+	
+	/**
+	 * Calm windows needed to go one level up, doubled when load
+	 * returns right after recovery (up to {@link LoadShedder#MAX_HOLD})
+	 */
+	protected static final int HOLD = 5;
+	
+	protected static final int MAX_HOLD = 80;
+	
+	/**
+	 * Listener of level changes
+	 */
+	public static interface Listener {
+		
+		/**
+		 * Called by thread which ended window, outside of any lock
+		 * 
+		 * @param from Old level
+		 * @param to New level
+		 * @param p99 p99 of last window, nanoseconds
+		 * @param total Sum of times in last window, nanoseconds
+		 */
+		public void changed(int from, int to, long p99, long total);
+	
+	}
+	
+	/**
+	 * Per-message budget (p99), nanoseconds
+	 */
+	protected final long budget;
+	
+	/**
+	 * Aggregate budget, nanoseconds per second, 0 = none
+	 */
+	protected final long total;
+	
+	/**
+	 * Checked unsure messages per second on {@link LoadShedder#BLOCK}
+	 */
+	protected final int rate;
+	
+	protected volatile Listener listener = null;
+	
+	protected volatile int level = FULL;
+	
+	/**
+	 * Times of current window
+	 */
+	protected final AtomicReference<Histogram> window = new AtomicReference<Histogram>(new Histogram());
+	
+	/**
+	 * End of current window, {@link System#nanoTime()}
+	 */
+	protected final AtomicLong windowEnd = new AtomicLong(System.nanoTime() + WINDOW);
+	
+	/**
+	 * Calm windows in row and calm windows needed, guarded by this
+	 */
+	protected int calm = 0;
+	protected int hold = HOLD;
+	
+	/**
+	 * Windows since last recovery, guarded by this
+	 */
+	protected long since = Long.MAX_VALUE / 2;
+	
+	/**
+	 * Second (since creation) and messages checked in it on {@link LoadShedder#BLOCK}
+	 */
+	protected final AtomicLong slot = new AtomicLong();
+	
+	protected final long started = System.nanoTime();
+	
+	protected final AtomicLong changes = new AtomicLong();
+	
+	/**
+	 * Number of times every level was entered
+	 */
+	protected final AtomicLongArray entered = new AtomicLongArray(LEVELS.length);
+	
+	/**
+	 * @param budget Per-message budget (p99), nanoseconds
+	 * @param total Aggregate budget, nanoseconds per second, 0 = none
+	 * @param rate Checked unsure messages per second on {@link LoadShedder#BLOCK}
+	 */
+	public LoadShedder(long budget, long total, int rate) {
+		if(budget <= 0) {
+			throw new IllegalArgumentException("Budget must be positive!");
+		}
+		this.budget = budget;
+		this.total = Math.max(0, total);
+		this.rate = Math.max(0, rate);
+	}
+	
+	/**
+	 * @return Per-message budget (p99), nanoseconds
+	 */
+	public long getBudget() {
+		return this.budget;
+	}
+	
+	/**
+	 * @return Aggregate budget, nanoseconds per second, 0 = none
+	 */
+	public long getTotal() {
+		return this.total;
+	}
+	
+	/**
+	 * @return Checked unsure messages per second on {@link LoadShedder#BLOCK}
+	 */
+	public int getRate() {
+		return this.rate;
+	}
+	
+	/**
+	 * @return Listener of level changes, may be `null`
+	 */
+	public Listener getListener() {
+		return this.listener;
+	}
+	
+	/**
+	 * @param listener Listener of level changes, may be `null`
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * @return Current level, {@link LoadShedder#FULL} to {@link LoadShedder#BLOCK}
+	 */
+	public int getLevel() {
+		return this.level;
+	}
+	
+	/**
+	 * @return Number of level changes
+	 */
+	public long getChanges() {
+		return this.changes.get();
+	}
+	
+	/**
+	 * @param level Level
+	 * 
+	 * @return How many times level was entered
+	 */
+	public long getEntered(int level) {
+		return this.entered.get(level);
+	}
+	
+	/**
+	 * Check message on current level
+	 * 
+	 * @param as AntiSwear
+	 * @param in Message
+	 * 
+	 * @return Censored message, `null` if clean, or {@link LoadShedder#BLOCKED}
+	 */
+	public String process(AntiSwear as, String in) {
+		int level = this.level;
+		if(level == FULL) {
+			return as.processString(in, null);
+		}
+		return as.processDegraded(in, level, this);
+	}
+	
+	/**
+	 * @return `true` If message may be checked in this second
+	 */
+	protected boolean acquire(long now) {
+		long sec = (now - this.started) / WINDOW;
+		while(true) {
+			long cur = this.slot.get();
+			long used = ((cur >>> 32) == sec) ? (cur & 0xFFFFFFFFL) : 0;
+			if(used >= this.rate) {
+				return false;
+			}
+			if(this.slot.compareAndSet(cur, (sec << 32) | (used + 1))) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Record time of one message, ends window when it is over
+	 * 
+	 * @param nanos Time of message
+	 */
+	public void record(long nanos) {
+		this.window.get().record(nanos);
+		long now = System.nanoTime();
+		long end = this.windowEnd.get();
+		if(now - end >= 0 && this.windowEnd.compareAndSet(end, now + WINDOW)) {
+			this.evaluate(this.window.getAndSet(new Histogram()), (now - end) / WINDOW);
+		}
+	}
+	
+	/**
+	 * @param h Times of ended window
+	 * @param idle Windows without messages before it
+	 */
+	protected void evaluate(Histogram h, long idle) {
+		long n = h.getCount();
+		long p99 = (n == 0) ? 0 : h.getPercentiles(99)[0];
+		long sum = h.getSum();
+		int from, to;
+		synchronized(this) {
+			from = this.level;
+			to = from;
+			this.since += 1 + idle;
+			if((n >= MIN_SAMPLES && p99 > this.budget) || (this.total != 0 && sum > this.total)) {
+				this.calm = 0;
+				if(from < BLOCK) {
+					to = from + 1;
+					if(this.since <= this.hold) {
+						this.hold = Math.min(MAX_HOLD, this.hold * 2);
+					}
+				}
+			} else if(p99 <= this.budget / 2 && (this.total == 0 || sum <= this.total / 2)) {
+				this.calm = (int) Math.min(MAX_HOLD, this.calm + 1 + idle);
+				if(this.calm >= this.hold) {
+					this.calm = 0;
+					if(from != FULL) {
+						to = from - 1;
+						this.since = 0;
+					} else {
+						this.hold = HOLD;
+					}
+				}
+			} else {
+				this.calm = 0;
+			}
+			if(to == from) {
+				return;
+			}
+			this.level = to;
+		}
+		this.changes.incrementAndGet();
+		this.entered.incrementAndGet(to);
+		Listener l = this.listener;
+		if(l != null) {
+			l.changed(from, to, p99, sum);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return "level: " + LEVELS[this.level] + ", changes: " + this.changes.get()
+				+ ", cached: " + this.entered.get(CACHED) + "x, prefilter: " + this.entered.get(PREFILTER)
+				+ "x, block: " + this.entered.get(BLOCK) + "x";
+	}
+	
+}
@@ -0,0 +1,586 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Command line scanner of chat logs, works without Bukkit
+ * 
+ * Plain files are memory-mapped and split on line boundaries between
+ * threads of fork-join pool, `.gz` files are streamed and scanned in
+ * batches of lines. Every line with swear is written as JSON object:
+ *   {"file":"...","line":1,"message":"...","censored":"..."}
+ * 
+ * Run with `--help` for options
+ */
+public class LogScanner {
+	
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Lines of `.gz` file scanned by one task
+	 */
+	public static int BATCH_LINES = 8192;
+	
+	/**
+	 * Filter
+	 */
+	protected final AntiSwear aswear;
+	
+	/**
+	 * Pool of scanning threads
+	 */
+	protected final ForkJoinPool pool;
+	
+	/**
+	 * Only text matched by first group (or whole pattern) is scanned,
+	 * other lines are skipped. `null` to scan whole lines
+	 */
+	protected final Pattern message;
+	
+	/**
+	 * Maximal bytes of file scanned by one task
+	 */
+	protected final int chunk;
+	
+	/**
+	 * @param aswear Filter
+	 * @param pool Pool of scanning threads
+	 * @param message Pattern of message in line, may be `null`
+	 * @param chunk Maximal bytes of file scanned by one task
+	 */
+	public LogScanner(AntiSwear aswear, ForkJoinPool pool, Pattern message, int chunk) {
+		this.aswear = aswear;
+		this.pool = pool;
+		this.message = message;
+		this.chunk = chunk;
+	}
+	
+	/**
+	 * Line with swear
+	 */
+	public static class Hit {
+		
+		/**
+		 * Number of line, from 1
+		 */
+		public long line;
+		
+		/**
+		 * Scanned message
+		 */
+		public final String message;
+		
+		/**
+		 * Censored message
+		 */
+		public final String censored;
+		
+		public Hit(long line, String message, String censored) {
+			this.line = line;
+			this.message = message;
+			this.censored = censored;
+		}
+	
+	}
+	
+	/**
+	 * Hits in part of file
+	 */
+	public static class Part {
+		
+		/**
+		 * Number of lines in part
+		 */
+		public long lines;
+		
+		/**
+		 * Hits, line numbers are relative to part
+		 */
+		public List<Hit> hits;
+		
+		public Part(long lines, List<Hit> hits) {
+			this.lines = lines;
+			this.hits = hits;
+		}
+		
+		/**
+		 * @param next Following part
+		 * 
+		 * @return This part joined with next one
+		 */
+		public Part join(Part next) {
+			if(!next.hits.isEmpty()) {
+				for(Hit h : next.hits) {
+					h.line += this.lines;
+				}
+				if(this.hits.isEmpty()) {
+					this.hits = next.hits;
+				} else {
+					this.hits.addAll(next.hits);
+				}
+			}
+			this.lines += next.lines;
+			return this;
+		}
+	
+	}
+	
+	/**
+	 * Scan lines in characters
+	 * 
+	 * @param arr Characters
+	 * @param off Offset
+	 * @param end End (offset + length)
+	 * 
+	 * @return Hits
+	 */
+	public Part scan(char[] arr, int off, int end) {
+		List<Hit> hits = Collections.emptyList();
+		Matcher m = (this.message == null) ? null : this.message.matcher("");
+		long lines = 0;
+		while(off < end) {
+			int le = off;
+			while(le < end && arr[le] != '\n') {
+				le++;
+			}
+			lines++;
+			int len = le - off;
+			if(len != 0 && arr[off + len - 1] == '\r') {
+				len--;
+			}
+			String msg = new String(arr, off, len);
+			off = le + 1;
+			if(m != null) {
+				if(!m.reset(msg).find()) {
+					continue;
+				}
+				msg = m.group((m.groupCount() >= 1) ? 1 : 0);
+				if(msg == null) {
+					continue;
+				}
+			}
+			String censored = this.aswear.processString(msg);
+			if(censored != null) {
+				if(hits.isEmpty()) {
+					hits = new ArrayList<Hit>();
+				}
+				hits.add(new Hit(lines, msg, censored));
+			}
+		}
+		return new Part(lines, hits);
+	}
+	
+	/**
+	 * Scan file, `.gz` files are decompressed
+	 * 
+	 * @param f File
+	 * 
+	 * @return Hits
+	 */
+	public Part scan(File f) throws IOException {
+		if(f.getName().endsWith(".gz")) {
+			return this.scanStream(f);
+		}
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			return this.pool.invoke(new MappedTask(ch, 0, ch.size()));
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Scan mapped part of file, split in half on line boundary when
+	 * bigger than {@link LogScanner#chunk}
+	 */
+	protected class MappedTask extends RecursiveTask<Part> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		protected final FileChannel ch;
+		protected final long start;
+		protected final long end;
+		
+		public MappedTask(FileChannel ch, long start, long end) {
+			this.ch = ch;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected Part compute() {
+			try {
+				if(this.end - this.start > LogScanner.this.chunk) {
+					long mid = LogScanner.lineStart(this.ch, this.start + (this.end - this.start) / 2, this.end);
+					if(mid < this.end) {
+						MappedTask right = new MappedTask(this.ch, mid, this.end);
+						right.fork();
+						Part left = new MappedTask(this.ch, this.start, mid).compute();
+						return left.join(right.join());
+					}
+				}
+				MappedByteBuffer bb = this.ch.map(FileChannel.MapMode.READ_ONLY, this.start, this.end - this.start);
+				CharsetDecoder dec = UTF_8.newDecoder()
+						.onMalformedInput(CodingErrorAction.REPLACE)
+						.onUnmappableCharacter(CodingErrorAction.REPLACE);
+				CharBuffer cb = dec.decode(bb);
+				return LogScanner.this.scan(cb.array(), cb.arrayOffset() + cb.position(),
+						cb.arrayOffset() + cb.limit());
+			} catch(IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	
+	}
+	
+	/**
+	 * @param ch File
+	 * @param pos Position
+	 * @param end End of searched part
+	 * 
+	 * @return Position after first new line at or after `pos`, or `end`
+	 */
+	protected static long lineStart(FileChannel ch, long pos, long end) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+		while(pos < end) {
+			buf.clear();
+			int n = ch.read(buf, pos);
+			if(n <= 0) {
+				break;
+			}
+			for(int i = 0; i < n; i++) {
+				if(buf.get(i) == '\n') {
+					return Math.min(pos + i + 1, end);
+				}
+			}
+			pos += n;
+		}
+		return end;
+	}
+	
+	/**
+	 * Scan compressed file, batches of lines are scanned in pool
+	 * 
+	 * @param f File
+	 * 
+	 * @return Hits
+	 */
+	protected Part scanStream(File f) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				new GZIPInputStream(new FileInputStream(f), 65536), UTF_8), 65536);
+		Part ret = new Part(0, new ArrayList<Hit>());
+		Deque<Future<Part>> running = new ArrayDeque<Future<Part>>();
+		int max = this.pool.getParallelism() * 2;
+		try {
+			while(true) {
+				StringBuilder sb = new StringBuilder(BATCH_LINES * 64);
+				String line = null;
+				for(int i = 0; i < BATCH_LINES && (line = br.readLine()) != null; i++) {
+					sb.append(line).append('\n');
+				}
+				if(sb.length() != 0) {
+					final char[] arr = new char[sb.length()];
+					sb.getChars(0, arr.length, arr, 0);
+					running.add(this.pool.submit(new Callable<Part>() {
+						
+						@Override
+						public Part call() {
+							return LogScanner.this.scan(arr, 0, arr.length);
+						}
+					
+					}));
+				}
+				while(!running.isEmpty() && (line == null || running.size() >= max)) {
+					ret.join(running.poll().get());
+				}
+				if(line == null) {
+					return ret;
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch(ExecutionException e) {
+			throw new IOException(e.getCause());
+		} finally {
+			for(Future<Part> fut : running) {
+				fut.cancel(true);
+			}
+			br.close();
+		}
+	}
+	
+	/**
+	 * Write hits as JSON lines
+	 * 
+	 * @param file Name of scanned file
+	 * @param part Hits
+	 * @param out Output
+	 */
+	public static void write(String file, Part part, Writer out) throws IOException {
+		String prefix = "{\"file\":" + LogScanner.quote(file) + ",\"line\":";
+		for(Hit h : part.hits) {
+			out.write(prefix);
+			out.write(Long.toString(h.line));
+			out.write(",\"message\":");
+			out.write(LogScanner.quote(h.message));
+			out.write(",\"censored\":");
+			out.write(LogScanner.quote(h.censored));
+			out.write("}\n");
+		}
+	}
+	
+	/**
+	 * @return JSON string
+	 */
+	public static String quote(String str) {
+		StringBuilder sb = new StringBuilder(str.length() + 8);
+		sb.append('"');
+		for(int i = 0, n = str.length(); i < n; i++) {
+			char c = str.charAt(i);
+			if(c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if(c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+	
+	/**
+	 * Load `Blacklist` and `Whitelist` sections from config.yml
+	 * without YAML library. Only format of default config is supported:
+	 * 
+	 *   Blacklist:
+	 *   - swear: 'replacement'
+	 *   Whitelist:
+	 *   - ' allowed '
+	 * 
+	 * @param f Config file
+	 * @param blacklist Blacklisted words are added here
+	 * @param whitelist Whitelisted words are added here
+	 */
+	public static void loadConfig(File f, Map<String,String> blacklist, List<String> whitelist) throws IOException {
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(f), UTF_8));
+		try {
+			String section = null;
+			String line;
+			while((line = br.readLine()) != null) {
+				String tr = line.trim();
+				if(tr.length() == 0 || tr.charAt(0) == '#') {
+					continue;
+				}
+				if(!tr.startsWith("-")) {
+					int i = line.indexOf(':');
+					if(i != -1 && !Character.isWhitespace(line.charAt(0))) {
+						section = line.substring(0, i).trim();
+					}
+					continue;
+				}
+				String item = tr.substring(1).trim();
+				if("Whitelist".equals(section)) {
+					whitelist.add(LogScanner.unquote(item));
+				} else if("Blacklist".equals(section)) {
+					int i = LogScanner.keyEnd(item);
+					if(i != -1) {
+						blacklist.put(LogScanner.unquote(item.substring(0, i).trim()),
+								LogScanner.unquote(item.substring(i + 1).trim()));
+					}
+				}
+			}
+		} finally {
+			br.close();
+		}
+	}
+	
+	/**
+	 * @return Index of `:` after key, or `-1`
+	 */
+	protected static int keyEnd(String item) {
+		char quote = 0;
+		for(int i = 0, n = item.length(); i < n; i++) {
+			char c = item.charAt(i);
+			if(quote != 0) {
+				if(c == quote) {
+					quote = 0;
+				}
+			} else if(c == '\'' || c == '"') {
+				quote = c;
+			} else if(c == ':') {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return YAML scalar without quotes
+	 */
+	protected static String unquote(String str) {
+		int n = str.length();
+		if(n >= 2 && str.charAt(0) == '\'' && str.charAt(n - 1) == '\'') {
+			return str.substring(1, n - 1).replace("''", "'");
+		}
+		if(n >= 2 && str.charAt(0) == '"' && str.charAt(n - 1) == '"') {
+			return str.substring(1, n - 1).replace("\\\"", "\"").replace("\\\\", "\\");
+		}
+		return str;
+	}
+	
+	protected static void usage() {
+		System.err.println("Usage: LogScanner [options] <file|directory>...");
+		System.err.println("  --config <file>          Config with Blacklist and Whitelist (config.yml)");
+		System.err.println("  --substitutions <file>   Substitutions file or none (substitutions.txt)");
+		System.err.println("  --threads <n>            Scanning threads (number of processors)");
+		System.err.println("  --message <regex>        Scan only first group of matching lines");
+		System.err.println("  --chunk <MB>             Maximal part of file scanned by one thread (16)");
+		System.err.println("  --out <file>             Output file (standard output)");
+	}
+	
+	public static void main(String[] args) throws IOException {
+		File config = new File("config.yml");
+		File subs = new File("substitutions.txt");
+		int threads = Runtime.getRuntime().availableProcessors();
+		Pattern message = null;
+		int chunk = 16 << 20;
+		File outFile = null;
+		List<File> files = new ArrayList<File>();
+		for(int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(arg.startsWith("--") && i + 1 >= args.length) {
+				LogScanner.usage();
+				return;
+			} else if(arg.equals("--config")) {
+				config = new File(args[++i]);
+			} else if(arg.equals("--substitutions")) {
+				String val = args[++i];
+				subs = val.equals("none") ? null : new File(val);
+			} else if(arg.equals("--threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else if(arg.equals("--message")) {
+				message = Pattern.compile(args[++i]);
+			} else if(arg.equals("--chunk")) {
+				chunk = Integer.parseInt(args[++i]) << 20;
+			} else if(arg.equals("--out")) {
+				outFile = new File(args[++i]);
+			} else if(arg.startsWith("--")) {
+				LogScanner.usage();
+				return;
+			} else {
+				File f = new File(arg);
+				File[] list = f.listFiles();
+				if(list == null) {
+					files.add(f);
+				} else {
+					Arrays.sort(list);
+					for(File sub : list) {
+						if(sub.isFile()) {
+							files.add(sub);
+						}
+					}
+				}
+			}
+		}
+		if(files.isEmpty()) {
+			LogScanner.usage();
+			return;
+		}
+		
+		Map<String,String> blacklist = new LinkedHashMap<String,String>();
+		List<String> whitelist = new ArrayList<String>();
+		LogScanner.loadConfig(config, blacklist, whitelist);
+		Transducer tr = (subs != null && subs.isFile()) ? Transducer.load(subs) : null;
+		AntiSwear as = new AntiSwear();
+		as.setFilter(new CompiledFilter(AntiSwear.loadBlacklist(blacklist),
+				AntiSwear.loadWhitelist(whitelist), tr));
+		System.err.println("Loaded " + blacklist.size() + " blacklisted and " + whitelist.size()
+				+ " whitelisted words, " + ((tr == null) ? 0 : tr.size()) + " substitutions");
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		LogScanner sc = new LogScanner(as, pool, message, chunk);
+		Writer out = new BufferedWriter(new OutputStreamWriter((outFile == null) ? System.out
+				: new FileOutputStream(outFile), UTF_8), 65536);
+		long lines = 0;
+		long hits = 0;
+		long bytes = 0;
+		long start = System.nanoTime();
+		try {
+			for(File f : files) {
+				Part p = sc.scan(f);
+				LogScanner.write(f.getPath(), p, out);
+				lines += p.lines;
+				hits += p.hits.size();
+				bytes += f.length();
+			}
+		} finally {
+			out.flush();
+			if(outFile != null) {
+				out.close();
+			}
+			pool.shutdown();
+		}
+		double sec = (System.nanoTime() - start) / 1e9;
+		System.err.println(String.format("Scanned %d files, %d lines, %d hits in %.2f s (%.1f MB/s, %d threads)",
+				files.size(), lines, hits, sec, bytes / sec / (1 << 20), threads));
+	}
+	
+}
@@ -0,0 +1,330 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms of message processing stages and message counters
+ * 
+ * Set by {@link AntiSwear#setMetrics(Metrics)}, when it is `null`
+ * nothing is measured. Counters are exact, but only every n-th message
+ * is timed (see {@link Metrics#sample()}), as reading clock around every
+ * whitelist check would cost more than the check itself.
+ */
+public class Metrics {
+	
+	/**
+	 * Percentiles shown in statistics
+	 */
+	public static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	
+	/**
+	 * Quantile labels of {@link Metrics#PERCENTILES} for Prometheus
+	 */
+	protected static final String[] QUANTILES = { "0.5", "0.9", "0.99", "0.999" };
+	
+	/**
+	 * Editing message ({@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)}
+	 * or substitutions)
+	 */
+	public final Histogram normalize = new Histogram();
+	
+	/**
+	 * Matching swears and replacing them ({@link AntiSwear#doReplace(char[], int, int, char[], int, int, int[], int[], int)}),
+	 * including whitelist checks
+	 */
+	public final Histogram match = new Histogram();
+	
+	/**
+	 * Whitelist checks of one message, only messages with whitelisted word are counted
+	 */
+	public final Histogram whitelist = new Histogram();
+	
+	/**
+	 * Whole {@link AntiSwear#processString(String)}
+	 */
+	public final Histogram process = new Histogram();
+	
+	/**
+	 * Whole chat event handler, every message is timed
+	 */
+	public final Histogram chat = new Histogram();
+	
+	/**
+	 * Compiling filter
+	 */
+	public final Histogram compile = new Histogram();
+	
+	/**
+	 * Main thread time of sign change handler
+	 */
+	public final Histogram sign = new Histogram();
+	
+	/**
+	 * Main thread time of book edit handler
+	 */
+	public final Histogram book = new Histogram();
+	
+	/**
+	 * Main thread time of command handler (private messages)
+	 */
+	public final Histogram command = new Histogram();
+	
+	/**
+	 * Main thread time of anvil rename handler
+	 */
+	public final Histogram anvil = new Histogram();
+	
+	/**
+	 * Permission lookups of players not found in {@link BypassCache}
+	 */
+	public final Histogram permission = new Histogram();
+	
+	/**
+	 * Time from event to applying result of scan done off main thread
+	 */
+	public final Histogram deferred = new Histogram();
+	
+	/**
+	 * Scanned messages (chat, signs, books, anvils and commands)
+	 */
+	public final AtomicLong scanned = new AtomicLong();
+	
+	/**
+	 * Messages with replaced swears
+	 */
+	public final AtomicLong censored = new AtomicLong();
+	
+	/**
+	 * Messages cancelled because of swears
+	 */
+	public final AtomicLong blocked = new AtomicLong();
+	
+	/**
+	 * Messages not scanned, because player may swear
+	 */
+	public final AtomicLong bypassed = new AtomicLong();
+	
+	/**
+	 * Messages cancelled because player is muted ({@link Violations})
+	 */
+	public final AtomicLong muted = new AtomicLong();
+	
+	/**
+	 * Permission lookups avoided by {@link BypassCache}
+	 */
+	public final AtomicLong bypassHits = new AtomicLong();
+	
+	/**
+	 * Messages blocked by {@link LoadShedder} (unsure or over rate)
+	 */
+	public final AtomicLong shed = new AtomicLong();
+	
+	/**
+	 * Entries dropped by full queue of {@link AuditLog}
+	 */
+	public final AtomicLong auditDropped = new AtomicLong();
+	
+	/**
+	 * Level changes of {@link LoadShedder}
+	 */
+	public final AtomicLong shedChanges = new AtomicLong();
+	
+	/**
+	 * Current level of {@link LoadShedder}
+	 */
+	public volatile int shedLevel = LoadShedder.FULL;
+	
+	/**
+	 * Time of creation, nanoseconds
+	 */
+	protected final long started = System.nanoTime();
+	
+	/**
+	 * Timed messages - 1 of (mask + 1)
+	 */
+	protected final int mask;
+	
+	/**
+	 * Messages seen by {@link Metrics#sample()}. Not synchronized,
+	 * lost increments only move sampling a bit
+	 */
+	protected int ticks = 0;
+	
+	/**
+	 * Time every 8th message
+	 */
+	public Metrics() {
+		this(8);
+	}
+	
+	/**
+	 * @param sample Time every n-th message, rounded up to power of two
+	 */
+	public Metrics(int sample) {
+		if(sample < 1) {
+			throw new IllegalArgumentException("Sample must be positive!");
+		}
+		this.mask = (sample == 1) ? 0 : (Integer.highestOneBit(sample - 1) * 2 - 1);
+	}
+	
+	/**
+	 * @return `true` If this message should be timed
+	 */
+	public boolean sample() {
+		return (this.ticks++ & this.mask) == 0;
+	}
+	
+	/**
+	 * @return Histograms by name
+	 */
+	public Map<String,Histogram> getStages() {
+		Map<String,Histogram> ret = new LinkedHashMap<String,Histogram>();
+		ret.put("normalize", this.normalize);
+		ret.put("match", this.match);
+		ret.put("whitelist", this.whitelist);
+		ret.put("process", this.process);
+		ret.put("chat", this.chat);
+		ret.put("compile", this.compile);
+		ret.put("sign", this.sign);
+		ret.put("book", this.book);
+		ret.put("command", this.command);
+		ret.put("anvil", this.anvil);
+		ret.put("permission", this.permission);
+		ret.put("deferred", this.deferred);
+		return ret;
+	}
+	
+	/**
+	 * @return Counters by name
+	 */
+	public Map<String,AtomicLong> getCounters() {
+		Map<String,AtomicLong> ret = new LinkedHashMap<String,AtomicLong>();
+		ret.put("scanned", this.scanned);
+		ret.put("censored", this.censored);
+		ret.put("blocked", this.blocked);
+		ret.put("bypassed", this.bypassed);
+		ret.put("shed", this.shed);
+		ret.put("muted", this.muted);
+		return ret;
+	}
+	
+	/**
+	 * @return Human readable statistics, one line per counter or stage
+	 */
+	public List<String> format() {
+		List<String> ret = new ArrayList<String>();
+		double sec = (System.nanoTime() - this.started) / 1e9;
+		StringBuilder sb = new StringBuilder();
+		for(Map.Entry<String,AtomicLong> ent : this.getCounters().entrySet()) {
+			if(sb.length() != 0) {
+				sb.append(", ");
+			}
+			sb.append(ent.getKey()).append(": ").append(ent.getValue().get());
+		}
+		ret.add(sb.toString());
+		ret.add(String.format(Locale.ROOT, "%.2f messages/s in %.0f s", this.scanned.get() / sec, sec));
+		long hits = this.bypassHits.get();
+		if(hits != 0) {
+			ret.add(String.format(Locale.ROOT, "permission cache: %d hits, %d lookups, saved ~%s",
+					hits, this.permission.getCount(), Metrics.time(hits * this.permission.getMean())));
+		}
+		for(Map.Entry<String,Histogram> ent : this.getStages().entrySet()) {
+			Histogram h = ent.getValue();
+			if(h.getCount() == 0) {
+				continue;
+			}
+			long[] p = h.getPercentiles(PERCENTILES);
+			ret.add(String.format(Locale.ROOT, "%s: %dx, avg %s, p50 %s, p90 %s, p99 %s, p99.9 %s, max %s",
+					ent.getKey(), h.getCount(), Metrics.time(h.getMean()), Metrics.time(p[0]),
+					Metrics.time(p[1]), Metrics.time(p[2]), Metrics.time(p[3]), Metrics.time(h.getMax())));
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return Statistics in Prometheus text format
+	 */
+	public String toPrometheus() {
+		StringBuilder sb = new StringBuilder(4096);
+		sb.append("# HELP betterantiswear_messages_total Scanned texts by result\n");
+		sb.append("# TYPE betterantiswear_messages_total counter\n");
+		for(Map.Entry<String,AtomicLong> ent : this.getCounters().entrySet()) {
+			sb.append("betterantiswear_messages_total{result=\"").append(ent.getKey()).append("\"} ")
+					.append(ent.getValue().get()).append('\n');
+		}
+		sb.append("# HELP betterantiswear_permission_cache_hits_total Permission lookups avoided by cache\n");
+		sb.append("# TYPE betterantiswear_permission_cache_hits_total counter\n");
+		sb.append("betterantiswear_permission_cache_hits_total ").append(this.bypassHits.get()).append('\n');
+		sb.append("# HELP betterantiswear_audit_dropped_total Audit log entries dropped by full queue\n");
+		sb.append("# TYPE betterantiswear_audit_dropped_total counter\n");
+		sb.append("betterantiswear_audit_dropped_total ").append(this.auditDropped.get()).append('\n');
+		sb.append("# HELP betterantiswear_shed_level Load shedding level, 0 = full check\n");
+		sb.append("# TYPE betterantiswear_shed_level gauge\n");
+		sb.append("betterantiswear_shed_level ").append(this.shedLevel).append('\n');
+		sb.append("# HELP betterantiswear_shed_changes_total Load shedding level changes\n");
+		sb.append("# TYPE betterantiswear_shed_changes_total counter\n");
+		sb.append("betterantiswear_shed_changes_total ").append(this.shedChanges.get()).append('\n');
+		sb.append("# HELP betterantiswear_stage_seconds Time of processing stage\n");
+		sb.append("# TYPE betterantiswear_stage_seconds summary\n");
+		for(Map.Entry<String,Histogram> ent : this.getStages().entrySet()) {
+			Histogram h = ent.getValue();
+			String label = "{stage=\"" + ent.getKey() + "\"";
+			long[] p = h.getPercentiles(PERCENTILES);
+			for(int i = 0; i < p.length; i++) {
+				sb.append("betterantiswear_stage_seconds").append(label).append(",quantile=\"")
+						.append(QUANTILES[i]).append("\"} ").append(Metrics.seconds(p[i])).append('\n');
+			}
+			sb.append("betterantiswear_stage_seconds_sum").append(label).append("} ")
+					.append(Metrics.seconds(h.getSum())).append('\n');
+			sb.append("betterantiswear_stage_seconds_count").append(label).append("} ")
+					.append(h.getCount()).append('\n');
+		}
+		return sb.toString();
+	}
+	
+	protected static String seconds(long nanos) {
+		return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+	}
+	
+	/**
+	 * @return Readable time
+	 */
+	protected static String time(double nanos) {
+		if(nanos < 10000) {
+			return String.format(Locale.ROOT, "%.0f ns", nanos);
+		} else if(nanos < 10000000) {
+			return String.format(Locale.ROOT, "%.1f µs", nanos / 1e3);
+		}
+		return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+	}
+	
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+
+/**
+ * Minimal HTTP endpoint serving {@link Metrics#toPrometheus()} on
+ * localhost. Requests are answered one by one on single daemon thread,
+ * so scraping never takes threads from chat
+ */
+public class MetricsServer implements Runnable, Closeable {
+	
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Metrics served
+	 */
+	protected final Metrics metrics;
+	
+	/**
+	 * Listening socket
+	 */
+	protected final ServerSocket socket;
+	
+	/**
+	 * Bind to 127.0.0.1
+	 * 
+	 * @param metrics Metrics served
+	 * @param port Port
+	 * 
+	 * @throws IOException If port is not free
+	 */
+	public MetricsServer(Metrics metrics, int port) throws IOException {
+		this.metrics = metrics;
+		this.socket = new ServerSocket();
+		this.socket.setReuseAddress(true);
+		this.socket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+	}
+	
+	/**
+	 * @return Port
+	 */
+	public int getPort() {
+		return this.socket.getLocalPort();
+	}
+	
+	/**
+	 * Start serving in new daemon thread
+	 */
+	public void start() {
+		Thread th = new Thread(this, "BetterAntiSwear-Metrics");
+		th.setDaemon(true);
+		th.start();
+	}
+	
+	@Override
+	public void run() {
+		while(!this.socket.isClosed()) {
+			try {
+				Socket s = this.socket.accept();
+				try {
+					s.setSoTimeout(2000);
+					this.handle(s);
+				} finally {
+					s.close();
+				}
+			} catch(SocketException se) {
+				//- Closed, or client went away
+			} catch(IOException ioe) {}
+		}
+	}
+	
+	/**
+	 * Read request head and answer with metrics, no matter
+	 * which path was requested
+	 * 
+	 * @param s Connection
+	 */
+	protected void handle(Socket s) throws IOException {
+		InputStream in = s.getInputStream();
+		int lines = 0; //- Empty line ends request head
+		int read = 0;
+		int c;
+		while(lines < 2 && read++ < 8192 && (c = in.read()) != -1) {
+			if(c == '\n') {
+				lines++;
+			} else if(c != '\r') {
+				lines = 0;
+			}
+		}
+		byte[] body = this.metrics.toPrometheus().getBytes(UTF8);
+		String head = "HTTP/1.0 200 OK\r\n"
+				+ "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n"
+				+ "Content-Length: " + body.length + "\r\n"
+				+ "Connection: close\r\n\r\n";
+		OutputStream out = s.getOutputStream();
+		out.write(head.getBytes(UTF8));
+		out.write(body);
+		out.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		this.socket.close();
+	}
+	
+}
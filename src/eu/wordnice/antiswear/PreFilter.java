@@ -0,0 +1,325 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Cheap check, whether edited message may contain blacklisted word
+ * 
+ * Every trigram of every key is hashed into bit set (keys shorter than
+ * 3 characters are hashed whole, with zero characters before them). Key of length L can occur in message
+ * only if L - 2 consecutive trigrams of message are in the set, so when
+ * no run is long enough (and no short key is found), message is clean.
+ * There are no false negatives, false positives only cost the full check.
+ * 
+ * With short common keys (like `ass`, edited to `is`) most messages pass,
+ * then the check is only overhead. So when more than {@link PreFilter#MAX_PASS}
+ * of last {@link PreFilter#WINDOW} messages passed, it is skipped for next
+ * {@link PreFilter#SKIP} messages.
+ */
+public class PreFilter {
+	
+	/**
+	 * Length of hashed grams
+	 */
+	public static final int Q = 3;
+	
+	/**
+	 * Mask of 3 characters
+	 */
+	protected static final long GRAM_MASK = 0xFFFFFFFFFFFFL;
+	
+	/**
+	 * Bits per distinct gram (lower means more false positives)
+	 */
+	public static int BITS_PER_GRAM = 16;
+	
+	/**
+	 * Messages between evaluations of pass rate
+	 */
+	public static int WINDOW = 1024;
+	
+	/**
+	 * Highest useful pass rate (0-1)
+	 */
+	public static double MAX_PASS = 0.6;
+	
+	/**
+	 * Messages not checked after high pass rate
+	 */
+	public static int SKIP = 16384;
+	
+	/**
+	 * Bit set of hashed grams
+	 */
+	protected final long[] bits;
+	
+	/**
+	 * Shift of hash to index of bit
+	 */
+	protected final int shift;
+	
+	/**
+	 * Consecutive trigrams needed, `Integer.MAX_VALUE` if there are no keys of length {@link PreFilter#Q}+
+	 */
+	protected final int run;
+	
+	/**
+	 * There are keys with 1 character
+	 */
+	protected final boolean ones;
+	
+	/**
+	 * There are keys with 2 characters
+	 */
+	protected final boolean twos;
+	
+	/**
+	 * Checked and passed messages in this window. Not synchronized,
+	 * lost increments only move evaluation a bit
+	 */
+	protected int checks = 0;
+	protected int passes = 0;
+	
+	/**
+	 * Messages to skip
+	 */
+	protected int skip = 0;
+	
+	/**
+	 * @param keys Blacklisted keys (edited words), `null` and empty ones are ignored
+	 */
+	public PreFilter(char[][] keys) {
+		int grams = 0;
+		int min = Integer.MAX_VALUE;
+		boolean ones = false;
+		boolean twos = false;
+		for(char[] key : keys) {
+			if(key == null || key.length == 0) {
+				continue;
+			}
+			if(key.length < Q) {
+				grams++;
+				ones |= (key.length == 1);
+				twos |= (key.length == 2);
+			} else {
+				grams += key.length - Q + 1;
+				min = Math.min(min, key.length - Q + 1);
+			}
+		}
+		int log = 6;
+		while(log < 26 && (1L << log) < (long) grams * BITS_PER_GRAM) {
+			log++;
+		}
+		this.bits = new long[1 << (log - 6)];
+		this.shift = 64 - log;
+		this.run = min;
+		this.ones = ones;
+		this.twos = twos;
+		for(char[] key : keys) {
+			if(key == null || key.length == 0) {
+				continue;
+			}
+			if(key.length == 1) {
+				this.set(key[0]);
+			} else if(key.length == 2) {
+				this.set(((long) key[0] << 16) | key[1]);
+			} else {
+				for(int i = Q - 1, n = key.length; i < n; i++) {
+					this.set(((long) key[i - 2] << 32) | ((long) key[i - 1] << 16) | key[i]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Read pre-filter, see {@link PreFilter#read(ByteBuffer)}
+	 */
+	protected PreFilter(long[] bits, int shift, int run, boolean ones, boolean twos) {
+		this.bits = bits;
+		this.shift = shift;
+		this.run = run;
+		this.ones = ones;
+		this.twos = twos;
+	}
+	
+	/**
+	 * Write pre-filter, readable by {@link PreFilter#read(ByteBuffer)}
+	 * 
+	 * @param out Output
+	 * 
+	 * @throws IOException On write error
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(this.bits.length);
+		out.writeInt(this.shift);
+		out.writeInt(this.run);
+		out.writeInt((this.ones ? 1 : 0) | (this.twos ? 2 : 0));
+		for(int i = 0; i < this.bits.length; i++) {
+			out.writeLong(this.bits[i]);
+		}
+	}
+	
+	/**
+	 * Read pre-filter written by {@link PreFilter#write(DataOutput)}.
+	 * Position of buffer is moved after it
+	 * 
+	 * @param buf Buffer (big-endian)
+	 * 
+	 * @return Pre-filter
+	 */
+	public static PreFilter read(ByteBuffer buf) {
+		long[] bits = new long[buf.getInt()];
+		int shift = buf.getInt();
+		int run = buf.getInt();
+		int flags = buf.getInt();
+		buf.asLongBuffer().get(bits);
+		buf.position(buf.position() + bits.length * 8);
+		return new PreFilter(bits, shift, run, (flags & 1) != 0, (flags & 2) != 0);
+	}
+	
+	/**
+	 * @return Bit of gram (up to 3 characters, 16 bits each)
+	 */
+	protected int bit(long gram) {
+		return (int) ((gram * 0x9E3779B97F4A7C15L) >>> this.shift);
+	}
+	
+	protected void set(long gram) {
+		int bit = this.bit(gram);
+		this.bits[bit >>> 6] |= 1L << bit;
+	}
+	
+	protected boolean get(long gram) {
+		int bit = this.bit(gram);
+		return (this.bits[bit >>> 6] & (1L << bit)) != 0;
+	}
+	
+	/**
+	 * @return `false` if check should be skipped, because too many messages pass
+	 */
+	public boolean isUseful() {
+		if(this.skip > 0) {
+			this.skip--;
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Count result of check, see {@link PreFilter#isUseful()}
+	 * 
+	 * @param pass Message passed
+	 * 
+	 * @return `pass`
+	 */
+	public boolean count(boolean pass) {
+		if(pass) {
+			this.passes++;
+		}
+		if(++this.checks >= WINDOW) {
+			if(this.passes > WINDOW * MAX_PASS) {
+				this.skip = SKIP;
+			}
+			this.checks = 0;
+			this.passes = 0;
+		}
+		return pass;
+	}
+	
+	/**
+	 * @return Size of bit set, bytes
+	 */
+	public int getBytes() {
+		return this.bits.length * 8;
+	}
+	
+	/**
+	 * @param in Edited message
+	 * @param off Offset
+	 * @param len Length
+	 * 
+	 * @return `false` if message surely contains no key
+	 */
+	public boolean mayMatch(char[] in, int off, int len) {
+		long gram = 0;
+		int cur = 0;
+		for(len += off; off < len; off++) {
+			gram = ((gram << 16) | in[off]) & GRAM_MASK;
+			if(this.step(gram)) {
+				return true;
+			}
+			cur = this.get(gram) ? (cur + 1) : 0;
+			if(cur >= this.run) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Same as {@link PreFilter#mayMatch(char[], int, int)} for message edited by
+	 * {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)},
+	 * edits characters on the fly
+	 * 
+	 * @param in Original message
+	 * 
+	 * @return `false` if message surely contains no key
+	 */
+	public boolean mayMatchRaw(CharSequence in) {
+		char[] fold = AntiSwear.FOLD;
+		long gram = 0;
+		int cur = 0;
+		for(int i = 0, n = in.length(); i < n; i++) {
+			char c = fold[in.charAt(i)];
+			if(c == 0 || c == (char) gram) {
+				continue;
+			}
+			gram = ((gram << 16) | c) & GRAM_MASK;
+			if(this.step(gram)) {
+				return true;
+			}
+			cur = this.get(gram) ? (cur + 1) : 0;
+			if(cur >= this.run) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @param gram Last 3 characters
+	 * 
+	 * @return `true` if short key ends here
+	 */
+	protected boolean step(long gram) {
+		return (this.ones && this.get(gram & 0xFFFFL))
+				|| (this.twos && this.get(gram & 0xFFFFFFFFL));
+	}
+	
+}
@@ -0,0 +1,247 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+/**
+ * Named filter profiles, e.g. per language. Every profile has its own
+ * {@link AntiSwear} compiled from common lists and lists of profile, so
+ * message is scanned in one pass only against dictionaries relevant for it.
+ * 
+ * Profile of message is chosen by (first found):
+ *   player (`Players`, names or UUIDs), world (`Worlds`),
+ *   channel (`Channels` - chat, sign, book, anvil, command),
+ *   client language of player (`Locales`, e.g. `cs_cz` or just `cs`).
+ * Messages with no profile are checked only with common lists.
+ * 
+ * Instances are immutable, replaced as whole on reload.
+ */
+public class Profiles {
+	
+	/**
+	 * No profiles
+	 */
+	public static final Profiles EMPTY = new Profiles(Collections.<Profile>emptyList());
+	
+	/**
+	 * `Player#getLocale()`, `null` if server is older than 1.12. Called by
+	 * reflection, so plugin builds against older API
+	 */
+	protected static final Method GET_LOCALE = Profiles.getLocaleMethod();
+	
+	/**
+	 * Profiles in config order
+	 */
+	protected final List<Profile> list;
+	
+	protected final Map<String,Profile> byPlayer = new HashMap<String,Profile>();
+	protected final Map<String,Profile> byWorld = new HashMap<String,Profile>();
+	protected final Map<String,Profile> byChannel = new HashMap<String,Profile>();
+	protected final Map<String,Profile> byLocale = new HashMap<String,Profile>();
+	
+	/**
+	 * @param list Profiles, earlier ones win when more of them match
+	 */
+	public Profiles(List<Profile> list) {
+		this.list = Collections.unmodifiableList(new ArrayList<Profile>(list));
+		for(Profile prof : this.list) {
+			Profiles.index(this.byPlayer, prof.players, prof);
+			Profiles.index(this.byWorld, prof.worlds, prof);
+			Profiles.index(this.byChannel, prof.channels, prof);
+			Profiles.index(this.byLocale, prof.locales, prof);
+		}
+	}
+	
+	protected static void index(Map<String,Profile> map, Collection<String> keys, Profile prof) {
+		for(String key : keys) {
+			key = key.toLowerCase(Locale.ROOT);
+			if(!map.containsKey(key)) {
+				map.put(key, prof);
+			}
+		}
+	}
+	
+	/**
+	 * @return Profiles in config order
+	 */
+	public List<Profile> getProfiles() {
+		return this.list;
+	}
+	
+	/**
+	 * @return `true` if there are no profiles
+	 */
+	public boolean isEmpty() {
+		return this.list.isEmpty();
+	}
+	
+	/**
+	 * @param p Player, may be `null`
+	 * @param channel Channel (chat, sign, book, anvil, command)
+	 * 
+	 * @return Profile for message or `null` if it should be checked only with common lists
+	 */
+	public Profile get(Player p, String channel) {
+		if(this.list.isEmpty()) {
+			return null;
+		}
+		Profile ret;
+		if(p != null) {
+			if(!this.byPlayer.isEmpty()) {
+				ret = this.byPlayer.get(p.getName().toLowerCase(Locale.ROOT));
+				if(ret == null) {
+					ret = this.byPlayer.get(p.getUniqueId().toString());
+				}
+				if(ret != null) {
+					return ret;
+				}
+			}
+			if(!this.byWorld.isEmpty()) {
+				World world = p.getWorld();
+				ret = (world == null) ? null : this.byWorld.get(world.getName().toLowerCase(Locale.ROOT));
+				if(ret != null) {
+					return ret;
+				}
+			}
+		}
+		if(!this.byChannel.isEmpty() && (ret = this.byChannel.get(channel)) != null) {
+			return ret;
+		}
+		if(p != null && !this.byLocale.isEmpty() && GET_LOCALE != null) {
+			String locale = Profiles.getLocale(p);
+			if(locale == null) {
+				return null;
+			}
+			locale = locale.toLowerCase(Locale.ROOT);
+			ret = this.byLocale.get(locale);
+			int sep = locale.indexOf('_');
+			if(ret == null && sep != -1) {
+				ret = this.byLocale.get(locale.substring(0, sep));
+			}
+			return ret;
+		}
+		return null;
+	}
+	
+	/**
+	 * @return {@link Profiles#GET_LOCALE}
+	 */
+	protected static Method getLocaleMethod() {
+		try {
+			return Player.class.getMethod("getLocale");
+		} catch(NoSuchMethodException nsme) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @param p Player
+	 * 
+	 * @return Client language of player, `null` if unknown
+	 */
+	protected static String getLocale(Player p) {
+		try {
+			return (String) GET_LOCALE.invoke(p);
+		} catch(IllegalAccessException iae) {
+			return null;
+		} catch(InvocationTargetException ite) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Use same cache settings and metrics as `base` in all profiles
+	 * 
+	 * @param base Checker with common lists
+	 */
+	public void configure(AntiSwear base) {
+		ResultCache cache = base.getCache();
+		for(Profile prof : this.list) {
+			AntiSwear as = prof.aswear;
+			as.setMetrics(base.getMetrics());
+			ResultCache cur = as.getCache();
+			if(cache == null) {
+				as.setCache(null);
+			} else if(cur == null || cur.getSize() != cache.getSize() || cur.getTime() != cache.getTime()) {
+				as.setCache(new ResultCache(cache.getSize(), cache.getTime()));
+			}
+		}
+	}
+	
+	/**
+	 * Profile of filter
+	 */
+	public static class Profile {
+		
+		/**
+		 * Name of profile (key in config)
+		 */
+		public final String name;
+		
+		/**
+		 * Checker with common lists and lists of this profile
+		 */
+		public final AntiSwear aswear;
+		
+		public final List<String> players;
+		public final List<String> worlds;
+		public final List<String> channels;
+		public final List<String> locales;
+		
+		/**
+		 * @param name Name of profile
+		 * @param aswear Checker with common lists and lists of this profile
+		 * @param sec Section of profile with `Players`, `Worlds`, `Channels` and `Locales`
+		 */
+		public Profile(String name, AntiSwear aswear, ConfigurationSection sec) {
+			this.name = name;
+			this.aswear = aswear;
+			this.players = sec.getStringList("Players");
+			this.worlds = sec.getStringList("Worlds");
+			this.channels = sec.getStringList("Channels");
+			this.locales = sec.getStringList("Locales");
+		}
+		
+		@Override
+		public String toString() {
+			return this.name;
+		}
+	
+	}
+	
+}
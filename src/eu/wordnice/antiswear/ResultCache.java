@@ -0,0 +1,445 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of processed messages, for spam of same messages
+ * 
+ * Raw messages are mapped to result of {@link AntiSwear#processString(String)}.
+ * Edited messages (skeletons) are mapped to matched swears, so other spellings
+ * of same message skip matching too. Skeletons are not cached when any
+ * whitelisted word was matched or filter has fuzzy words, because whitelist
+ * and typos depend on original text.
+ * 
+ * Entries are valid only for filter, which created them, and expire
+ * after given time. Cache is split to segments with own lock and
+ * least recently used entries are evicted first.
+ */
+public class ResultCache {
+	
+	/**
+	 * Cached result of clean message
+	 */
+	public static final String CLEAN = new String("");
+	
+	/**
+	 * Messages longer than this are not cached
+	 */
+	public static int MAX_KEY = 256;
+	
+	/**
+	 * Raw messages
+	 */
+	protected final Segment[] raw;
+	
+	/**
+	 * Skeletons
+	 */
+	protected final Segment[] skeletons;
+	
+	/**
+	 * Time to live in nanoseconds, `0` = no limit
+	 */
+	protected final long ttl;
+	
+	/**
+	 * Maximal number of entries (raw and skeletons separately)
+	 */
+	protected final int size;
+	
+	protected final AtomicLong hits = new AtomicLong();
+	protected final AtomicLong skeletonHits = new AtomicLong();
+	protected final AtomicLong misses = new AtomicLong();
+	protected final AtomicLong evictions = new AtomicLong();
+	protected final AtomicLong expirations = new AtomicLong();
+	protected final AtomicLong invalidations = new AtomicLong();
+	
+	/**
+	 * @param size Maximal number of raw messages (and also skeletons)
+	 * @param ttl Time to live in milliseconds, `0` = no limit
+	 */
+	public ResultCache(int size, long ttl) {
+		if(size <= 0) {
+			throw new IllegalArgumentException("Size must be positive!");
+		}
+		this.size = size;
+		this.ttl = ttl * 1000000L;
+		int segments = Math.min(16, Integer.highestOneBit(size));
+		int per = (size + segments - 1) / segments;
+		this.raw = new Segment[segments];
+		this.skeletons = new Segment[segments];
+		for(int i = 0; i < segments; i++) {
+			this.raw[i] = new Segment(per, this.evictions);
+			this.skeletons[i] = new Segment(per, this.evictions);
+		}
+	}
+	
+	/**
+	 * @param in Raw message
+	 * @param filter Current filter
+	 * 
+	 * @return Cached result, {@link ResultCache#CLEAN} or `null` if not cached
+	 */
+	public String getRaw(String in, CompiledFilter filter) {
+		if(in.length() > MAX_KEY) {
+			return null;
+		}
+		Object ret = this.get(this.raw, in, filter);
+		if(ret != null) {
+			this.hits.incrementAndGet();
+		}
+		return (String) ret;
+	}
+	
+	/**
+	 * @param in Raw message
+	 * @param filter Filter which processed message
+	 * @param result Result, `null` for clean message
+	 */
+	public void putRaw(String in, CompiledFilter filter, String result) {
+		if(in.length() <= MAX_KEY) {
+			this.put(this.raw, in, filter, (result == null) ? CLEAN : result);
+		}
+	}
+	
+	/**
+	 * @param skeleton Edited message
+	 * @param filter Current filter
+	 * 
+	 * @return Cached swears or `null` if not cached. Counts miss.
+	 */
+	public Spans getSkeleton(String skeleton, CompiledFilter filter) {
+		Object ret = this.get(this.skeletons, skeleton, filter);
+		if(ret == null) {
+			this.misses.incrementAndGet();
+		} else {
+			this.skeletonHits.incrementAndGet();
+		}
+		return (Spans) ret;
+	}
+	
+	/**
+	 * @param skeleton Edited message
+	 * @param filter Filter which matched swears
+	 * @param spans Matched swears
+	 */
+	public void putSkeleton(String skeleton, CompiledFilter filter, Spans spans) {
+		this.put(this.skeletons, skeleton, filter, spans);
+	}
+	
+	protected Object get(Segment[] segs, String key, CompiledFilter filter) {
+		Segment seg = segs[key.hashCode() & (segs.length - 1)];
+		synchronized(seg) {
+			Cached ent = seg.get(key);
+			if(ent == null) {
+				return null;
+			}
+			if(ent.filter != filter) {
+				seg.remove(key);
+				this.invalidations.incrementAndGet();
+				return null;
+			}
+			if(this.ttl != 0 && System.nanoTime() - ent.time > this.ttl) {
+				seg.remove(key);
+				this.expirations.incrementAndGet();
+				return null;
+			}
+			return ent.value;
+		}
+	}
+	
+	protected void put(Segment[] segs, String key, CompiledFilter filter, Object value) {
+		Cached ent = new Cached(filter, value, (this.ttl == 0) ? 0 : System.nanoTime());
+		Segment seg = segs[key.hashCode() & (segs.length - 1)];
+		synchronized(seg) {
+			seg.put(key, ent);
+		}
+	}
+	
+	/**
+	 * Remove all entries, called when filter is replaced
+	 */
+	public void clear() {
+		this.clear(this.raw);
+		this.clear(this.skeletons);
+	}
+	
+	protected void clear(Segment[] segs) {
+		for(Segment seg : segs) {
+			synchronized(seg) {
+				this.invalidations.addAndGet(seg.size());
+				seg.clear();
+			}
+		}
+	}
+	
+	/**
+	 * @return Maximal number of raw messages (and also skeletons)
+	 */
+	public int getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * @return Time to live in milliseconds, `0` = no limit
+	 */
+	public long getTime() {
+		return this.ttl / 1000000L;
+	}
+	
+	/**
+	 * @return Number of cached raw messages and skeletons
+	 */
+	public int getEntries() {
+		int ret = 0;
+		for(int i = 0; i < this.raw.length; i++) {
+			synchronized(this.raw[i]) {
+				ret += this.raw[i].size();
+			}
+			synchronized(this.skeletons[i]) {
+				ret += this.skeletons[i].size();
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * @return Messages found by raw text
+	 */
+	public long getHits() {
+		return this.hits.get();
+	}
+	
+	/**
+	 * @return Messages found by skeleton
+	 */
+	public long getSkeletonHits() {
+		return this.skeletonHits.get();
+	}
+	
+	/**
+	 * @return Messages not found, which were matched
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+	
+	/**
+	 * @return Entries removed because cache was full
+	 */
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+	
+	/**
+	 * @return Entries removed because they were too old
+	 */
+	public long getExpirations() {
+		return this.expirations.get();
+	}
+	
+	/**
+	 * @return Entries removed because filter was changed
+	 */
+	public long getInvalidations() {
+		return this.invalidations.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "entries: " + this.getEntries() + "/" + (this.size * 2)
+				+ ", hits: " + this.getHits() + ", skeleton hits: " + this.getSkeletonHits()
+				+ ", misses: " + this.getMisses() + ", evictions: " + this.getEvictions()
+				+ ", expirations: " + this.getExpirations() + ", invalidations: " + this.getInvalidations();
+	}
+	
+	/**
+	 * Cached value
+	 */
+	protected static class Cached {
+		
+		public final CompiledFilter filter;
+		public final Object value;
+		public final long time;
+		
+		public Cached(CompiledFilter filter, Object value, long time) {
+			this.filter = filter;
+			this.value = value;
+			this.time = time;
+		}
+	
+	}
+	
+	/**
+	 * Part of cache with least recently used order
+	 */
+	protected static class Segment extends LinkedHashMap<String,Cached> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		protected final int max;
+		protected final AtomicLong evictions;
+		
+		public Segment(int max, AtomicLong evictions) {
+			super(16, 0.75f, true);
+			this.max = max;
+			this.evictions = evictions;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,Cached> eldest) {
+			if(this.size() > this.max) {
+				this.evictions.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	
+	}
+	
+	/**
+	 * Swears matched in edited message
+	 */
+	public static class Spans {
+		
+		/**
+		 * No swears
+		 */
+		public static final Spans NONE = new Spans(new int[0], new char[0][]);
+		
+		/**
+		 * Pairs of index of first edited character and length
+		 */
+		protected final int[] spans;
+		
+		/**
+		 * Replacements
+		 */
+		protected final char[][] replace;
+		
+		public Spans(int[] spans, char[][] replace) {
+			this.spans = spans;
+			this.replace = replace;
+		}
+		
+		/**
+		 * @return `true` If there are no swears
+		 */
+		public boolean isEmpty() {
+			return this.replace.length == 0;
+		}
+		
+		/**
+		 * Replace swears in original string
+		 * 
+		 * @param in Original string
+		 * @param in_off Offset of `in` string
+		 * @param in_len Length of `in` string
+		 * @param indexes See {@link AntiSwear#doReplace(char[], int, int, char[], int, int, int[], int[], int)}
+		 * @param firsts See {@link AntiSwear#doReplace(char[], int, int, char[], int, int, int[], int[], int)}
+		 * @param ind_off Offset of indexes and firsts parameters
+		 * 
+		 * @return New string or `null` if there are no swears
+		 */
+		public String apply(char[] in, int in_off, int in_len, int[] indexes, int[] firsts, int ind_off) {
+			if(this.isEmpty()) {
+				return null;
+			}
+			if(firsts == null) {
+				firsts = indexes;
+			}
+			int in_end = in_off + in_len;
+			StringBuilder sb = new StringBuilder(in_len + 16);
+			int startfrom = in_off;
+			for(int i = 0, n = this.replace.length; i < n; i++) {
+				int oeoff = this.spans[i * 2];
+				int start = firsts[ind_off + oeoff];
+				int end = indexes[ind_off + oeoff + this.spans[i * 2 + 1] - 1];
+				char[] rep = this.replace[i];
+				if(start >= startfrom) {
+					sb.append(in, startfrom, (start - startfrom));
+					sb.append(rep);
+				} else if(startfrom - start < rep.length) {
+					sb.append(rep, startfrom - start, rep.length - (startfrom - start));
+				}
+				startfrom = end + 1;
+			}
+			sb.append(in, startfrom, (in_end - startfrom));
+			return sb.toString();
+		}
+	
+	}
+	
+	/**
+	 * Collects swears matched by {@link AntiSwear#doReplace(CompiledFilter, char[], int, int,
+	 * char[], int, int, int[], int[], int, Recorder)}, reused by one thread
+	 */
+	public static class Recorder {
+		
+		protected int[] spans = new int[16];
+		protected char[][] replace = new char[8][];
+		protected int count = 0;
+		
+		/**
+		 * Whitelist was checked, result depends on original text
+		 */
+		protected boolean whitelisted = false;
+		
+		public void reset() {
+			this.count = 0;
+			this.whitelisted = false;
+		}
+		
+		public void add(int start, int len, char[] replace) {
+			if(this.count == this.replace.length) {
+				this.replace = Arrays.copyOf(this.replace, this.count * 2);
+				this.spans = Arrays.copyOf(this.spans, this.count * 4);
+			}
+			this.spans[this.count * 2] = start;
+			this.spans[this.count * 2 + 1] = len;
+			this.replace[this.count++] = replace;
+		}
+		
+		/**
+		 * @return Recorded swears or `null` when they depend on original text
+		 */
+		public Spans toSpans() {
+			if(this.whitelisted) {
+				return null;
+			}
+			if(this.count == 0) {
+				return Spans.NONE;
+			}
+			return new Spans(Arrays.copyOf(this.spans, this.count * 2), Arrays.copyOf(this.replace, this.count));
+		}
+	
+	}
+	
+}
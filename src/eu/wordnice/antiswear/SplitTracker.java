@@ -0,0 +1,258 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds swears split to more messages of one player (`fu` / `ck`, or one
+ * letter per message)
+ * 
+ * For every player only state of automaton and last edited character
+ * (for joining repeated characters) are kept, so next message continues
+ * matching where previous one ended, without buffering old messages. State
+ * is forgotten after {@link SplitTracker#getTime()}, when filter is changed
+ * or by {@link SplitTracker#forget(Object)}. Part of swear in current message
+ * is censored (previous message is already sent).
+ * 
+ * States are in concurrent map and every one is locked only by messages
+ * of its player, so players never wait for each other. Whitelisted words
+ * are recognized only when they end together with swear (`bad` / `ass`),
+ * whitelist flags and words with typos ({@link FuzzyMatcher}) are not
+ * checked across messages.
+ */
+public class SplitTracker {
+	
+	/**
+	 * States of players
+	 */
+	protected final ConcurrentHashMap<Object,State> states = new ConcurrentHashMap<Object,State>();
+	
+	/**
+	 * Time after which state is forgotten, milliseconds, 0 = disabled
+	 */
+	protected volatile long time;
+	
+	/**
+	 * @param time Time after which state is forgotten, milliseconds, 0 = disabled
+	 */
+	public SplitTracker(long time) {
+		this.time = time;
+	}
+	
+	/**
+	 * @return Time after which state is forgotten, milliseconds, 0 = disabled
+	 */
+	public long getTime() {
+		return this.time;
+	}
+	
+	/**
+	 * @param time Time after which state is forgotten, milliseconds, 0 = disabled
+	 */
+	public void setTime(long time) {
+		this.time = time;
+		if(time == 0) {
+			this.clear();
+		}
+	}
+	
+	/**
+	 * @return Number of remembered players
+	 */
+	public int size() {
+		return this.states.size();
+	}
+	
+	/**
+	 * Forget all players
+	 */
+	public void clear() {
+		this.states.clear();
+	}
+	
+	/**
+	 * Forget player, e.g. on quit
+	 * 
+	 * @param key Player
+	 */
+	public void forget(Object key) {
+		this.states.remove(key);
+	}
+	
+	/**
+	 * Continue matching with next message of player. Swears only in this
+	 * message are not searched, use {@link AntiSwear#processString(String)}
+	 * on returned or original message
+	 * 
+	 * @param key Player (e.g. UUID)
+	 * @param aswear AntiSwear, which will check message
+	 * @param in Message
+	 * 
+	 * @return Message with part of swear started in previous message
+	 *         censored, or `null` if there is none (or tracking is disabled)
+	 */
+	public String process(Object key, AntiSwear aswear, String in) {
+		long time = this.time;
+		if(time == 0) {
+			return null;
+		}
+		State st = this.states.get(key);
+		if(st == null) {
+			st = new State();
+			State old = this.states.putIfAbsent(key, st);
+			if(old != null) {
+				st = old;
+			}
+		}
+		return st.next(aswear.getFilter(), in, System.nanoTime() / 1000000L, time);
+	}
+	
+	/**
+	 * Carried state of one player
+	 */
+	protected static class State {
+		
+		/**
+		 * Filter, which states belong to
+		 */
+		protected CompiledFilter cmp = null;
+		
+		/**
+		 * State of matcher and of matcher of words added at runtime
+		 */
+		protected int state = AhoCorasick.ROOT;
+		protected int addedState = AhoCorasick.ROOT;
+		
+		/**
+		 * Last edited character, 0 if none
+		 */
+		protected char prev = 0;
+		
+		/**
+		 * Time of last message, milliseconds
+		 */
+		protected long time = 0;
+		
+		/**
+		 * @param cmp Current filter
+		 * @param in Message
+		 * @param now Current time, milliseconds
+		 * @param expire Time after which state is forgotten, milliseconds
+		 * 
+		 * @return Message with censored part of swear, or `null`
+		 */
+		public synchronized String next(CompiledFilter cmp, String in, long now, long expire) {
+			if(cmp != this.cmp || now - this.time > expire) {
+				this.cmp = cmp;
+				this.state = AhoCorasick.ROOT;
+				this.addedState = AhoCorasick.ROOT;
+				this.prev = 0;
+			}
+			this.time = now;
+			
+			int n = in.length();
+			AntiSwear.Scratch sc = AntiSwear.Scratch.get(n);
+			char[] chars = sc.chars;
+			in.getChars(0, n, chars, 0);
+			char[] out = sc.out;
+			int[] indexes = sc.indexes;
+			Transducer tr = cmp.substitutions;
+			int len = (tr == null) ? AntiSwear.removeTyposSlang(out, chars, 0, n, indexes, 0)
+					: tr.removeTyposSlang(out, chars, 0, n, indexes, sc.firsts, 0);
+			if(len == 0) {
+				return null;
+			}
+			//- Repeated character joins with previous message
+			int from = (out[0] == this.prev) ? 1 : 0;
+			
+			int cut = -1; //- Last edited character of split swear
+			AhoCorasick ac = cmp.matcher;
+			AhoCorasick added = cmp.addedMatcher;
+			int st = this.state;
+			int ast = this.addedState;
+			boolean carried = (st != AhoCorasick.ROOT || ast != AhoCorasick.ROOT);
+			int longest = Math.max(ac.getLongest(), (added == null) ? 0 : added.getLongest());
+			int i = from;
+			//- Only matches ending in first `longest` characters can start in previous message
+			for(int end = carried ? Math.min(len, from + longest) : from; i < end; i++) {
+				char c = out[i];
+				st = ac.next(st, c);
+				if(added != null) {
+					ast = added.next(ast, c);
+				}
+				int swear = Integer.MAX_VALUE; //- Start of longest split swear ending here
+				int allow = Integer.MAX_VALUE; //- Start of longest whitelisted word ending here
+				for(int mt = ac.firstMatch(st); mt != -1; mt = ac.nextMatch(mt)) {
+					int pat = ac.pattern(mt);
+					int start = i - ac.length(pat) + 1;
+					if(cmp.hasAllow(pat)) {
+						allow = Math.min(allow, start);
+					}
+					if(start < from && cmp.replacement(pat) != null) {
+						swear = Math.min(swear, start);
+					}
+				}
+				if(added != null) {
+					for(int mt = added.firstMatch(ast); mt != -1; mt = added.nextMatch(mt)) {
+						int start = i - added.length(added.pattern(mt)) + 1;
+						if(start < from) {
+							swear = Math.min(swear, start);
+						}
+					}
+				}
+				if(swear != Integer.MAX_VALUE && allow > swear) {
+					cut = i;
+				}
+			}
+			//- State is longest suffix which is prefix of pattern, so it depends only on last `longest` characters
+			if(len - i > longest) {
+				i = len - longest;
+				st = AhoCorasick.ROOT;
+				ast = AhoCorasick.ROOT;
+			}
+			for(; i < len; i++) {
+				st = ac.next(st, out[i]);
+				if(added != null) {
+					ast = added.next(ast, out[i]);
+				}
+			}
+			this.state = st;
+			this.addedState = ast;
+			this.prev = out[len - 1];
+			if(cut == -1) {
+				return null;
+			}
+			for(int p = 0, end = indexes[cut]; p <= end; p++) {
+				if(AntiSwear.isKept(chars[p])) {
+					chars[p] = '*';
+				}
+			}
+			return new String(chars, 0, n);
+		}
+	
+	}
+	
+}
@@ -0,0 +1,630 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Incremental {@link AntiSwear#processString(String)} for long texts
+ * (books, documents, log tails) read in chunks from Reader or CharBuffer
+ * 
+ * Edited characters, state of automaton and last character (for joining
+ * repeated characters) are kept between chunks, so swears and whitelisted
+ * words split between chunks are found. Swears are reported as soon as no
+ * longer or whitelisted word can cover them. Only text which may still be
+ * matched is buffered - around the longest blacklisted and whitelisted
+ * word, so memory does not depend on length of input.
+ * 
+ * Results are same as of processString on whole text, except runs of
+ * ignored or repeated characters longer than {@link StreamScanner#MAX_WINDOW},
+ * which break words.
+ */
+public class StreamScanner {
+	
+	/**
+	 * Receives scanned text in order of input
+	 */
+	public static interface Listener {
+		
+		/**
+		 * Part of text without swears
+		 */
+		public void text(char[] buf, int off, int len) throws IOException;
+		
+		/**
+		 * Swear, which should be replaced
+		 * 
+		 * @param start Index of first replaced character of input
+		 * @param end Index after last replaced character
+		 * @param replacement Replacement
+		 */
+		public void swear(long start, long end, char[] replacement) throws IOException;
+	
+	}
+	
+	/**
+	 * Most characters buffered. When text which may still be matched
+	 * gets longer, words are broken
+	 */
+	public static int MAX_WINDOW = 65536;
+	
+	protected final CompiledFilter cmp;
+	protected final Transducer tr;
+	protected final char[] fold;
+	protected final Listener listener;
+	
+	/**
+	 * Longest blacklisted or whitelisted edited word
+	 */
+	protected final int maxLength;
+	
+	/**
+	 * Original characters around matched word needed by whitelist
+	 */
+	protected final int context;
+	
+	/**
+	 * Most characters buffered
+	 */
+	protected final int window;
+	
+	/**
+	 * Original text. As in processString, it starts and ends with space,
+	 * so index in input is index here minus one
+	 */
+	protected char[] buf = new char[1024];
+	
+	/**
+	 * Index of `buf[0]` in text
+	 */
+	protected long base = 0;
+	
+	protected int fill = 0;
+	
+	/**
+	 * Next character to edit, in `buf`
+	 */
+	protected int cur = 0;
+	
+	/**
+	 * First character not passed to listener
+	 */
+	protected long written = 1;
+	
+	/**
+	 * Index of trailing space, `-1` until finished
+	 */
+	protected long end = -1;
+	
+	/**
+	 * Edited characters - index of first and last original character
+	 * as `firsts` and `indexes` of processString, last character of previous
+	 * edited character and first kept character after it (`-1` if none)
+	 */
+	protected long[] firsts = new long[64];
+	protected long[] lasts = new long[64];
+	protected long[] prevs = new long[64];
+	protected long[] kepts = new long[64];
+	
+	/**
+	 * Index of first buffered edited character
+	 */
+	protected long ebase = 0;
+	
+	protected int ecount = 0;
+	
+	/**
+	 * Last edited character, 0 after break
+	 */
+	protected char prev = 0;
+	
+	/**
+	 * Last original character of last edited character
+	 */
+	protected long lastIndex = -1;
+	
+	/**
+	 * First kept character after `lastIndex`, or `-1`
+	 */
+	protected long gapKept = -1;
+	
+	protected int state = AhoCorasick.ROOT;
+	protected int addedState = AhoCorasick.ROOT;
+	
+	/**
+	 * Found matches - start (edited character) and pattern
+	 */
+	protected long[] mstarts = new long[64];
+	protected int[] mpats = new int[64];
+	protected int mcount = 0;
+	
+	/**
+	 * Next edited character to decide
+	 */
+	protected long next = 0;
+	
+	/**
+	 * Matches starting before this were checked against whitelist
+	 */
+	protected long scanned = 0;
+	
+	/**
+	 * Last edited character covered by whitelisted word
+	 */
+	protected long reach = -1;
+	
+	/**
+	 * Last edited character covered by replaced swear
+	 */
+	protected long covered = -1;
+	
+	protected long swears = 0;
+	
+	/**
+	 * Scan with current filter of `aswear`
+	 */
+	public StreamScanner(AntiSwear aswear, Listener listener) {
+		this(aswear.getFilter(), listener);
+	}
+	
+	public StreamScanner(CompiledFilter cmp, Listener listener) {
+		this.cmp = cmp;
+		this.tr = cmp.substitutions;
+		this.fold = (this.tr == null) ? AntiSwear.FOLD : this.tr.fold;
+		this.listener = listener;
+		int max = StreamScanner.longest(cmp.matcher);
+		if(cmp.addedMatcher != null) {
+			max = Math.max(max, StreamScanner.longest(cmp.addedMatcher));
+		}
+		this.maxLength = Math.max(1, max);
+		int ctx = 1;
+		for(char[] wh : cmp.whitelist) {
+			ctx = Math.max(ctx, wh.length + 1);
+		}
+		this.context = ctx;
+		this.window = Math.max(MAX_WINDOW, 8 * (this.maxLength + ctx + ((this.tr == null) ? 1 : this.tr.maxLength)));
+		this.buf[this.fill++] = ' ';
+	}
+	
+	/**
+	 * @return Length of longest pattern
+	 */
+	protected static int longest(AhoCorasick ac) {
+		return ac.getLongest();
+	}
+	
+	/**
+	 * @return Number of swears found
+	 */
+	public long getSwears() {
+		return this.swears;
+	}
+	
+	/**
+	 * Scan next chunk
+	 */
+	public void feed(char[] chunk, int off, int len) throws IOException {
+		while(len > 0) {
+			int n = this.reserve(len);
+			System.arraycopy(chunk, off, this.buf, this.fill, n);
+			this.fill += n;
+			off += n;
+			len -= n;
+			this.process();
+		}
+	}
+	
+	/**
+	 * Scan next chunk
+	 */
+	public void feed(CharSequence chunk) throws IOException {
+		for(int off = 0, len = chunk.length(); off < len;) {
+			int n = this.reserve(len - off);
+			if(chunk instanceof String) {
+				((String) chunk).getChars(off, off + n, this.buf, this.fill);
+			} else {
+				for(int i = 0; i < n; i++) {
+					this.buf[this.fill + i] = chunk.charAt(off + i);
+				}
+			}
+			this.fill += n;
+			off += n;
+			this.process();
+		}
+	}
+	
+	/**
+	 * Scan remaining characters of buffer
+	 */
+	public void feed(CharBuffer chunk) throws IOException {
+		while(chunk.hasRemaining()) {
+			int n = this.reserve(chunk.remaining());
+			chunk.get(this.buf, this.fill, n);
+			this.fill += n;
+			this.process();
+		}
+	}
+	
+	/**
+	 * Scan whole reader and {@link StreamScanner#finish()}. Reader is not closed
+	 */
+	public void scan(Reader in) throws IOException {
+		char[] chunk = new char[4096];
+		int n;
+		while((n = in.read(chunk)) != -1) {
+			this.feed(chunk, 0, n);
+		}
+		this.finish();
+	}
+	
+	/**
+	 * End of text - decide remaining characters
+	 */
+	public void finish() throws IOException {
+		if(this.end != -1) {
+			return;
+		}
+		this.reserve(1);
+		this.end = this.base + this.fill;
+		this.buf[this.fill++] = ' ';
+		this.edit(true);
+		this.decide(true);
+		this.text(this.end);
+	}
+	
+	/**
+	 * Censor text from reader
+	 * 
+	 * @param aswear AntiSwear
+	 * @param in Text, not closed
+	 * @param out Censored text, not closed
+	 * 
+	 * @return Number of swears
+	 */
+	public static long censor(AntiSwear aswear, Reader in, final Writer out) throws IOException {
+		StreamScanner sc = new StreamScanner(aswear, new Listener() {
+			
+			@Override
+			public void text(char[] buf, int off, int len) throws IOException {
+				out.write(buf, off, len);
+			}
+			
+			@Override
+			public void swear(long start, long end, char[] replacement) throws IOException {
+				out.write(replacement);
+			}
+		
+		});
+		sc.scan(in);
+		return sc.getSwears();
+	}
+	
+	/**
+	 * Make space in buffer
+	 * 
+	 * @return Number of characters, which can be added (1 - len)
+	 */
+	protected int reserve(int len) throws IOException {
+		if(this.end != -1) {
+			throw new IllegalStateException("Scanner is finished!");
+		}
+		if(this.fill == this.buf.length) {
+			this.compact();
+		}
+		if(this.fill == this.buf.length) {
+			if(this.buf.length < this.window) {
+				this.buf = Arrays.copyOf(this.buf, Math.min(this.window, this.buf.length * 2));
+			} else {
+				this.flush();
+				this.compact();
+			}
+		}
+		return Math.min(len, this.buf.length - this.fill);
+	}
+	
+	/**
+	 * Drop text and edited characters which can't be matched anymore
+	 */
+	protected void compact() {
+		long keep = Math.min(this.written, this.base + this.cur);
+		if(this.gapKept != -1) {
+			keep = Math.min(keep, this.gapKept);
+		}
+		int from = (int) (this.scanned - this.ebase);
+		for(int i = from; i < this.ecount; i++) {
+			keep = Math.min(keep, this.from(i));
+		}
+		int shift = (int) (keep - this.context - this.base);
+		if(shift > 0) {
+			System.arraycopy(this.buf, shift, this.buf, 0, this.fill - shift);
+			this.fill -= shift;
+			this.cur -= shift;
+			this.base += shift;
+		}
+		if(from > 0) {
+			int n = this.ecount - from;
+			System.arraycopy(this.firsts, from, this.firsts, 0, n);
+			System.arraycopy(this.lasts, from, this.lasts, 0, n);
+			System.arraycopy(this.prevs, from, this.prevs, 0, n);
+			System.arraycopy(this.kepts, from, this.kepts, 0, n);
+			this.ecount = n;
+			this.ebase = this.scanned;
+		}
+		int m = 0;
+		for(int k = 0; k < this.mcount; k++) {
+			if(this.mstarts[k] >= this.scanned) {
+				this.mstarts[m] = this.mstarts[k];
+				this.mpats[m++] = this.mpats[k];
+			}
+		}
+		this.mcount = m;
+	}
+	
+	/**
+	 * Break words - decide all edited characters now
+	 */
+	protected void flush() throws IOException {
+		this.decide(true);
+		this.text(this.base + this.cur);
+		this.prev = 0;
+		this.gapKept = -1;
+		this.state = AhoCorasick.ROOT;
+		this.addedState = AhoCorasick.ROOT;
+	}
+	
+	protected void process() throws IOException {
+		this.edit(false);
+		this.decide(false);
+		this.text((this.next < this.ebase + this.ecount) 
+				? this.firsts[(int) (this.next - this.ebase)] : (this.base + this.cur));
+	}
+	
+	/**
+	 * Edit buffered characters, same as {@link Transducer#removeTyposSlang(char[], char[], int, int, int[], int[], int)}
+	 * or {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)}
+	 * 
+	 * @param all Edit also characters, which may start substitution
+	 *        longer than rest of buffer
+	 */
+	protected void edit(boolean all) {
+		char[] buf = this.buf;
+		Transducer tr = this.tr;
+		while(this.cur < this.fill) {
+			char c = buf[this.cur];
+			int first = this.cur;
+			int last = first;
+			char[] emit = null;
+			if(tr != null && tr.starts[c]) {
+				if(!all && this.fill - first < tr.maxLength) {
+					break;
+				}
+				int node = 0;
+				int max = Math.min(this.fill, first + tr.maxLength);
+				for(int p = first; p < max; p++) {
+					node = tr.child(node, Character.toLowerCase(buf[p]));
+					if(node == -1) {
+						break;
+					}
+					if(tr.outputs[node] != null) {
+						emit = tr.outputs[node];
+						last = p;
+					}
+				}
+			}
+			this.cur = last + 1;
+			for(int p = first; p <= last && this.gapKept == -1; p++) {
+				if(AntiSwear.isKept(buf[p])) {
+					this.gapKept = this.base + p;
+				}
+			}
+			if(emit == null) {
+				c = this.fold[c];
+				if(c != 0) {
+					this.add(c, this.base + first, this.base + last);
+				}
+			} else {
+				for(int i = 0, n = emit.length; i < n; i++) {
+					this.add(emit[i], this.base + first, this.base + last);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Add edited character and find matches ending with it
+	 */
+	protected void add(char c, long first, long last) {
+		if(c == this.prev) {
+			int i = this.ecount - 1;
+			this.lasts[i] = last;
+			this.firsts[i] = (this.tr == null) ? last : first;
+			if(this.kepts[i] == -1) {
+				this.kepts[i] = this.gapKept;
+			}
+			this.gapKept = -1;
+			this.lastIndex = last;
+			return;
+		}
+		int i = this.ecount;
+		if(i == this.lasts.length) {
+			this.firsts = Arrays.copyOf(this.firsts, i * 2);
+			this.lasts = Arrays.copyOf(this.lasts, i * 2);
+			this.prevs = Arrays.copyOf(this.prevs, i * 2);
+			this.kepts = Arrays.copyOf(this.kepts, i * 2);
+		}
+		this.firsts[i] = (this.tr == null) ? last : first;
+		this.lasts[i] = last;
+		this.prevs[i] = this.lastIndex;
+		this.kepts[i] = this.gapKept;
+		this.gapKept = -1;
+		this.lastIndex = last;
+		this.prev = c;
+		this.ecount++;
+		
+		long idx = this.ebase + i;
+		AhoCorasick ac = this.cmp.matcher;
+		this.state = ac.next(this.state, c);
+		for(int mt = ac.firstMatch(this.state); mt != -1; mt = ac.nextMatch(mt)) {
+			int pat = ac.pattern(mt);
+			this.match(idx - ac.length(pat) + 1, pat);
+		}
+		ac = this.cmp.addedMatcher;
+		if(ac != null) {
+			this.addedState = ac.next(this.addedState, c);
+			for(int mt = ac.firstMatch(this.addedState); mt != -1; mt = ac.nextMatch(mt)) {
+				int pat = ac.pattern(mt);
+				this.match(idx - ac.length(pat) + 1, pat + this.cmp.replace.size());
+			}
+		}
+	}
+	
+	protected void match(long start, int pat) {
+		if(this.mcount == this.mpats.length) {
+			this.mstarts = Arrays.copyOf(this.mstarts, this.mcount * 2);
+			this.mpats = Arrays.copyOf(this.mpats, this.mcount * 2);
+		}
+		this.mstarts[this.mcount] = start;
+		this.mpats[this.mcount++] = pat;
+	}
+	
+	/**
+	 * @param i Buffered edited character
+	 * 
+	 * @return First original character of edited character, see
+	 *         {@link AntiSwear#runStart(char[], int, int[], int, int)}
+	 */
+	protected long from(int i) {
+		long last = this.lasts[i];
+		long kept = this.kepts[i];
+		if(kept != -1 && kept < last) {
+			return kept;
+		}
+		long first = this.prevs[i] + 1;
+		return (first <= last) ? last : first;
+	}
+	
+	/**
+	 * Decide edited characters, same as 
+	 * {@link AntiSwear#doReplace(CompiledFilter, char[], int, int, char[], int, int, int[], int[], int)}
+	 * 
+	 * @param all Decide all characters, otherwise only those, which can't
+	 *        be changed by more text
+	 */
+	protected void decide(boolean all) throws IOException {
+		CompiledFilter cmp = this.cmp;
+		while(this.next < this.ebase + this.ecount) {
+			long p = this.next;
+			if(!all) {
+				//- All matches starting here are final
+				int e = (int) (p + this.maxLength - 1 - this.ebase);
+				if(e + 1 >= this.ecount || this.base + this.fill <= this.lasts[e] + this.context) {
+					break;
+				}
+			}
+			for(int k = 0; k < this.mcount; k++) {
+				long s = this.mstarts[k];
+				if(s < this.scanned || s > p) {
+					continue;
+				}
+				int pat = this.mpats[k];
+				long wend = s + cmp.length(pat) - 1;
+				if(wend > this.reach && this.isAllowed(pat, s, wend)) {
+					this.reach = wend;
+				}
+			}
+			this.scanned = p + 1;
+			
+			//- Longest blacklisted word not covered by whitelist
+			char[] replaceto = null;
+			int swearlen = 0;
+			for(int k = 0; k < this.mcount; k++) {
+				if(this.mstarts[k] != p) {
+					continue;
+				}
+				int pat = this.mpats[k];
+				int len = cmp.length(pat);
+				if(len <= swearlen || this.reach >= (p + len - 1) || this.covered >= (p + len - 1)) {
+					continue;
+				}
+				char[] rep = cmp.replacement(pat);
+				if(rep != null) {
+					replaceto = rep;
+					swearlen = len;
+				}
+			}
+			if(replaceto == null) {
+				this.next = p + 1;
+				continue;
+			}
+			long start = this.firsts[(int) (p - this.ebase)];
+			long stop = this.lasts[(int) (p + swearlen - 1 - this.ebase)];
+			this.text(start);
+			if(start >= this.written) {
+				this.listener.swear(start - 1, stop, replaceto);
+			} else if(this.written - start < replaceto.length) {
+				//- Overlaps previous swear, only rest is replaced
+				this.listener.swear(this.written - 1, stop, 
+						Arrays.copyOfRange(replaceto, (int) (this.written - start), replaceto.length));
+			}
+			this.written = Math.max(this.written, stop + 1);
+			this.swears++;
+			this.covered = p + swearlen - 1;
+			this.next = p + 1;
+		}
+	}
+	
+	/**
+	 * @return `true` If matched pattern is whitelisted
+	 */
+	protected boolean isAllowed(int pat, long start, long wend) {
+		if(!this.cmp.hasAllow(pat)) {
+			return false;
+		}
+		int i = (int) (start - this.ebase);
+		int j = (int) (wend - this.ebase);
+		long from = this.from(i);
+		long lastFrom = (i == j) ? from : this.from(j);
+		return this.cmp.isAllowed(pat, this.buf, 0, this.fill, (int) (from - this.base),
+				(int) (this.lasts[i] - this.base), (int) (lastFrom - this.base), (int) (this.lasts[j] - this.base));
+	}
+	
+	/**
+	 * Pass text up to given index to listener
+	 */
+	protected void text(long upto) throws IOException {
+		if(this.end != -1 && upto > this.end) {
+			upto = this.end;
+		}
+		if(upto > this.written) {
+			this.listener.text(this.buf, (int) (this.written - this.base), (int) (upto - this.written));
+			this.written = upto;
+		}
+	}
+	
+}
@@ -0,0 +1,445 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+/**
+ * Configurable substitutions extending {@link AntiSwear#FOLD}
+ * 
+ * Single character rules (homoglyphs like cyrillic `а`) are written
+ * into copy of fold table. Multi character rules (`|<`, `()`, `ph`) are
+ * compiled into trie, walked only from characters which start any rule,
+ * so work per input character is bounded by longest rule.
+ * Rules producing more characters than they consume are skipped.
+ * 
+ * Rules file contains one rule per line - `from ; to`, both sides may be
+ * text or code points as in Unicode confusables.txt (`0430 ; 0061`).
+ * Text after second `;` and lines starting with `#` are ignored
+ */
+public class Transducer {
+	
+	/**
+	 * Side of rule written as code points
+	 */
+	public static final Pattern CODEPOINTS = Pattern.compile("[0-9A-F]{4,6}( +[0-9A-F]{4,6})*");
+	
+	/**
+	 * Fold table with single character rules
+	 */
+	protected final char[] fold;
+	
+	/**
+	 * Characters which may start multi character rule
+	 */
+	protected final boolean[] starts;
+	
+	/**
+	 * Trie - first child of node, children are stored together sorted by character
+	 */
+	protected final int[] childFrom;
+	
+	/**
+	 * Trie - end of children of node
+	 */
+	protected final int[] childTo;
+	
+	/**
+	 * Trie - character of node (in lower case)
+	 */
+	protected final char[] label;
+	
+	/**
+	 * Trie - folded output of node, `null` if no rule ends here
+	 */
+	protected final char[][] outputs;
+	
+	/**
+	 * Length of longest rule
+	 */
+	protected final int maxLength;
+	
+	/**
+	 * Number of compiled rules
+	 */
+	protected final int rules;
+	
+	/**
+	 * Rules skipped, because they produce more characters than consume
+	 */
+	protected final List<String> skipped = new ArrayList<String>();
+	
+	/**
+	 * Compile rules
+	 * 
+	 * @param rules Map of rules - from, to. Sides are compared case-insensitive
+	 *        and output is folded by {@link AntiSwear#FOLD}. Rules producing
+	 *        more characters than consume are skipped, see {@link #getSkipped()}
+	 */
+	public Transducer(Map<String,String> rules) {
+		char[] fold = Arrays.copyOf(AntiSwear.FOLD, AntiSwear.FOLD.length);
+		Node root = new Node('\0');
+		int nrules = 0;
+		int nnodes = 1;
+		int maxlen = 1;
+		
+		Iterator<Entry<String,String>> it = rules.entrySet().iterator();
+		while(it.hasNext()) {
+			Entry<String,String> ent = it.next();
+			String from = ent.getKey();
+			String to = ent.getValue();
+			if(from == null || to == null || from.length() == 0) {
+				continue;
+			}
+			if(to.length() > from.length()) {
+				this.skipped.add(from + " -> " + to);
+				continue;
+			}
+			char[] out = new char[to.length()];
+			int outlen = 0;
+			for(int i = 0, n = to.length(); i < n; i++) {
+				char c = AntiSwear.FOLD[to.charAt(i)];
+				if(c != 0) {
+					out[outlen++] = c;
+				}
+			}
+			from = from.toLowerCase();
+			if(from.length() == 1) {
+				char c = from.charAt(0);
+				char res = (outlen == 0) ? '\0' : out[0];
+				fold[c] = res;
+				fold[Character.toUpperCase(c)] = res;
+			} else {
+				Node node = root;
+				for(int i = 0, n = from.length(); i < n; i++) {
+					Node child = node.get(from.charAt(i));
+					if(child == null) {
+						child = node.add(from.charAt(i));
+						nnodes++;
+					}
+					node = child;
+				}
+				node.output = Arrays.copyOf(out, outlen);
+				if(from.length() > maxlen) {
+					maxlen = from.length();
+				}
+			}
+			nrules++;
+		}
+		
+		/*
+		 * Flatten trie (BFS, children of node stored together)
+		 */
+		this.fold = fold;
+		this.starts = new boolean[fold.length];
+		this.childFrom = new int[nnodes];
+		this.childTo = new int[nnodes];
+		this.label = new char[nnodes];
+		this.outputs = new char[nnodes][];
+		Node[] queue = new Node[nnodes];
+		queue[0] = root;
+		int tail = 1;
+		for(int head = 0; head < tail; head++) {
+			Node node = queue[head];
+			this.label[head] = node.c;
+			this.outputs[head] = node.output;
+			this.childFrom[head] = tail;
+			Node[] children = node.sorted();
+			for(int i = 0, n = children.length; i < n; i++) {
+				queue[tail++] = children[i];
+			}
+			this.childTo[head] = tail;
+		}
+		for(int i = this.childFrom[0], n = this.childTo[0]; i < n; i++) {
+			char c = this.label[i];
+			this.starts[c] = true;
+			this.starts[Character.toUpperCase(c)] = true;
+		}
+		this.maxLength = maxlen;
+		this.rules = nrules;
+	}
+	
+	/**
+	 * @return Number of compiled rules
+	 */
+	public int size() {
+		return this.rules;
+	}
+	
+	/**
+	 * @return Rules, which were not compiled, because they are longer than source
+	 */
+	public List<String> getSkipped() {
+		return this.skipped;
+	}
+	
+	/**
+	 * @param node Trie node
+	 * @param c Character in lower case
+	 * 
+	 * @return Child of node or `-1`
+	 */
+	protected int child(int node, char c) {
+		int lo = this.childFrom[node];
+		int hi = this.childTo[node] - 1;
+		char[] label = this.label;
+		while(lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			char l = label[mid];
+			if(l < c) {
+				lo = mid + 1;
+			} else if(l > c) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Same as {@link AntiSwear#removeTyposSlang(char[], char[], int, int, int[], int)},
+	 * but with substitutions. `out` may be same array as `bts`
+	 * 
+	 * @param out Output buffer
+	 * @param bts Input buffer
+	 * @param off Offset of input buffer
+	 * @param len Length of input buffer
+	 * @param indexes Index of last character in `bts` (pair with out parameter; may be null)
+	 * @param firsts Index of first character in `bts` of substitution, which produced
+	 *        character (pair with out parameter; may be null). For repeated characters
+	 *        index of the last substitution
+	 * @param ind_off Offset of indexes and firsts parameters
+	 * 
+	 * @return Length of new string (of `out` parameter)
+	 */
+	public int removeTyposSlang(char[] out, char[] bts, int off, int len,
+			int[] indexes, int[] firsts, int ind_off) {
+		char[] fold = this.fold;
+		boolean[] starts = this.starts;
+		len += off;
+		int cur = off;
+		int outi = 0;
+		char prev = 0;
+		while(cur < len) {
+			char c = bts[cur];
+			int first = cur;
+			char[] emit = null;
+			if(starts[c]) {
+				int node = 0;
+				int max = Math.min(len, cur + this.maxLength);
+				for(int p = cur; p < max; p++) {
+					node = this.child(node, Character.toLowerCase(bts[p]));
+					if(node == -1) {
+						break;
+					}
+					if(this.outputs[node] != null) {
+						emit = this.outputs[node];
+						cur = p;
+					}
+				}
+			}
+			int last = cur++;
+			int n = 1;
+			if(emit == null) {
+				c = fold[c];
+				if(c == 0) {
+					continue;
+				}
+			} else {
+				n = emit.length;
+			}
+			for(int i = 0; i < n; i++) {
+				if(emit != null) {
+					c = emit[i];
+				}
+				if(c == prev) {
+					if(indexes != null) {
+						indexes[ind_off + outi - 1] = last;
+					}
+					if(firsts != null) {
+						firsts[ind_off + outi - 1] = first;
+					}
+				} else {
+					prev = c;
+					if(indexes != null) {
+						indexes[ind_off + outi] = last;
+					}
+					if(firsts != null) {
+						firsts[ind_off + outi] = first;
+					}
+					out[outi++] = c;
+				}
+			}
+		}
+		return outi;
+	}
+	
+	/**
+	 * @param in String to edit
+	 * 
+	 * @return Edited string, see {@link AntiSwear#removeTyposAll(String)}
+	 */
+	public String removeTyposAll(String in) {
+		char[] chars = in.toCharArray();
+		int nevlen = this.removeTyposSlang(chars, chars, 0, chars.length, null, null, 0);
+		return String.copyValueOf(chars, 0, nevlen);
+	}
+	
+	/**
+	 * Load and compile rules
+	 * 
+	 * @param file UTF-8 file with rules, see {@link Transducer}
+	 * 
+	 * @return Compiled rules
+	 * 
+	 * @throws IOException On read error
+	 */
+	public static Transducer load(File file) throws IOException {
+		Reader rd = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			return new Transducer(Transducer.loadRules(rd));
+		} finally {
+			rd.close();
+		}
+	}
+	
+	/**
+	 * Load rules
+	 * 
+	 * @param rd Reader with rules, see {@link Transducer}
+	 * 
+	 * @return Rules in order of file
+	 * 
+	 * @throws IOException On read error
+	 */
+	public static Map<String,String> loadRules(Reader rd) throws IOException {
+		Map<String,String> rules = new LinkedHashMap<String,String>();
+		BufferedReader br = new BufferedReader(rd);
+		String line;
+		while((line = br.readLine()) != null) {
+			if(line.trim().length() == 0 || line.trim().startsWith("#")) {
+				continue;
+			}
+			String[] parts = line.split(";", 3);
+			if(parts.length < 2) {
+				continue;
+			}
+			String from = Transducer.parseSide(parts[0].trim());
+			String to = Transducer.parseSide(parts[1].trim());
+			if(from.length() != 0) {
+				rules.put(from, to);
+			}
+		}
+		return rules;
+	}
+	
+	/**
+	 * @param side Side of rule - text or code points
+	 * 
+	 * @return Text
+	 */
+	protected static String parseSide(String side) {
+		if(!CODEPOINTS.matcher(side).matches()) {
+			return side;
+		}
+		StringBuilder sb = new StringBuilder();
+		String[] cps = side.split(" +");
+		for(int i = 0, n = cps.length; i < n; i++) {
+			sb.appendCodePoint(Integer.parseInt(cps[i], 16));
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Trie node used while compiling
+	 */
+	protected static class Node {
+		
+		public final char c;
+		
+		public char[] output = null;
+		
+		public Node[] children = null;
+		
+		public int size = 0;
+		
+		public Node(char c) {
+			this.c = c;
+		}
+		
+		public Node get(char c) {
+			for(int i = 0; i < this.size; i++) {
+				if(this.children[i].c == c) {
+					return this.children[i];
+				}
+			}
+			return null;
+		}
+		
+		public Node add(char c) {
+			if(this.children == null) {
+				this.children = new Node[4];
+			} else if(this.size == this.children.length) {
+				this.children = Arrays.copyOf(this.children, this.size * 2);
+			}
+			Node node = new Node(c);
+			this.children[this.size++] = node;
+			return node;
+		}
+		
+		public Node[] sorted() {
+			if(this.size == 0) {
+				return new Node[0];
+			}
+			Node[] arr = Arrays.copyOf(this.children, this.size);
+			Arrays.sort(arr, new Comparator<Node>() {
+				
+				@Override
+				public int compare(Node n1, Node n2) {
+					return n1.c - n2.c;
+				}
+			
+			});
+			return arr;
+		}
+	
+	}
+	
+}
@@ -0,0 +1,640 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015, Dalibor Drgoň <emptychannelmc@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package eu.wordnice.antiswear;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+/**
+ * Decaying violation scores of players and actions on thresholds
+ * 
+ * Every censored chat message adds {@link Violations#points} to score of
+ * player, score halves every {@link Violations#halfLife} seconds. Score and
+ * time of its last change are packed to one long and updated by CAS, so chat
+ * threads never wait. Actions whose threshold was crossed by the update run
+ * once - mute takes effect right away, messages, kicks and commands run on
+ * main thread.
+ * 
+ * Changed scores are queued and appended to {@link Violations#file} by
+ * plugin worker every {@link Violations#FLUSH_DELAY} milliseconds, one line
+ * per player (`uuid score time mutedUntil`, last line wins). File is rewritten
+ * with live scores on start and when it grows too much.
+ */
+public class Violations {
+	
+	/**
+	 * Delay between writes of changed scores, milliseconds
+	 */
+	public static long FLUSH_DELAY = 5000;
+	
+	/**
+	 * Lower scores are forgotten
+	 */
+	protected static final float MIN_SCORE = 0.01f;
+	
+	protected static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Time from which score times are counted (2014), seconds since epoch.
+	 * Unsigned 32 bits are enough till 2150
+	 */
+	protected static final long BASE = 1400000000L;
+	
+	protected final AntiSwearPlugin plugin;
+	
+	/**
+	 * Append-only file with scores
+	 */
+	protected final File file;
+	
+	protected final ConcurrentHashMap<UUID,Score> scores = new ConcurrentHashMap<UUID,Score>();
+	
+	/**
+	 * Scores changed since last write
+	 */
+	protected final ConcurrentLinkedQueue<Score> dirty = new ConcurrentLinkedQueue<Score>();
+	
+	/**
+	 * Time of score halving, seconds, 0 = disabled
+	 */
+	protected volatile long halfLife = 0;
+	
+	/**
+	 * Points added by censored message
+	 */
+	protected volatile float points = 1;
+	
+	/**
+	 * Actions sorted by threshold
+	 */
+	protected volatile Action[] actions = new Action[0];
+	
+	/**
+	 * Message sent to muted player (may be `null` = no message)
+	 */
+	protected volatile String muteMessage = null;
+	
+	/**
+	 * Periodic write, `null` if not scheduled
+	 */
+	protected ScheduledFuture<?> task = null;
+	
+	/**
+	 * Scores were read from file
+	 */
+	protected final AtomicBoolean loaded = new AtomicBoolean(false);
+	
+	/**
+	 * Lines appended since file was rewritten, used only by worker
+	 */
+	protected int appended = 0;
+	
+	/**
+	 * Score of one player
+	 */
+	protected static class Score {
+		
+		protected final UUID id;
+		
+		/**
+		 * Seconds since {@link Violations#BASE} (upper 32 bits, unsigned)
+		 * and float score at that time (lower 32 bits)
+		 */
+		protected final AtomicLong state = new AtomicLong();
+		
+		/**
+		 * Muted until, milliseconds since epoch
+		 */
+		protected volatile long muted = 0;
+		
+		/**
+		 * Queued for write
+		 */
+		protected final AtomicBoolean dirty = new AtomicBoolean(false);
+		
+		protected Score(UUID id) {
+			this.id = id;
+		}
+	
+	}
+	
+	/**
+	 * Action run when score reaches threshold
+	 */
+	protected static class Action {
+		
+		public static final int WARN = 0;
+		public static final int MUTE = 1;
+		public static final int KICK = 2;
+		public static final int COMMAND = 3;
+		
+		public final float score;
+		public final int type;
+		
+		/**
+		 * Message, command or seconds of mute
+		 */
+		public final String arg;
+		
+		public Action(float score, int type, String arg) {
+			this.score = score;
+			this.type = type;
+			this.arg = arg;
+		}
+		
+		/**
+		 * @param line `score warn <message>`, `score mute <seconds>`,
+		 *        `score kick <message>` or `score <command>`
+		 * 
+		 * @return Action
+		 * 
+		 * @throws IllegalArgumentException If line is not valid
+		 */
+		public static Action parse(String line) {
+			String[] parts = line.trim().split("\\s+", 3);
+			if(parts.length < 2) {
+				throw new IllegalArgumentException("Expected score and action: " + line);
+			}
+			float score = Float.parseFloat(parts[0]);
+			if(!(score > 0)) {
+				throw new IllegalArgumentException("Score must be positive: " + line);
+			}
+			String type = parts[1].toLowerCase(Locale.ROOT);
+			String rest = (parts.length == 3) ? parts[2] : "";
+			if(type.equals("warn")) {
+				return new Action(score, WARN, ChatColor.translateAlternateColorCodes('&', rest));
+			} else if(type.equals("mute")) {
+				return new Action(score, MUTE, Long.toString(Long.parseLong(rest.trim())));
+			} else if(type.equals("kick")) {
+				return new Action(score, KICK, ChatColor.translateAlternateColorCodes('&', rest));
+			}
+			String cmd = line.trim().substring(parts[0].length()).trim();
+			if(cmd.startsWith("/")) {
+				cmd = cmd.substring(1);
+			}
+			return new Action(score, COMMAND, cmd);
+		}
+	
+	}
+	
+	/**
+	 * @param plugin Plugin
+	 * @param file Append-only file with scores
+	 */
+	public Violations(AntiSwearPlugin plugin, File file) {
+		this.plugin = plugin;
+		this.file = file;
+	}
+	
+	/**
+	 * Load settings, read scores on first call and schedule periodic writes
+	 * 
+	 * @param cfg Config
+	 */
+	public synchronized void load(ConfigurationSection cfg) {
+		this.halfLife = Math.max(0, cfg.getLong("ViolationHalfLife", 0));
+		this.points = (float) Math.max(0, cfg.getDouble("ViolationPoints", 1));
+		List<Action> actions = new ArrayList<Action>();
+		for(String line : cfg.getStringList("ViolationActions")) {
+			try {
+				actions.add(Action.parse(line));
+			} catch(IllegalArgumentException iae) {
+				this.plugin.getLogger().warning("Invalid violation action '" + line + "': " + iae.getMessage());
+			}
+		}
+		Action[] arr = actions.toArray(new Action[0]);
+		//- Stable insertion sort, few actions
+		for(int i = 1; i < arr.length; i++) {
+			Action a = arr[i];
+			int j = i;
+			for(; j > 0 && arr[j - 1].score > a.score; j--) {
+				arr[j] = arr[j - 1];
+			}
+			arr[j] = a;
+		}
+		this.actions = arr;
+		String msg = cfg.getString("MuteMessage", null);
+		if(msg == null || msg.length() == 0 || msg.equalsIgnoreCase("null")) {
+			this.muteMessage = null;
+		} else {
+			this.muteMessage = ChatColor.translateAlternateColorCodes('&', msg);
+		}
+		
+		ScheduledThreadPoolExecutor worker = this.plugin.worker;
+		if(this.halfLife == 0 || worker == null) {
+			return;
+		}
+		if(this.loaded.compareAndSet(false, true)) {
+			worker.execute(new Runnable() {
+				
+				@Override
+				public void run() {
+					Violations.this.read();
+				}
+			
+			});
+		}
+		if(this.task == null) {
+			this.task = worker.scheduleWithFixedDelay(new Runnable() {
+				
+				@Override
+				public void run() {
+					Violations.this.flush();
+				}
+			
+			}, FLUSH_DELAY, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Stop periodic writes, changed scores are written by {@link Violations#flush()}
+	 */
+	public synchronized void close() {
+		if(this.task != null) {
+			this.task.cancel(false);
+			this.task = null;
+		}
+	}
+	
+	/**
+	 * @return Time of score halving, seconds, 0 = disabled
+	 */
+	public long getHalfLife() {
+		return this.halfLife;
+	}
+	
+	/**
+	 * @return Message sent to muted player, may be `null`
+	 */
+	public String getMuteMessage() {
+		return this.muteMessage;
+	}
+	
+	/**
+	 * @return Number of remembered players
+	 */
+	public int size() {
+		return this.scores.size();
+	}
+	
+	/**
+	 * @return Seconds since {@link Violations#BASE}
+	 */
+	protected long now() {
+		return System.currentTimeMillis() / 1000 - BASE;
+	}
+	
+	/**
+	 * @param state Packed state
+	 * @param now Seconds since {@link Violations#BASE}
+	 * @param halfLife Time of score halving, seconds
+	 * 
+	 * @return Score at given time
+	 */
+	protected static float decay(long state, long now, long halfLife) {
+		float score = Float.intBitsToFloat((int) state);
+		long age = now - (state >>> 32);
+		if(age <= 0 || score == 0) {
+			return score;
+		}
+		return (float) (score * Math.pow(0.5, (double) age / halfLife));
+	}
+	
+	protected static long pack(long time, float score) {
+		return (time << 32) | (Float.floatToIntBits(score) & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * @param id Player
+	 * 
+	 * @return Current score, 0 if player has none
+	 */
+	public float getScore(UUID id) {
+		Score sc = this.scores.get(id);
+		long hl = this.halfLife;
+		return (sc == null || hl == 0) ? 0 : Violations.decay(sc.state.get(), this.now(), hl);
+	}
+	
+	/**
+	 * @param id Player
+	 * 
+	 * @return Time player is muted until, milliseconds since epoch, 0 if not muted
+	 */
+	public long getMuted(UUID id) {
+		Score sc = this.scores.get(id);
+		if(sc == null) {
+			return 0;
+		}
+		long muted = sc.muted;
+		return (muted > System.currentTimeMillis()) ? muted : 0;
+	}
+	
+	/**
+	 * @param id Player
+	 * 
+	 * @return `true` If player is muted
+	 */
+	public boolean isMuted(UUID id) {
+		if(this.halfLife == 0) {
+			return false;
+		}
+		Score sc = this.scores.get(id);
+		return sc != null && sc.muted != 0 && sc.muted > System.currentTimeMillis();
+	}
+	
+	/**
+	 * Add points for censored message and run actions whose threshold was reached
+	 * 
+	 * @param p Player
+	 * 
+	 * @return New score, 0 if disabled
+	 */
+	public float add(Player p) {
+		long hl = this.halfLife;
+		if(hl == 0) {
+			return 0;
+		}
+		Score sc = this.get(p.getUniqueId());
+		float points = this.points;
+		long now = this.now();
+		long cur;
+		float old, val;
+		do {
+			cur = sc.state.get();
+			old = Violations.decay(cur, now, hl);
+			val = old + points;
+		} while(!sc.state.compareAndSet(cur, Violations.pack(now, val)));
+		for(Action a : this.actions) {
+			if(old < a.score && val >= a.score) {
+				this.run(a, p, sc);
+			}
+		}
+		this.changed(sc);
+		return val;
+	}
+	
+	/**
+	 * Forget score and mute of player
+	 * 
+	 * @param id Player
+	 * 
+	 * @return `true` If player had score or mute
+	 */
+	public boolean reset(UUID id) {
+		Score sc = this.scores.get(id);
+		if(sc == null) {
+			return false;
+		}
+		sc.state.set(0);
+		sc.muted = 0;
+		this.changed(sc);
+		return true;
+	}
+	
+	/**
+	 * @return Score of player, created if missing
+	 */
+	protected Score get(UUID id) {
+		Score sc = this.scores.get(id);
+		if(sc == null) {
+			sc = new Score(id);
+			Score prev = this.scores.putIfAbsent(id, sc);
+			if(prev != null) {
+				sc = prev;
+			}
+		}
+		return sc;
+	}
+	
+	/**
+	 * Queue score for write
+	 */
+	protected void changed(Score sc) {
+		if(sc.dirty.compareAndSet(false, true)) {
+			this.dirty.offer(sc);
+		}
+	}
+	
+	/**
+	 * Run action, called by thread which crossed its threshold
+	 */
+	protected void run(final Action a, final Player p, Score sc) {
+		if(a.type == Action.MUTE) {
+			sc.muted = Math.max(sc.muted, System.currentTimeMillis() + Long.parseLong(a.arg) * 1000);
+			this.plugin.getLogger().info(p.getName() + " was muted for " + a.arg + " s (violation score "
+					+ a.score + ")");
+			return;
+		}
+		Bukkit.getScheduler().runTask(this.plugin, new Runnable() {
+			
+			@Override
+			public void run() {
+				switch(a.type) {
+					case Action.WARN:
+						if(p.isOnline()) {
+							p.sendMessage(a.arg);
+						}
+						break;
+					case Action.KICK:
+						if(p.isOnline()) {
+							p.kickPlayer(a.arg);
+						}
+						break;
+					default:
+						Bukkit.dispatchCommand(Bukkit.getConsoleSender(), a.arg.replace("{player}", p.getName()));
+				}
+			}
+		
+		});
+	}
+	
+	/**
+	 * Read scores from file and rewrite it with live ones. Run on worker thread
+	 */
+	protected void read() {
+		if(this.file.isFile()) {
+			long start = System.nanoTime();
+			int lines = 0;
+			try {
+				BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), UTF8));
+				try {
+					String line;
+					while((line = br.readLine()) != null) {
+						lines++;
+						this.parse(line);
+					}
+				} finally {
+					br.close();
+				}
+			} catch(Exception e) {
+				this.plugin.getLogger().warning("Could not read violations from '" + this.file + "': " + e);
+			}
+			this.plugin.getLogger().info("Loaded " + this.scores.size() + " violation scores from " + lines 
+					+ " lines in " + ((System.nanoTime() - start) / 1000000) + " ms");
+		}
+		this.rewrite();
+	}
+	
+	/**
+	 * Read one line, keeps scores changed meanwhile
+	 */
+	protected void parse(String line) {
+		String[] parts = line.split(" ");
+		if(parts.length != 4) {
+			return;
+		}
+		try {
+			UUID id = UUID.fromString(parts[0]);
+			float score = Float.parseFloat(parts[1]);
+			long time = Long.parseLong(parts[2]) - BASE;
+			long muted = Long.parseLong(parts[3]);
+			if(time < 0) {
+				return;
+			}
+			Score sc = this.get(id);
+			//- Changed by chat meanwhile
+			if(sc.dirty.get()) {
+				return;
+			}
+			sc.state.set(Violations.pack(time, score));
+			sc.muted = muted;
+		} catch(IllegalArgumentException iae) {}
+	}
+	
+	/**
+	 * @return Line of score, `null` if it may be forgotten
+	 */
+	protected String line(Score sc, long now, long hl) {
+		long state = sc.state.get();
+		float score = Violations.decay(state, now, hl);
+		long muted = sc.muted;
+		if(score < MIN_SCORE && muted <= System.currentTimeMillis()) {
+			return null;
+		}
+		return sc.id + " " + Float.intBitsToFloat((int) state) + " " + ((state >>> 32) + BASE) + " " + muted;
+	}
+	
+	/**
+	 * Append changed scores to file, rewrite it when it has too many old lines.
+	 * Run on worker thread
+	 */
+	protected void flush() {
+		if(this.dirty.isEmpty()) {
+			return;
+		}
+		long hl = Math.max(1, this.halfLife);
+		long now = this.now();
+		int num = 0;
+		try {
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), UTF8));
+			try {
+				Score sc;
+				while((sc = this.dirty.poll()) != null) {
+					sc.dirty.set(false);
+					String line = this.line(sc, now, hl);
+					if(line == null) {
+						line = sc.id + " 0.0 " + (now + BASE) + " 0";
+					}
+					out.write(line);
+					out.write('\n');
+					num++;
+				}
+			} finally {
+				out.close();
+			}
+		} catch(IOException ioe) {
+			this.plugin.getLogger().warning("Could not write violations to '" + this.file + "': " + ioe);
+		}
+		this.appended += num;
+		if(this.appended > Math.max(1000, this.scores.size() * 4)) {
+			this.rewrite();
+		}
+	}
+	
+	/**
+	 * Forget low scores and replace file with live scores. Run on worker thread
+	 */
+	protected void rewrite() {
+		long hl = Math.max(1, this.halfLife);
+		long now = this.now();
+		File tmp = new File(this.file.getPath() + ".tmp");
+		try {
+			Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), UTF8));
+			try {
+				for(Score sc : this.scores.values()) {
+					String line = this.line(sc, now, hl);
+					if(line == null) {
+						//- Update racing with removal is lost, score was tiny anyway
+						if(!sc.dirty.get()) {
+							this.scores.remove(sc.id, sc);
+						}
+						continue;
+					}
+					out.write(line);
+					out.write('\n');
+				}
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch(AtomicMoveNotSupportedException amnse) {
+				Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			this.appended = 0;
+		} catch(IOException ioe) {
+			this.plugin.getLogger().warning("Could not write violations to '" + this.file + "': " + ioe);
+		}
+	}
+	
+}